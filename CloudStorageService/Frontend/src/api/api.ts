@@ -52,6 +52,27 @@ const uploadFile = (file: any, filename: string) => {
     );
 }
 
+/**
+ * Добавляем несколько файлов одним запросом
+ * В ответе результат по каждому файлу
+ */
+const uploadFiles = (files: any[]) => {
+    const formData = new FormData();
+    for (const file of files) {
+        formData.append('files', file, file.name);
+    }
+
+    return httpClient.post(
+        '/files',
+        formData,
+        {
+            headers: {
+                'Content-Type': 'multipart/form-data'
+            }
+        }
+    );
+}
+
 /**
  * Скачиваем файл
  */
@@ -90,6 +111,7 @@ export {
     logout,
     getFiles,
     uploadFile,
+    uploadFiles,
     downloadFile,
     updateFile,
     deleteFile
@@ -0,0 +1,56 @@
+package com.diplom.config;
+
+import com.diplom.model.File;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Последовательность files_id_seq с шагом File.ID_ALLOCATION_SIZE.
+ * Схему строит Hibernate (ddl-auto=update), а он не меняет шаг существующей последовательности:
+ * в БД, созданной до перехода на последовательность, files_id_seq - последовательность
+ * identity-столбца с шагом 1, и проверка соответствия шагов остановила бы запуск.
+ * Поэтому шаг выравнивается до создания EntityManagerFactory (то же делает V7).
+ */
+@Slf4j
+@Configuration
+public class FileIdSequenceConfig {
+
+    @Bean
+    public InitializingBean fileIdSequenceInitializer(DataSource dataSource) {
+        return () -> alignFileIdSequence(new JdbcTemplate(dataSource));
+    }
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor fileIdSequenceDependency() {
+        return new EntityManagerFactoryDependsOnPostProcessor("fileIdSequenceInitializer");
+    }
+
+    static void alignFileIdSequence(JdbcTemplate jdbcTemplate) {
+        // Новая БД: таблицы еще нет, последовательность с нужным шагом создаст Hibernate
+        if (jdbcTemplate.queryForObject("SELECT to_regclass('files') IS NOT NULL", Boolean.class) != Boolean.TRUE) {
+            return;
+        }
+        List<Long> increments = jdbcTemplate.queryForList(
+                "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?",
+                Long.class, File.ID_SEQUENCE);
+        if (!increments.isEmpty() && increments.getFirst() == File.ID_ALLOCATION_SIZE) {
+            return;
+        }
+        if (increments.isEmpty()) {
+            jdbcTemplate.execute("CREATE SEQUENCE " + File.ID_SEQUENCE + " INCREMENT BY " + File.ID_ALLOCATION_SIZE);
+        } else {
+            jdbcTemplate.execute("ALTER SEQUENCE " + File.ID_SEQUENCE + " INCREMENT BY " + File.ID_ALLOCATION_SIZE);
+        }
+        // Следующий блок идентификаторов начинается после уже выданных
+        jdbcTemplate.queryForObject("SELECT setval('" + File.ID_SEQUENCE + "', (SELECT COALESCE(MAX(id), 0) + 1 FROM files))",
+                Long.class);
+        log.info("Шаг последовательности {} выровнен до {}", File.ID_SEQUENCE, File.ID_ALLOCATION_SIZE);
+    }
+}
@@ -0,0 +1,112 @@
+package com.diplom.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Индексы таблицы files: уникальный (owner, filename) и постраничного списка файлов.
+ * Миграции Flyway в этой сборке не выполняются, а Hibernate (ddl-auto=update) только пытается
+ * создать индекс из аннотации File: в БД, где у пользователя уже есть файлы с одинаковым именем
+ * (гонка двух загрузок), создание падает с записью в лог, и поиск по имени идет без индекса.
+ * Поэтому до создания EntityManagerFactory дубли сворачиваются к последней записи,
+ * ссылки удаленных строк на blob снимаются, и индекс создается здесь.
+ * Индекс списка создается здесь же, чтобы он был и в БД, где Hibernate его не создал.
+ */
+@Slf4j
+@Configuration
+public class FileIndexConfig {
+
+    static final String OWNER_FILENAME_INDEX = "idx_files_owner_filename";
+    static final String OWNER_LISTING_INDEX = "idx_files_owner_listing";
+
+    // Дубли (owner, filename) кроме последней записи; ссылки удаленных строк снимаются с blob
+    private static final String REMOVE_DUPLICATES_RELEASING_BLOBS = """
+            WITH duplicates AS (
+                SELECT id, blob_hash
+                FROM (SELECT id, blob_hash,
+                             ROW_NUMBER() OVER (PARTITION BY owner, filename ORDER BY id DESC) AS position
+                      FROM files) ranked
+                WHERE position > 1
+            ), released AS (
+                UPDATE blobs b
+                SET ref_count = GREATEST(b.ref_count - d.refs, 0), updated_at = CURRENT_TIMESTAMP
+                FROM (SELECT blob_hash, COUNT(*) AS refs FROM duplicates
+                      WHERE blob_hash IS NOT NULL GROUP BY blob_hash) d
+                WHERE b.hash = d.blob_hash
+            )
+            DELETE FROM files WHERE id IN (SELECT id FROM duplicates)""";
+
+    // Схема до хранения по хэшу: у файлов нет ссылок на blob
+    private static final String REMOVE_DUPLICATES = """
+            DELETE FROM files WHERE id IN (
+                SELECT id
+                FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY owner, filename ORDER BY id DESC) AS position
+                      FROM files) ranked
+                WHERE position > 1)""";
+
+    @Bean
+    public InitializingBean fileIndexInitializer(DataSource dataSource) {
+        return () -> createFileIndexes(dataSource);
+    }
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor fileIndexDependency() {
+        return new EntityManagerFactoryDependsOnPostProcessor("fileIndexInitializer");
+    }
+
+    static void createFileIndexes(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Новая БД: таблицы еще нет, индексы создаст Hibernate вместе с ней
+        if (jdbcTemplate.queryForObject("SELECT to_regclass('files') IS NOT NULL", Boolean.class) != Boolean.TRUE) {
+            return;
+        }
+        if (!indexExists(jdbcTemplate, OWNER_FILENAME_INDEX)) {
+            createOwnerFilenameIndex(dataSource, jdbcTemplate);
+        }
+        // Список файлов пользователя по ключу (date_of_upload, id) от новых к старым:
+        // любая страница - проход по индексу от позиции курсора, без сортировки и COUNT
+        if (!indexExists(jdbcTemplate, OWNER_LISTING_INDEX)) {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + OWNER_LISTING_INDEX
+                    + " ON files (owner, date_of_upload DESC, id DESC)");
+            log.info("Создан индекс {}", OWNER_LISTING_INDEX);
+        }
+    }
+
+    private static void createOwnerFilenameIndex(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        boolean releaseBlobs = columnExists(jdbcTemplate, "files", "blob_hash")
+                && jdbcTemplate.queryForObject("SELECT to_regclass('blobs') IS NOT NULL", Boolean.class) == Boolean.TRUE;
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        Integer removed = transaction.execute(status -> {
+            // Блокировка не дает другому экземпляру вставить новый дубль до создания индекса
+            jdbcTemplate.execute("LOCK TABLE files IN SHARE ROW EXCLUSIVE MODE");
+            int deleted = jdbcTemplate.update(releaseBlobs ? REMOVE_DUPLICATES_RELEASING_BLOBS : REMOVE_DUPLICATES);
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + OWNER_FILENAME_INDEX + " ON files (owner, filename)");
+            return deleted;
+        });
+        if (removed != null && removed > 0) {
+            log.warn("Удалено дублей файлов с одинаковым именем у владельца: {}", removed);
+        }
+        log.info("Создан индекс {}", OWNER_FILENAME_INDEX);
+    }
+
+    private static boolean indexExists(JdbcTemplate jdbcTemplate, String name) {
+        return jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_indexes WHERE schemaname = current_schema() AND indexname = ?)",
+                Boolean.class, name) == Boolean.TRUE;
+    }
+
+    private static boolean columnExists(JdbcTemplate jdbcTemplate, String table, String column) {
+        return jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM information_schema.columns"
+                        + " WHERE table_schema = current_schema() AND table_name = ? AND column_name = ?)",
+                Boolean.class, table, column) == Boolean.TRUE;
+    }
+}
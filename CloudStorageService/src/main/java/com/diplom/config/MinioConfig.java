@@ -1,11 +1,28 @@
 package com.diplom.config;
 
+import com.diplom.service.MinioMultipartClient;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageShard;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.RequiredArgsConstructor;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
 @Configuration
 @RequiredArgsConstructor
 public class MinioConfig {
@@ -19,12 +36,92 @@ public class MinioConfig {
     @Value("${minio.secret-key}")
     private String secretKey;
 
+    // Явный регион избавляет клиент от запроса GetBucketLocation перед подписью ссылок
+    @Value("${minio.region}")
+    private String region;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    // Имя основного шарда (minio.endpoint и minio.bucket-name)
+    @Value("${minio.shard-name:primary}")
+    private String shardName;
+
+    @Value("${minio.shard-weight:1}")
+    private int shardWeight;
+
+    // Точек на кольце у шарда с весом 1: чем больше, тем равномернее распределение
+    @Value("${minio.virtual-nodes:128}")
+    private int virtualNodes;
+
+    // Асинхронный клиент выполняет запросы через диспетчер OkHttp, по умолчанию он пускает
+    // к одному хосту только 5 запросов, и параллельная загрузка частей упиралась бы в этот предел
+    @Value("${minio.http.max-requests-per-host:64}")
+    private int maxRequestsPerHost;
+
     @Bean
     public MinioClient minioClient() {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+    }
+
+    /**
+     * Кольцо шардов: основной шард и дополнительные из списка minio.shards
+     * (name, endpoint, bucket, access-key, secret-key, weight). Шард без endpoint
+     * или учетных данных берет их у основного; шарды одного сервера делят один клиент.
+     */
+    @Bean
+    public ShardRing shardRing(MinioClient minioClient, Environment environment) {
+        Map<String, MinioClient> clients = new HashMap<>();
+        clients.put(endpoint + "\n" + accessKey, minioClient);
+
+        List<StorageShard> shards = new ArrayList<>();
+        shards.add(new StorageShard(shardName, minioClient, bucketName, shardWeight));
+        List<ShardProperties> configured = Binder.get(environment)
+                .bind("minio.shards", Bindable.listOf(ShardProperties.class))
+                .orElse(List.of());
+        for (ShardProperties shard : configured) {
+            String shardEndpoint = shard.endpoint() != null ? shard.endpoint() : endpoint;
+            String shardAccessKey = shard.accessKey() != null ? shard.accessKey() : accessKey;
+            String shardSecretKey = shard.secretKey() != null ? shard.secretKey() : secretKey;
+            MinioClient client = clients.computeIfAbsent(shardEndpoint + "\n" + shardAccessKey,
+                    key -> MinioClient.builder()
+                            .endpoint(shardEndpoint)
+                            .credentials(shardAccessKey, shardSecretKey)
+                            .region(region)
+                            .build());
+            shards.add(new StorageShard(shard.name(), client, shard.bucket(), shard.weight() != null ? shard.weight() : 1));
+        }
+        return new ShardRing(shards, virtualNodes);
+    }
+
+    public record ShardProperties(String name, String endpoint, String bucket, String accessKey, String secretKey,
+                                  Integer weight) {
+    }
+
+    // Отдельный клиент для пошаговой multipart-загрузки (возобновляемые сессии, параллельная загрузка частей)
+    @Bean
+    public MinioMultipartClient minioMultipartClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequestsPerHost);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        Duration timeout = Duration.ofMinutes(5);
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(timeout)
+                .writeTimeout(timeout)
+                .readTimeout(timeout)
                 .build();
+
+        return new MinioMultipartClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .httpClient(httpClient)
+                .build());
     }
 }
 
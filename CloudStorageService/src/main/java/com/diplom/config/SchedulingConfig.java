@@ -0,0 +1,10 @@
+package com.diplom.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Фоновые задачи: очистка брошенных сессий загрузки
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,87 @@
+package com.diplom.config;
+
+import com.diplom.service.BufferPool;
+import com.diplom.service.LocalStorageBackend;
+import com.diplom.service.MinioMultipartClient;
+import com.diplom.service.MinioService;
+import com.diplom.service.ParallelMultipartUploader;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageBackend;
+import com.diplom.service.StorageShard;
+import com.diplom.service.TieredStorageBackend;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+/**
+ * Два уровня хранения: горячий - выбранный storage.backend, холодный - бакет MinIO
+ * (по умолчанию на том же сервере, что и основной). Сервисы получают {@link TieredStorageBackend},
+ * холодный уровень бином не регистрируется, чтобы не путаться с основным MinioService.
+ */
+@ConditionalOnProperty(name = "storage.tiering.enabled", havingValue = "true")
+@Configuration
+public class TieringConfig {
+
+    @Value("${storage.tiering.cold.endpoint:${minio.endpoint}}")
+    private String endpoint;
+
+    @Value("${storage.tiering.cold.access-key:${minio.access-key}}")
+    private String accessKey;
+
+    @Value("${storage.tiering.cold.secret-key:${minio.secret-key}}")
+    private String secretKey;
+
+    @Value("${storage.tiering.cold.bucket}")
+    private String bucket;
+
+    @Value("${minio.region}")
+    private String region;
+
+    @Value("${minio.upload.part-size:16MB}")
+    private DataSize partSize;
+
+    @Primary
+    @Bean
+    public TieredStorageBackend tieredStorageBackend(ObjectProvider<MinioService> minioService,
+                                                     ObjectProvider<LocalStorageBackend> localStorageBackend,
+                                                     BufferPool bufferPool) {
+        MinioClient client = MinioClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+        MinioService cold = new MinioService(coldMultipartClient(), coldMultipartUploader(bufferPool),
+                new ShardRing(List.of(new StorageShard("cold", client, bucket, 1)), 1));
+        cold.ensureBucketExists();
+
+        // Горячий уровень - хранилище, выбранное storage.backend
+        StorageBackend hot = minioService.getIfAvailable();
+        return new TieredStorageBackend(hot != null ? hot : localStorageBackend.getObject(), cold);
+    }
+
+    // Бины холодного уровня не участвуют во внедрении по типу, но их жизненным циклом управляет Spring:
+    // при остановке вызывается ParallelMultipartUploader.shutdown() и пул загрузки частей закрывается
+    @Bean(autowireCandidate = false)
+    public MinioMultipartClient coldMultipartClient() {
+        return new MinioMultipartClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build());
+    }
+
+    // Перенос в холодный уровень фоновый, двух потоков на части хватает
+    @Bean(autowireCandidate = false)
+    public ParallelMultipartUploader coldMultipartUploader(BufferPool bufferPool) {
+        return new ParallelMultipartUploader(coldMultipartClient(), bufferPool,
+                partSize, 2, 2, DataSize.ofBytes(partSize.toBytes() * 2));
+    }
+}
@@ -13,6 +13,8 @@ class WebConfig implements WebMvcConfigurer {
                 .allowCredentials(true)
                 .allowedOrigins("http://localhost:8081")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .allowedHeaders("*");
+                .allowedHeaders("*")
+                // Токен следующей страницы списка файлов (GET /list)
+                .exposedHeaders("X-Next-Cursor");
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.diplom.controller;
+
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.model.dto.DirectUploadDTO;
+import com.diplom.model.dto.FileDTO;
+import com.diplom.repository.UserRepository;
+import com.diplom.service.DirectUploadService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.bind.annotation.*;
+
+
+/**
+ * Прямая загрузка в MinIO: выдача подписанной формы, подтверждение загрузки и отмена.
+ */
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RestController
+@RequestMapping("/upload/direct")
+@AllArgsConstructor
+public class DirectUploadController {
+
+    private final DirectUploadService directUploadService;
+    private final UserRepository userRepository;
+
+    @PostMapping
+    public ResponseEntity<DirectUploadDTO> reserve(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            @RequestParam("size") long size,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+
+        return new ResponseEntity<>(directUploadService.reserve(loadUser(), filename, size, contentType),
+                HttpStatus.CREATED);
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<FileDTO> complete(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("uploadId") String uploadId) {
+
+        File file = directUploadService.complete(loadUser(), uploadId);
+        return new ResponseEntity<>(FileDTO.of(file), HttpStatus.OK);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> cancel(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("uploadId") String uploadId) {
+
+        directUploadService.cancel(loadUser(), uploadId);
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    private User loadUser() {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    }
+}
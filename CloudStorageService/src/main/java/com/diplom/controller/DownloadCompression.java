@@ -0,0 +1,223 @@
+package com.diplom.controller;
+
+import com.diplom.model.dto.FileDownload;
+import com.diplom.service.BufferPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжатие скачиваемых файлов на лету (Content-Encoding: gzip).
+ * Сжимаются только текстовые форматы из настроек в пределах порога по размеру;
+ * уже сжатые форматы (архивы, изображения, видео) в список не входят.
+ * Метрики: исходные и отправленные байты и процессорное время на сжатие.
+ */
+@Slf4j
+@Component
+public class DownloadCompression {
+
+    static final String GZIP = "gzip";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+    private final long minSize;
+    private final long maxSize;
+    private final int level;
+    private final List<MimeType> mimeTypes;
+    private final BufferPool bufferPool;
+
+    private final Counter originalBytes;
+    private final Counter sentBytes;
+    private final Timer cpuTime;
+
+    @Autowired
+    public DownloadCompression(@Value("${download.compression.enabled:true}") boolean enabled,
+                               @Value("${download.compression.min-size:1KB}") DataSize minSize,
+                               @Value("${download.compression.max-size:512MB}") DataSize maxSize,
+                               @Value("${download.compression.level:6}") int level,
+                               @Value("${download.compression.mime-types:text/*,application/json,application/xml,application/javascript,image/svg+xml}")
+                               List<String> mimeTypes,
+                               BufferPool bufferPool,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minSize = minSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.level = level;
+        this.mimeTypes = mimeTypes.stream().map(MimeTypeUtils::parseMimeType).toList();
+        this.bufferPool = bufferPool;
+
+        this.originalBytes = Counter.builder("download.compression.bytes.original")
+                .description("Байты файлов до сжатия").baseUnit("bytes").register(meterRegistry);
+        this.sentBytes = Counter.builder("download.compression.bytes.sent")
+                .description("Байты, отправленные после сжатия").baseUnit("bytes").register(meterRegistry);
+        this.cpuTime = Timer.builder("download.compression.cpu")
+                .description("Процессорное время на сжатие одного ответа").register(meterRegistry);
+    }
+
+    // Имеет ли смысл сжимать файл: тип из метаданных объекта (или по расширению) и размер
+    public boolean isCompressible(FileDownload download) {
+        if (!enabled || download.getSize() < minSize || download.getSize() > maxSize) {
+            return false;
+        }
+        MimeType type = contentType(download);
+        return mimeTypes.stream().anyMatch(allowed -> allowed.includes(type));
+    }
+
+    /**
+     * Принимает ли клиент gzip. Учитываются q-параметры: "gzip;q=0" и "*;q=0" запрещают кодировку.
+     */
+    public boolean acceptsGzip(HttpHeaders requestHeaders) {
+        return accepts(requestHeaders, GZIP, "x-gzip");
+    }
+
+    /**
+     * Принимает ли клиент кодировку (любое из имен codings) по заголовку Accept-Encoding.
+     * Явное значение кодировки важнее "*"; без заголовка кодировка не принимается.
+     */
+    public static boolean accepts(HttpHeaders requestHeaders, String... codings) {
+        List<String> names = Arrays.asList(codings);
+        Double explicit = null;
+        Double wildcard = null;
+        for (String value : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String token : value.split(",")) {
+                String[] parts = token.trim().split(";");
+                String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+                double quality = quality(parts);
+                if (names.contains(coding)) {
+                    explicit = quality;
+                } else if ("*".equals(coding)) {
+                    wildcard = quality;
+                }
+            }
+        }
+        if (explicit != null) {
+            return explicit > 0;
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    // Сжатое представление - отдельная сущность для кэшей, поэтому у него свой ETag
+    public static String gzipEtag(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-gzip\"" : etag + "-gzip";
+    }
+
+    /**
+     * Потоковое сжатие: поток файла читается кусками и сразу пишется в ответ,
+     * весь файл в памяти не держится. Поток ответа не закрывается.
+     */
+    public void gzip(InputStream in, OutputStream out) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long original = 0;
+        long cpu = 0;
+
+        try (GZIPOutputStream gzip = new LeveledGzipOutputStream(counted, level);
+             BufferPool.Buffer pooled = bufferPool.acquire(COPY_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                long start = THREADS.getCurrentThreadCpuTime();
+                gzip.write(buffer, 0, read);
+                cpu += THREADS.getCurrentThreadCpuTime() - start;
+                original += read;
+            }
+            long start = THREADS.getCurrentThreadCpuTime();
+            gzip.finish();
+            cpu += THREADS.getCurrentThreadCpuTime() - start;
+        } finally {
+            originalBytes.increment(original);
+            sentBytes.increment(counted.count);
+            cpuTime.record(Math.max(cpu, 0), TimeUnit.NANOSECONDS);
+        }
+        log.debug("Сжатие ответа: {} -> {} байт", original, counted.count);
+    }
+
+    private static MimeType contentType(FileDownload download) {
+        if (download.getContentType() != null) {
+            try {
+                MimeType stored = MimeTypeUtils.parseMimeType(download.getContentType());
+                if (!MediaType.APPLICATION_OCTET_STREAM.equalsTypeAndSubtype(stored)) {
+                    return stored;
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Некорректный тип содержимого {}: {}", download.getContentType(), e.getMessage());
+            }
+        }
+        // Клиенты часто загружают файлы как application/octet-stream, уточняем тип по расширению
+        return MediaTypeFactory.getMediaType(download.getFilename()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+        private LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, COPY_BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    // Считает отправленные байты и не закрывает поток ответа: его закрывает контейнер
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.diplom.controller;
+
+import com.diplom.model.dto.FileDownload;
+import com.diplom.service.BufferPool;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Формирует потоковые ответы на скачивание файла: полный объект (200),
+ * один или несколько диапазонов (206), неудовлетворимый Range (416)
+ * и ответ на условный запрос без тела (304).
+ * Объект с локальной копией на диске отдается средствами sendfile контейнера
+ * без копирования через буферы приложения. Текстовые файлы целиком сжимаются
+ * на лету, если клиент принимает gzip.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DownloadResponseFactory {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String CRLF = "\r\n";
+
+    // Атрибуты запроса, через которые Tomcat отдает файл системным вызовом sendfile
+    static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final DownloadCompression compression;
+    private final BufferPool bufferPool;
+
+    public ResponseEntity<StreamingResponseBody> build(FileDownload download, HttpHeaders requestHeaders,
+                                                       HttpServletRequest request) {
+        long size = download.getSize();
+
+        // Диапазоны отдаются только из несжатого представления
+        boolean gzip = compression.isCompressible(download)
+                && !requestHeaders.containsKey(HttpHeaders.RANGE)
+                && compression.acceptsGzip(requestHeaders);
+        if (gzip) {
+            download = download.withEtag(DownloadCompression.gzipEtag(download.getEtag()));
+        }
+
+        if (isNotModified(download, requestHeaders)) {
+            return new ResponseEntity<>(validatorHeaders(download), HttpStatus.NOT_MODIFIED);
+        }
+        if (gzip) {
+            return compressedContent(download);
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный заголовок Range для файла {}: {}", download.getFilename(), e.getMessage());
+            return notSatisfiable(size);
+        }
+
+        if (ranges.isEmpty() || !ifRangeMatches(download, requestHeaders)) {
+            return fullContent(download, request);
+        }
+
+        List<long[]> regions = toRegions(ranges, size);
+        if (regions.isEmpty()) {
+            return notSatisfiable(size);
+        }
+
+        return regions.size() == 1
+                ? singleRange(download, regions.getFirst(), request)
+                : multipleRanges(download, regions);
+    }
+
+    private ResponseEntity<StreamingResponseBody> fullContent(FileDownload download, HttpServletRequest request) {
+        HttpHeaders headers = baseHeaders(download);
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(download.getSize());
+
+        Optional<Path> localFile = download.findLocalFile();
+        if (localFile.isPresent()) {
+            return localRegion(download, localFile.get(), 0, download.getSize(), headers, HttpStatus.OK, request);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream inputStream = download.openStream()) {
+                copy(inputStream, outputStream);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    // Длина сжатого ответа заранее неизвестна, ответ передается chunked
+    private ResponseEntity<StreamingResponseBody> compressedContent(FileDownload download) {
+        HttpHeaders headers = baseHeaders(download);
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.set(HttpHeaders.CONTENT_ENCODING, DownloadCompression.GZIP);
+
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream inputStream = download.openStream()) {
+                compression.gzip(inputStream, outputStream);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private ResponseEntity<StreamingResponseBody> singleRange(FileDownload download, long[] region,
+                                                              HttpServletRequest request) {
+        long start = region[0];
+        long length = region[1];
+
+        HttpHeaders headers = baseHeaders(download);
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(length);
+        headers.set(HttpHeaders.CONTENT_RANGE, contentRange(start, length, download.getSize()));
+
+        Optional<Path> localFile = download.findLocalFile();
+        if (localFile.isPresent()) {
+            return localRegion(download, localFile.get(), start, length, headers, HttpStatus.PARTIAL_CONTENT, request);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream inputStream = download.openRange(start, length)) {
+                copy(inputStream, outputStream);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * Отдача участка локального файла. Если контейнер поддерживает sendfile,
+     * тело не пишется приложением вовсе: Tomcat передает файл в сокет через
+     * FileChannel.transferTo после отправки заголовков. Файл он открывает по пути уже
+     * после ответа контроллера, поэтому путь указывает на ссылку кэша, которую
+     * вытеснение не удаляет (DiskObjectCache.locate). Иначе участок копируется
+     * из файла через буфер: transferTo в OutputStream сервлета не избавляет
+     * от копирования и по замерам DownloadCopyBenchmark медленнее обычного цикла.
+     */
+    private ResponseEntity<StreamingResponseBody> localRegion(FileDownload download, Path file, long start, long length,
+                                                              HttpHeaders headers, HttpStatus status,
+                                                              HttpServletRequest request) {
+        if (request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + length);
+            return new ResponseEntity<>(headers, status);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                copyRegion(file, start, length, outputStream);
+            } catch (NoSuchFileException e) {
+                // Копия вытеснена из кэша между проверкой и отдачей, читаем объект из хранилища
+                log.debug("Локальная копия {} недоступна, чтение из хранилища", download.getFilename());
+                try (InputStream inputStream = download.openRange(start, length)) {
+                    copy(inputStream, outputStream);
+                }
+            }
+        };
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+    /**
+     * Ответ multipart/byteranges: каждый диапазон читается из хранилища
+     * отдельным ranged-запросом, длина ответа известна заранее.
+     */
+    private ResponseEntity<StreamingResponseBody> multipleRanges(FileDownload download, List<long[]> regions) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        List<byte[]> partHeaders = new ArrayList<>(regions.size());
+        long contentLength = 0;
+        for (long[] region : regions) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(region[0], region[1], download.getSize()) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + region[1];
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        HttpHeaders headers = baseHeaders(download);
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        headers.setContentLength(contentLength);
+
+        StreamingResponseBody body = outputStream -> {
+            for (int i = 0; i < regions.size(); i++) {
+                long[] region = regions.get(i);
+                outputStream.write(partHeaders.get(i));
+                try (InputStream inputStream = download.openRange(region[0], region[1])) {
+                    copy(inputStream, outputStream);
+                }
+            }
+            outputStream.write(closing);
+            outputStream.flush();
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * If-None-Match (слабое сравнение ETag) имеет приоритет над If-Modified-Since,
+     * как предписывает RFC 9110. Даты сравниваются с точностью до секунды.
+     */
+    private boolean isNotModified(FileDownload download, HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            if (download.getEtag() == null) {
+                return false;
+            }
+            String etag = weak(download.getEtag());
+            return ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || weak(tag).equals(etag));
+        }
+
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince != -1 && download.getLastModified() != null
+                && download.getLastModified().getEpochSecond() <= ifModifiedSince / 1000;
+    }
+
+    // If-Range: диапазон отдается, только если представление не изменилось, иначе весь файл
+    private boolean ifRangeMatches(FileDownload download, HttpHeaders requestHeaders) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(download.getEtag());
+        }
+        try {
+            long date = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+            return download.getLastModified() != null && download.getLastModified().getEpochSecond() == date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private ResponseEntity<StreamingResponseBody> notSatisfiable(long size) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+        return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Переводит диапазоны из заголовка в пары {начало, длина}.
+     * Неудовлетворимые диапазоны отбрасываются; суммарная длина не может
+     * превышать размер файла, чтобы Range не использовали для усиления трафика.
+     */
+    private List<long[]> toRegions(List<HttpRange> ranges, long size) {
+        List<long[]> regions = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (HttpRange range : ranges) {
+            if (size == 0) {
+                break;
+            }
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            if (start >= size || end < start) {
+                continue;
+            }
+            long length = end - start + 1;
+            total += length;
+            regions.add(new long[]{start, length});
+        }
+        if (ranges.size() > 1 && total > size) {
+            log.warn("Суммарная длина диапазонов {} превышает размер файла {}", total, size);
+            return List.of();
+        }
+        return regions;
+    }
+
+    private HttpHeaders baseHeaders(FileDownload download) {
+        // Кодируем имя файла в UTF-8 (по RFC 5987)
+        String encodedFileName = URLEncoder.encode(download.getFilename(), StandardCharsets.UTF_8)
+                .replace("+", "%20");
+
+        HttpHeaders headers = validatorHeaders(download);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("*=UTF-8''" + encodedFileName, StandardCharsets.UTF_8)
+                .build());
+        return headers;
+    }
+
+    // Валидаторы кэша: клиент может хранить копию, но обязан перепроверять ее условным запросом
+    private HttpHeaders validatorHeaders(FileDownload download) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        if (download.getEtag() != null) {
+            headers.setETag(download.getEtag());
+        }
+        if (download.getLastModified() != null) {
+            headers.setLastModified(download.getLastModified());
+        }
+        // Ответ зависит от Accept-Encoding, если файл может быть отдан сжатым
+        if (compression.isCompressible(download)) {
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        }
+        return headers;
+    }
+
+    private static String contentRange(long start, long length, long size) {
+        return "bytes " + start + "-" + (start + length - 1) + "/" + size;
+    }
+
+    private void copyRegion(Path file, long start, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferPool.Buffer pooled = bufferPool.acquire(COPY_BUFFER_SIZE)) {
+            InputStream in = Channels.newInputStream(channel.position(start));
+            byte[] buffer = pooled.array();
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new EOFException("Файл " + file + " короче ожидаемого");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        out.flush();
+    }
+
+    // Копирование потока через буфер из общего пула
+    private void copy(InputStream in, OutputStream out) throws IOException {
+        try (BufferPool.Buffer pooled = bufferPool.acquire(COPY_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        out.flush();
+    }
+}
@@ -1,31 +1,51 @@
 package com.diplom.controller;
 
 import com.diplom.exception.ErrorResponse;
+import com.diplom.exception.InvalidInputException;
 import com.diplom.model.File;
 import com.diplom.model.User;
+import com.diplom.model.dto.BatchUploadResultDTO;
 import com.diplom.model.dto.FileDTO;
+import com.diplom.model.dto.FileDownload;
+import com.diplom.model.dto.FileListEntry;
+import com.diplom.model.dto.FileListPage;
+import com.diplom.model.dto.FileSignaturesDTO;
 import com.diplom.repository.UserRepository;
+import com.diplom.request.ArchiveRequest;
+import com.diplom.request.DeltaUploadRequest;
+import com.diplom.request.InstantUploadRequest;
+import com.diplom.service.ArchiveService;
+import com.diplom.service.BatchUploadService;
+import com.diplom.service.DeltaUploadService;
 import com.diplom.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
 import org.springframework.http.*;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @AllArgsConstructor
 public class FileController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private final FileService fileService;
     private final UserRepository userRepository;
+    private final DownloadResponseFactory downloadResponseFactory;
+    private final ArchiveService archiveService;
+    private final DeltaUploadService deltaUploadService;
+    private final BatchUploadService batchUploadService;
 
     /**
      * Загрузка файла в файловое хранилище
@@ -41,31 +61,120 @@ public class FileController {
     }
 
     /**
-     * Получение списка файлов у авторизованного пользователя
+     * Загрузка нескольких файлов одним запросом (части "files").
+     * Возвращает результат по каждому файлу: ошибка одного файла не отменяет загрузку остальных.
+     */
+    @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<BatchUploadResultDTO>> uploadFiles(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestPart("files") List<MultipartFile> files) {
+
+        return new ResponseEntity<>(batchUploadService.uploadFiles(loadUser(), files), HttpStatus.OK);
+    }
+
+    /**
+     * Потоковая загрузка файла: тело запроса целиком является содержимым файла.
+     * Байты передаются в MinIO по мере получения, без временных файлов и без лимита multipart.
+     */
+    @PutMapping("/file/content")
+    public ResponseEntity<Void> uploadFileStream(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            HttpServletRequest request) throws IOException {
+
+        fileService.uploadFileStream(loadUser(), filename, request.getInputStream(),
+                request.getContentLengthLong(), request.getContentType());
+
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    /**
+     * Быстрая загрузка по хэшу: если содержимое с таким SHA-256 и размером уже есть
+     * в файлах пользователя, файл создается сразу (200). Ответ 404 означает, что файл нужно загрузить целиком.
+     */
+    @PostMapping("/file/instant")
+    public ResponseEntity<?> instantUpload(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            @RequestBody InstantUploadRequest instantUploadRequest) {
+
+        Optional<File> file = fileService.instantUpload(loadUser(), filename,
+                instantUploadRequest.getSha256(), instantUploadRequest.getSize());
+
+        if (file.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse("Содержимое не найдено, загрузите файл", 404));
+        }
+        return new ResponseEntity<>(FileDTO.of(file.get()), HttpStatus.OK);
+    }
+
+    /**
+     * Сигнатуры блоков текущей версии файла для построения дельты на клиенте.
+     */
+    @GetMapping("/file/signatures")
+    public ResponseEntity<FileSignaturesDTO> fileSignatures(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "blockSize", required = false) Integer blockSize) {
+
+        return new ResponseEntity<>(deltaUploadService.signatures(loadUser(), filename, blockSize), HttpStatus.OK);
+    }
+
+    /**
+     * Загрузка новой версии файла дельтой: часть "delta" описывает сегменты,
+     * часть "data" содержит только новые байты в порядке сегментов DATA.
+     */
+    @PostMapping(value = "/file/delta", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileDTO> uploadDelta(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            @RequestPart("delta") DeltaUploadRequest deltaUploadRequest,
+            @RequestPart(value = "data", required = false) MultipartFile data) throws IOException {
+
+        File file;
+        if (data == null) {
+            file = deltaUploadService.applyDelta(loadUser(), filename, deltaUploadRequest, InputStream.nullInputStream(), 0);
+        } else {
+            try (InputStream inputStream = data.getInputStream()) {
+                file = deltaUploadService.applyDelta(loadUser(), filename, deltaUploadRequest, inputStream, data.getSize());
+            }
+        }
+
+        return new ResponseEntity<>(FileDTO.of(file), HttpStatus.OK);
+    }
+
+    /**
+     * Получение списка файлов у авторизованного пользователя.
+     * Если файлов больше limit, в заголовке X-Next-Cursor возвращается токен следующей страницы,
+     * который передается обратно в параметре cursor. Тело ответа - по-прежнему массив файлов.
      */
     @GetMapping("/list")
     public ResponseEntity<List<FileDTO>> listFiles(
             @RequestHeader(value = "auth-token", required = true) String authToken,
-            @RequestParam(value = "limit", defaultValue = "10", required = false) int limit) {
+            @RequestParam(value = "limit", defaultValue = "10", required = false) int limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
 
         try {
-            List<File> files = fileService.listFiles(loadUser(), limit);
+            FileListPage page = fileService.listFiles(loadUser(), limit, cursor);
+            List<FileListEntry> files = page.getFiles();
 
             if (files.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
 
-            // Преобразование файлов в DTO
+            // Преобразование строк списка в DTO
             List<FileDTO> fileDTO = files.stream()
-                    .map(file -> {
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                        String formattedDate = file.getDateOfUpload().format(formatter);
-                        return new FileDTO(file.getFilename(), (int) file.getSize(), formattedDate);
-                    })
+                    .map(FileDTO::of)
                     .toList();
 
             // Возврат 200 OK с данными
-            return new ResponseEntity<>(fileDTO, HttpStatus.OK);
+            HttpHeaders headers = new HttpHeaders();
+            if (page.getNextCursor() != null) {
+                headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return new ResponseEntity<>(fileDTO, headers, HttpStatus.OK);
+        } catch (InvalidInputException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -104,27 +213,51 @@ public class FileController {
     }
 
     /**
-     * Скачивание файла из файлового хранилища
+     * Скачивание файла из файлового хранилища.
+     * Содержимое передается потоком; поддерживаются запросы с заголовком Range.
+     * Файл из локального кэша отдается без копирования через буферы приложения.
+     * В режиме minio.download.presigned-redirect клиент перенаправляется (302)
+     * на короткоживущую подписанную ссылку и забирает байты напрямую из MinIO;
+     * сжатый в хранилище файл клиенту, не принимающему его кодировку, отдается через приложение.
      */
     @GetMapping("/file")
-    public ResponseEntity<byte[]> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
             @RequestHeader(value = "auth-token", required = true) String authToken,
-            @RequestParam("filename") String filename) {
+            @RequestParam("filename") String filename,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request) {
 
-        byte[] fileBytes = fileService.downloadFile(loadUser(), filename);
+        User user = loadUser();
+        if (fileService.isPresignedRedirect()) {
+            Optional<URI> presigned = fileService.presignedDownloadUrl(user, filename,
+                    coding -> DownloadCompression.accepts(requestHeaders, coding));
+            if (presigned.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND).location(presigned.get()).build();
+            }
+        }
+
+        FileDownload download = fileService.downloadFile(user, filename);
+        return downloadResponseFactory.build(download, requestHeaders, request);
+    }
+
+    /**
+     * Скачивание нескольких файлов одним ZIP-архивом.
+     * Архив собирается на лету и передается потоком, поэтому длина ответа заранее неизвестна.
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestBody ArchiveRequest archiveRequest) {
 
-        // Кодируем имя файла в UTF-8 (по RFC 5987)
-        String encodedFileName = URLEncoder.encode(filename, StandardCharsets.UTF_8)
-                .replace("+", "%20");
+        List<File> files = archiveService.prepareArchive(loadUser(), archiveRequest.getFilenames());
 
-        // Определяем заголовки ответа
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-        headers.setContentDisposition(ContentDisposition.attachment()
-                .filename("*=UTF-8''" + encodedFileName, StandardCharsets.UTF_8)
-                .build());
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDisposition(ContentDisposition.attachment().filename("files.zip").build());
+        headers.setCacheControl(CacheControl.noStore());
 
-        return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+        StreamingResponseBody body = outputStream -> archiveService.writeArchive(files, outputStream);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
     /**
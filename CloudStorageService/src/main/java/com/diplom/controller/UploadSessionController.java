@@ -0,0 +1,93 @@
+package com.diplom.controller;
+
+import com.diplom.model.File;
+import com.diplom.model.UploadSession;
+import com.diplom.model.User;
+import com.diplom.model.dto.FileDTO;
+import com.diplom.model.dto.UploadChunkDTO;
+import com.diplom.model.dto.UploadSessionDTO;
+import com.diplom.repository.UserRepository;
+import com.diplom.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Возобновляемая загрузка по частям: создание сессии, загрузка пронумерованных
+ * частей, проверка принятых частей, завершение или отмена.
+ */
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RestController
+@RequestMapping("/upload/sessions")
+@AllArgsConstructor
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+    private final UserRepository userRepository;
+
+    @PostMapping
+    public ResponseEntity<UploadSessionDTO> createSession(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+
+        UploadSession session = uploadSessionService.createSession(loadUser(), filename, contentType);
+        return new ResponseEntity<>(new UploadSessionDTO(session.getId(), session.getFilename(), List.of()),
+                HttpStatus.CREATED);
+    }
+
+    /**
+     * Загрузка части: тело запроса - байты части, Content-Length обязателен.
+     */
+    @PutMapping("/{sessionId}/chunks/{partNumber}")
+    public ResponseEntity<UploadChunkDTO> uploadChunk(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("sessionId") String sessionId,
+            @PathVariable("partNumber") int partNumber,
+            HttpServletRequest request) throws IOException {
+
+        UploadChunkDTO chunk = uploadSessionService.uploadChunk(loadUser(), sessionId, partNumber,
+                request.getInputStream(), request.getContentLengthLong());
+        return new ResponseEntity<>(chunk, HttpStatus.OK);
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDTO> getSession(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("sessionId") String sessionId) {
+
+        return new ResponseEntity<>(uploadSessionService.getSession(loadUser(), sessionId), HttpStatus.OK);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<FileDTO> completeSession(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("sessionId") String sessionId) {
+
+        File file = uploadSessionService.completeSession(loadUser(), sessionId);
+        return new ResponseEntity<>(FileDTO.of(file), HttpStatus.OK);
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(
+            @RequestHeader(value = "auth-token", required = true) String authToken,
+            @PathVariable("sessionId") String sessionId) {
+
+        uploadSessionService.abortSession(loadUser(), sessionId);
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    private User loadUser() {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    }
+}
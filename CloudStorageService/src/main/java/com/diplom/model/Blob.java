@@ -0,0 +1,94 @@
+package com.diplom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Содержимое файла, хранящееся в MinIO под своим SHA-256. Одинаковое содержимое
+ * хранится один раз, сколько бы файлов (у любых пользователей и под любыми именами)
+ * на него ни ссылалось. refCount - число записей в files, ссылающихся на blob;
+ * blob без ссылок удаляется сборщиком после задержки.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+@Entity
+@Table(name = "blobs")
+public class Blob {
+    private static final String OBJECT_KEY_PREFIX = "blobs/";
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash; // SHA-256 содержимого в hex
+
+    @Column(name = "size", nullable = false)
+    private long size; // исходный размер содержимого
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'NONE'")
+    @Column(name = "codec", nullable = false, length = 16)
+    private StorageCodec codec = StorageCodec.NONE; // чем сжат объект в MinIO
+
+    @Column(name = "stored_size")
+    private Long storedSize; // размер объекта в MinIO; null - хранится без сжатия
+
+    @Column(name = "crc32c")
+    private Long crc32c; // CRC32C исходного содержимого, считается при загрузке вместе с SHA-256
+
+    @Column(name = "mime_type")
+    private String mimeType; // тип, определенный по первым байтам; null - определить не удалось
+
+    @Column(name = "shard", length = 64)
+    private String shard; // шард хранилища с объектом; null - основной шард
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'HOT'")
+    @Column(name = "tier", nullable = false, length = 8)
+    private StorageTier tier = StorageTier.HOT; // уровень хранения, в котором лежит объект
+
+    @Column(name = "last_accessed_at")
+    private LocalDateTime lastAccessedAt; // последнее чтение содержимого (с задержкой сброса счетчиков)
+
+    @ColumnDefault("0")
+    @Column(name = "cold_reads", nullable = false)
+    private int coldReads; // чтения из холодного уровня с момента переноса туда
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt; // последнее изменение счетчика ссылок
+
+    // Ключ объекта в бакете; префикс из первых символов хэша распределяет объекты по "каталогам"
+    public String getObjectKey() {
+        return objectKey(hash);
+    }
+
+    public static String objectKey(String hash) {
+        return OBJECT_KEY_PREFIX + hash.substring(0, 2) + "/" + hash;
+    }
+
+    // Ключ содержимого blob, а не временного или старого объекта
+    public static boolean isObjectKey(String key) {
+        return key.startsWith(OBJECT_KEY_PREFIX);
+    }
+
+    // Хэш содержимого из ключа blob
+    public static String hashOf(String objectKey) {
+        return objectKey.substring(objectKey.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,44 @@
+package com.diplom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Резерв прямой загрузки: клиент отправляет файл в MinIO по подписанной форме
+ * под временным ключом, минуя приложение. Запись в таблице files появляется
+ * только после подтверждения загрузки.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+@Entity
+@Table(name = "direct_uploads")
+public class DirectUpload {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "owner", referencedColumnName = "id", nullable = false)
+    private User owner;
+
+    @Column(name = "filename", nullable = false)
+    private String filename;
+
+    @Column(name = "max_size", nullable = false)
+    private long maxSize; // верхняя граница размера в политике загрузки
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt; // после этого момента MinIO отклоняет загрузку по форме
+}
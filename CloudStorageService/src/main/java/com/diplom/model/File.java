@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
@@ -14,25 +16,44 @@ import java.time.LocalDateTime;
 @Builder
 @Data
 @Entity
-@Table(name = "files")
+// Имя уникально в пределах владельца; индекс же ведет поиск файла пользователя по имени.
+// Второй индекс - постраничный список файлов по (date_of_upload, id).
+// В существующей БД дубли убирает и оба индекса создает FileIndexConfig до старта Hibernate.
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_owner_filename", columnList = "owner, filename", unique = true),
+        @Index(name = "idx_files_owner_listing", columnList = "owner, date_of_upload DESC, id DESC")
+})
 public class File {
+    public static final String ID_SEQUENCE = "files_id_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Идентификаторы выдаются из последовательности блоками по 50, чтобы вставки шли пакетами JDBC.
+    // Шаг последовательности в существующей БД выравнивает FileIdSequenceConfig до старта Hibernate
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "filename", nullable = false)
     String filename;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    // Владелец нужен только по id (он хранится в самой строке), поэтому загружается лениво
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner", referencedColumnName = "id")
     User owner; // владелец файла
 
     @Column(name = "filepath", nullable = false)
-    String filePath; // путь к файлу
+    String filePath; // путь к объекту в виде "бакет/ключ"; от имени файла не зависит
 
     @Column(name = "size", nullable = false)
     private long size;
 
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "blob_hash", referencedColumnName = "hash")
+    Blob blob; // содержимое; null у файлов, загруженных до хранения по хэшу
+
     @CreationTimestamp
     @Column(name = "date_of_upload", nullable = false)
     LocalDateTime dateOfUpload; // время и дата загрузки файла
@@ -43,4 +64,18 @@ public class File {
         this.dateOfUpload = dateOfUpload;
     }
 
+    // Ключ объекта в MinIO: у старых файлов без blob он записан в filePath (исходно - имя файла)
+    public String getObjectKey() {
+        if (blob != null) {
+            return blob.getObjectKey();
+        }
+        int separator = filePath == null ? -1 : filePath.indexOf('/');
+        return separator < 0 ? filename : filePath.substring(separator + 1);
+    }
+
+    // Кодек объекта; size всегда хранит исходный размер
+    public StorageCodec getCodec() {
+        return blob != null ? blob.getCodec() : StorageCodec.NONE;
+    }
+
 }
\ No newline at end of file
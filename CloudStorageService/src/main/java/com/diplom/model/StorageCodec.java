@@ -0,0 +1,106 @@
+package com.diplom.model;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Кодек, которым содержимое сжато в MinIO. DEFLATE пишет формат zlib (RFC 1950),
+ * то есть ровно то, что HTTP называет Content-Encoding: deflate.
+ */
+public enum StorageCodec {
+    NONE,
+    DEFLATE;
+
+    // Значение Content-Encoding для отдачи объекта как есть, без распаковки
+    public String contentEncoding() {
+        return this == DEFLATE ? "deflate" : null;
+    }
+
+    // Поток сжатых байтов поверх исходного; закрытие освобождает память Deflater
+    public InputStream encode(InputStream in, int level) {
+        if (this == NONE) {
+            return in;
+        }
+        Deflater deflater = new Deflater(level);
+        return new DeflaterInputStream(in, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    // Потоковая распаковка, в памяти только окно Inflater
+    public InputStream decode(InputStream in) {
+        return this == NONE ? in : new InflaterInputStream(in);
+    }
+
+    /**
+     * Диапазон исходного содержимого. Сжатый объект нельзя читать с произвольного смещения,
+     * поэтому он распаковывается с начала, а байты до offset пропускаются.
+     */
+    public InputStream decode(InputStream in, long offset, long length) throws IOException {
+        InputStream decoded = decode(in);
+        try {
+            decoded.skipNBytes(offset);
+        } catch (IOException e) {
+            decoded.close();
+            throw e;
+        }
+        return new LimitedInputStream(decoded, length);
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = in.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
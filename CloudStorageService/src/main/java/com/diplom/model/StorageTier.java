@@ -0,0 +1,10 @@
+package com.diplom.model;
+
+/**
+ * Уровень хранения содержимого blob. HOT - основное хранилище (MinIO или локальный диск),
+ * COLD - отдельный более дешевый бакет для содержимого, которое давно не читали.
+ */
+public enum StorageTier {
+    HOT,
+    COLD
+}
@@ -0,0 +1,44 @@
+package com.diplom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сессия возобновляемой загрузки. Части хранятся в MinIO как части multipart upload,
+ * в БД только связь сессии с владельцем и uploadId. Запись в таблице files
+ * появляется только после завершения сессии.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Data
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "owner", referencedColumnName = "id", nullable = false)
+    private User owner;
+
+    @Column(name = "filename", nullable = false)
+    private String filename;
+
+    @Column(name = "upload_id", nullable = false)
+    private String uploadId; // идентификатор multipart upload в MinIO
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt; // время последней загруженной части, по нему сессия считается брошенной
+}
@@ -0,0 +1,13 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchUploadResultDTO {
+    private String filename;
+    private boolean uploaded;
+    private long size;
+    private String error; // причина ошибки, null у загруженного файла
+}
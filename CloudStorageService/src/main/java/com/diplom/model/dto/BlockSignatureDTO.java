@@ -0,0 +1,14 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BlockSignatureDTO {
+    private int index;
+    private long offset;
+    private int length;
+    private long weak; // Adler-32 блока: клиент ищет совпадения скользящей суммой
+    private String strong; // SHA-256 блока в hex для подтверждения совпадения
+}
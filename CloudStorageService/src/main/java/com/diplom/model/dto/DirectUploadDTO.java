@@ -0,0 +1,17 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class DirectUploadDTO {
+    private String uploadId;
+    private String filename;
+    private String url; // адрес MinIO, на который отправляется форма
+    private Map<String, String> fields; // поля формы; файл добавляется последним полем "file"
+    private long maxSize;
+    private String expiresAt;
+}
@@ -4,13 +4,28 @@ import com.diplom.model.File;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 @Data
 @AllArgsConstructor
 public class FileDTO {
+    // Форматтер неизменяемый и потокобезопасный: один на все ответы, а не новый на каждый файл
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private String filename;
     private int size;
     private String editedAt;
 
+    public static FileDTO of(String filename, long size, LocalDateTime dateOfUpload) {
+        return new FileDTO(filename, (int) size, DATE_FORMAT.format(dateOfUpload));
+    }
+
+    public static FileDTO of(File file) {
+        return of(file.getFilename(), file.getSize(), file.getDateOfUpload());
+    }
+
+    public static FileDTO of(FileListEntry entry) {
+        return of(entry.filename(), entry.size(), entry.dateOfUpload());
+    }
 }
@@ -0,0 +1,53 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.With;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Дескриптор скачиваемого файла: метаданные объекта и ленивое открытие потока.
+ * Байты объекта не читаются, пока не вызван {@link #openStream()}.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class FileDownload {
+    private final String filename;
+    private final String contentType;
+    private final long size; // размер из statObject, идет в Content-Length
+    @With
+    private final String etag; // сильный валидатор в кавычках, например "9b2cf535f27731c974343645a3985328"
+    private final Instant lastModified;
+    private final ContentOpener content;
+    private final LocalFileLocator localFileLocator; // может отсутствовать, если у объекта нет локальной копии
+
+    public InputStream openStream() {
+        return content.open(0, size);
+    }
+
+    // Поток на диапазон байтов [offset, offset + length)
+    public InputStream openRange(long offset, long length) {
+        return content.open(offset, length);
+    }
+
+    // Локальный файл с полной копией объекта, который можно отдать без чтения через поток
+    public Optional<Path> findLocalFile() {
+        return localFileLocator == null ? Optional.empty() : localFileLocator.locate();
+    }
+
+    @FunctionalInterface
+    public interface LocalFileLocator {
+        Optional<Path> locate();
+    }
+
+    @FunctionalInterface
+    public interface ContentOpener {
+        InputStream open(long offset, long length);
+    }
+}
@@ -0,0 +1,10 @@
+package com.diplom.model.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка списка файлов: только выводимые поля и id для курсора следующей страницы.
+ * Заполняется конструктором прямо в запросе, без сущности File и join с владельцем и blob.
+ */
+public record FileListEntry(Long id, String filename, long size, LocalDateTime dateOfUpload) {
+}
@@ -0,0 +1,16 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница списка файлов: файлы и токен продолжения (null - страница последняя).
+ */
+@Data
+@AllArgsConstructor
+public class FileListPage {
+    private List<FileListEntry> files;
+    private String nextCursor;
+}
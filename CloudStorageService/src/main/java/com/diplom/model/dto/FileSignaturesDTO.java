@@ -0,0 +1,16 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class FileSignaturesDTO {
+    private String filename;
+    private long size;
+    private String version; // версия, от которой строится дельта; передается обратно при загрузке
+    private int blockSize;
+    private List<BlockSignatureDTO> blocks;
+}
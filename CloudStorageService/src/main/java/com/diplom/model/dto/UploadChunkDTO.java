@@ -0,0 +1,11 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UploadChunkDTO {
+    private int partNumber;
+    private long size;
+}
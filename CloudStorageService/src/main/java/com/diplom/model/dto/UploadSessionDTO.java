@@ -0,0 +1,14 @@
+package com.diplom.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class UploadSessionDTO {
+    private String sessionId;
+    private String filename;
+    private List<UploadChunkDTO> chunks; // уже принятые части, по ним клиент продолжает загрузку
+}
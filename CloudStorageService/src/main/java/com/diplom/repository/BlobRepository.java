@@ -0,0 +1,60 @@
+package com.diplom.repository;
+
+import com.diplom.model.Blob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    // Строка blob блокируется до конца транзакции: счетчик ссылок и удаление объекта не пересекаются
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Blob b where b.hash = :hash")
+    Optional<Blob> findForUpdate(@Param("hash") String hash);
+
+    // Вставка нового blob; при одновременной загрузке того же содержимого вторая вставка ничего не делает
+    @Modifying
+    @Query(value = "INSERT INTO blobs (hash, size, ref_count, created_at, updated_at, last_accessed_at, cold_reads) "
+            + "VALUES (:hash, :size, 0, now(), now(), now(), 0) ON CONFLICT (hash) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("size") long size);
+
+    // Кандидаты на удаление: без ссылок дольше заданного времени
+    @Query("select b.hash from Blob b where b.refCount = 0 and b.updatedAt < :threshold")
+    List<String> findUnreferencedBefore(@Param("threshold") LocalDateTime threshold);
+
+    // Обход горячих blob со ссылками по возрастанию хэша: страница начинается после последнего хэша предыдущей
+    @Query("select b from Blob b where b.hash > :after and b.refCount > 0"
+            + " and b.tier = com.diplom.model.StorageTier.HOT order by b.hash")
+    List<Blob> findReferencedAfter(@Param("after") String after, Pageable pageable);
+
+    // Горячие blob со ссылками, которые не читали с момента threshold
+    @Query("select b from Blob b where b.hash > :after and b.refCount > 0"
+            + " and b.tier = com.diplom.model.StorageTier.HOT and b.lastAccessedAt < :threshold order by b.hash")
+    List<Blob> findIdleAfter(@Param("after") String after, @Param("threshold") LocalDateTime threshold,
+                             Pageable pageable);
+
+    // Холодные blob со ссылками, прочитанные не меньше minReads раз
+    @Query("select b from Blob b where b.hash > :after and b.refCount > 0"
+            + " and b.tier = com.diplom.model.StorageTier.COLD and b.coldReads >= :minReads order by b.hash")
+    List<Blob> findFrequentlyReadColdAfter(@Param("after") String after, @Param("minReads") int minReads,
+                                           Pageable pageable);
+
+    @Modifying
+    @Query("update Blob b set b.lastAccessedAt = :at where b.hash in :hashes")
+    int touch(@Param("hashes") Collection<String> hashes, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query("update Blob b set b.coldReads = b.coldReads + :reads, b.lastAccessedAt = :at where b.hash = :hash")
+    int addColdReads(@Param("hash") String hash, @Param("reads") int reads, @Param("at") LocalDateTime at);
+}
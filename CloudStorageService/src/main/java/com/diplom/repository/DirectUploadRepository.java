@@ -0,0 +1,18 @@
+package com.diplom.repository;
+
+import com.diplom.model.DirectUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DirectUploadRepository extends JpaRepository<DirectUpload, String> {
+
+    Optional<DirectUpload> findByIdAndOwner_Id(String id, Long ownerId);
+
+    // Резервы, срок загрузки по которым истек до указанного момента
+    List<DirectUpload> findByExpiresAtBefore(LocalDateTime threshold);
+}
@@ -1,21 +1,53 @@
 package com.diplom.repository;
 
 import com.diplom.model.File;
+import com.diplom.model.dto.FileListEntry;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import org.springframework.data.domain.Page;
-
 
 @Repository
 public interface FileRepository extends JpaRepository<File, Long> {
 
-    // Метод для поиска файла по имени и имени пользователя
-    Optional<File> findByFilenameAndOwner_Username(String filename, String username);
+    String LIST_ENTRY = "new com.diplom.model.dto.FileListEntry(f.id, f.filename, f.size, f.dateOfUpload)";
+
+    // Файл пользователя по имени: одна проверка по уникальному индексу (owner, filename), без join с "user"
+    Optional<File> findByOwner_IdAndFilename(Long userId, String filename);
+
+    // Список файлов постранично по ключу (date_of_upload, id) от новых к старым: Slice без COUNT,
+    // следующая страница начинается после последней строки предыдущей и стоит столько же, сколько первая
+    // Выбираются только поля списка: без сущностей, join с владельцем и blob
+    @Query("select " + LIST_ENTRY + " from File f where f.owner.id = :userId order by f.dateOfUpload desc, f.id desc")
+    Slice<FileListEntry> findFirstPage(@Param("userId") Long userId, Pageable pageable);
+
+    // Условие date <= :date повторяет OR отдельно, чтобы оно стало границей сканирования индекса
+    @Query("select " + LIST_ENTRY + " from File f where f.owner.id = :userId and f.dateOfUpload <= :date"
+            + " and (f.dateOfUpload < :date or f.id < :id) order by f.dateOfUpload desc, f.id desc")
+    Slice<FileListEntry> findPageAfter(@Param("userId") Long userId, @Param("date") LocalDateTime date,
+                              @Param("id") Long id, Pageable pageable);
+
+    // Есть ли у пользователя файл с этим содержимым (быстрая загрузка связывает только свое содержимое)
+    boolean existsByOwner_IdAndBlob_Hash(Long userId, String hash);
+
+    // Все запрошенные файлы пользователя одним запросом
+    List<File> findByOwner_IdAndFilenameIn(Long userId, Collection<String> filenames);
+
+    // Старые файлы без blob: ключи объектов по возрастанию, начиная после after
+    @Query("select distinct f.filePath from File f where f.blob is null and f.filePath > :after order by f.filePath")
+    List<String> findLegacyFilePaths(@Param("after") String after, Pageable pageable);
 
-    Page<File> findByOwner_Username(String username, Pageable pageable);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<File> findByFilePathAndBlobIsNull(String filePath);
 
-    Page<File> findByOwner_Id(Long userId, Pageable pageable);
+    boolean existsByFilePathAndBlobIsNull(String filePath);
 }
\ No newline at end of file
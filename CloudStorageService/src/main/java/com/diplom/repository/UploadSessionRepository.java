@@ -0,0 +1,18 @@
+package com.diplom.repository;
+
+import com.diplom.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    Optional<UploadSession> findByIdAndOwner_Id(String id, Long ownerId);
+
+    // Сессии без активности с указанного момента
+    List<UploadSession> findByUpdatedAtBefore(LocalDateTime threshold);
+}
@@ -0,0 +1,12 @@
+package com.diplom.request;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ArchiveRequest {
+
+    // Имена файлов текущего пользователя, которые попадут в архив
+    private List<String> filenames;
+}
@@ -0,0 +1,33 @@
+package com.diplom.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Описание новой версии файла относительно текущей: последовательность сегментов,
+ * каждый из которых либо ссылается на диапазон текущей версии (COPY),
+ * либо берет следующие length байтов из присланных данных (DATA).
+ */
+@Data
+public class DeltaUploadRequest {
+
+    private String version; // версия из ответа на запрос сигнатур
+    private List<Segment> segments;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Segment {
+        private SegmentType type;
+        private long offset; // начало диапазона в текущей версии, только для COPY
+        private long length;
+    }
+
+    public enum SegmentType {
+        COPY,
+        DATA
+    }
+}
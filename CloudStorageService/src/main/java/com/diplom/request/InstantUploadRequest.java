@@ -0,0 +1,10 @@
+package com.diplom.request;
+
+import lombok.Data;
+
+@Data
+public class InstantUploadRequest {
+
+    private String sha256; // хэш содержимого в hex, посчитанный клиентом
+    private long size;
+}
@@ -0,0 +1,212 @@
+package com.diplom.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Скачивание нескольких файлов одним ZIP-архивом, который собирается на лету.
+ * Пока в архив пишется текущий файл, потоки на несколько следующих уже открываются
+ * в MinIO (ограниченная предвыборка), поэтому задержка на каждый объект перекрывается
+ * передачей предыдущего. Память не зависит от размера архива: в ней только буфер
+ * копирования и открытые соединения окна предвыборки.
+ */
+@Slf4j
+@Service
+public class ArchiveService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Уже сжатые форматы: повторное сжатие тратит CPU почти без выигрыша
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst",
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "aac", "ogg", "flac", "mp4", "mkv", "avi", "mov", "webm",
+            "docx", "xlsx", "pptx", "odt", "ods", "jar", "apk");
+
+    private final FileRepository fileRepository;
+    private final StorageBackend storageBackend;
+    private final BufferPool bufferPool;
+    private final int prefetch;
+    private final int maxFiles;
+    private final ExecutorService prefetchExecutor;
+
+    @Autowired
+    public ArchiveService(FileRepository fileRepository, StorageBackend storageBackend, BufferPool bufferPool,
+                          @Value("${archive.prefetch:4}") int prefetch,
+                          @Value("${archive.prefetch-threads:16}") int prefetchThreads,
+                          @Value("${archive.max-files:1000}") int maxFiles) {
+        this.fileRepository = fileRepository;
+        this.storageBackend = storageBackend;
+        this.bufferPool = bufferPool;
+        this.prefetch = prefetch;
+        this.maxFiles = maxFiles;
+        this.prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads,
+                Thread.ofPlatform().name("archive-prefetch-", 0).daemon().factory());
+    }
+
+    /**
+     * Проверка запроса и владельца: все файлы выбираются из БД одним запросом
+     * до начала ответа, чтобы ошибка вернулась статусом, а не оборванным архивом.
+     */
+    public List<File> prepareArchive(User user, List<String> filenames) {
+        if (filenames == null || filenames.isEmpty()) {
+            log.error("Список файлов для архива пуст");
+            throw new InvalidInputException("Список файлов для архива пуст");
+        }
+        Set<String> requested = new LinkedHashSet<>(filenames);
+        if (requested.size() > maxFiles) {
+            log.error("Запрошено {} файлов для архива, допустимо не больше {}", requested.size(), maxFiles);
+            throw new InvalidInputException("Слишком много файлов для архива");
+        }
+
+        Map<String, File> found = fileRepository.findByOwner_IdAndFilenameIn(user.getId(), requested).stream()
+                .collect(Collectors.toMap(File::getFilename, Function.identity(), (first, second) -> first));
+
+        List<String> missing = requested.stream().filter(name -> !found.containsKey(name)).toList();
+        if (!missing.isEmpty()) {
+            log.error("Файлы {} не найдены для пользователя {}", missing, user.getUsername());
+            throw new FilesNotFoundException("Файлы не найдены: " + missing);
+        }
+
+        // Порядок файлов в архиве совпадает с порядком в запросе
+        return requested.stream().map(found::get).toList();
+    }
+
+    public void writeArchive(List<File> files, OutputStream outputStream) throws IOException {
+        Deque<CompletableFuture<InputStream>> window = new ArrayDeque<>(prefetch);
+        int next = 0;
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        Set<String> entryNames = new HashSet<>();
+        try {
+            for (File file : files) {
+                while (next < files.size() && window.size() < prefetch) {
+                    window.add(open(files.get(next++)));
+                }
+
+                try (InputStream inputStream = await(window.poll(), file)) {
+                    ZipEntry entry = new ZipEntry(uniqueEntryName(file.getFilename(), entryNames));
+                    if (file.getDateOfUpload() != null) {
+                        entry.setTimeLocal(file.getDateOfUpload());
+                    }
+                    zip.setLevel(isCompressed(file.getFilename()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    zip.putNextEntry(entry);
+                    copy(inputStream, zip);
+                    zip.closeEntry();
+                }
+            }
+            // Поток ответа закрывает контейнер, здесь только дописываем центральный каталог
+            zip.finish();
+            zip.flush();
+        } finally {
+            // При обрыве соединения закрываем потоки, уже открытые предвыборкой
+            window.forEach(pending -> pending.whenComplete((inputStream, e) -> closeQuietly(inputStream)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private CompletableFuture<InputStream> open(File file) {
+        return CompletableFuture.supplyAsync(
+                () -> file.getCodec().decode(storageBackend.getFileStream(file.getObjectKey())), prefetchExecutor);
+    }
+
+    private static InputStream await(CompletableFuture<InputStream> future, File file) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Прервано ожидание файла " + file.getFilename());
+        } catch (ExecutionException e) {
+            log.error("Ошибка при открытии файла {} для архива", file.getFilename());
+            throw new GeneralServiceException("Ошибка при открытии файла для архива: " + file.getFilename(), e.getCause());
+        }
+    }
+
+    static boolean isCompressed(String filename) {
+        String extension = StringUtils.getFilenameExtension(filename);
+        return extension != null && COMPRESSED_EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT));
+    }
+
+    // Имя записи без разделителей каталогов, чтобы при распаковке файл не попал за пределы папки
+    private static String entryName(String filename) {
+        return filename.replace('/', '_').replace('\\', '_');
+    }
+
+    /**
+     * После замены разделителей разные имена могут совпасть ("a/b" и "a_b"), а повтор записи
+     * ZipOutputStream отвергает посреди уже начатой отдачи. Повтору добавляется номер перед
+     * расширением: "a_b (1)", "отчет (2).pdf".
+     */
+    static String uniqueEntryName(String filename, Set<String> used) {
+        String name = entryName(filename);
+        if (used.add(name)) {
+            return name;
+        }
+        String extension = StringUtils.getFilenameExtension(name);
+        String base = extension == null ? name : name.substring(0, name.length() - extension.length() - 1);
+        String suffix = extension == null ? "" : "." + extension;
+        for (int n = 1; ; n++) {
+            String candidate = base + " (" + n + ")" + suffix;
+            if (used.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private void copy(InputStream in, OutputStream out) throws IOException {
+        try (BufferPool.Buffer pooled = bufferPool.acquire(COPY_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.warn("Ошибка при закрытии потока файла: {}", e.getMessage());
+        }
+    }
+}
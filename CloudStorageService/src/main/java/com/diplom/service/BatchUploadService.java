@@ -0,0 +1,127 @@
+package com.diplom.service;
+
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.User;
+import com.diplom.model.dto.BatchUploadResultDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Загрузка нескольких файлов одним запросом.
+ * Содержимое передается в MinIO параллельно на пуле с ограниченным числом потоков,
+ * после чего записи обо всех загруженных файлах сохраняются в одной транзакции.
+ * Ошибка одного файла не прерывает остальные: результат возвращается по каждому файлу.
+ */
+@Slf4j
+@Service
+public class BatchUploadService {
+
+    private final BlobService blobService;
+    private final FileService fileService;
+    private final int maxFiles;
+    private final ExecutorService uploadExecutor;
+
+    @Autowired
+    public BatchUploadService(BlobService blobService, FileService fileService,
+                              @Value("${upload.batch.threads:16}") int threads,
+                              @Value("${upload.batch.max-files:1000}") int maxFiles) {
+        this.blobService = blobService;
+        this.fileService = fileService;
+        this.maxFiles = maxFiles;
+        this.uploadExecutor = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("batch-upload-", 0).daemon().factory());
+    }
+
+    public List<BatchUploadResultDTO> uploadFiles(User user, List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            log.error("Список файлов для загрузки пуст");
+            throw new InvalidInputException("Список файлов для загрузки пуст");
+        }
+        if (files.size() > maxFiles) {
+            log.error("Запрошена загрузка {} файлов, максимум {}", files.size(), maxFiles);
+            throw new InvalidInputException("За один запрос можно загрузить не больше " + maxFiles + " файлов");
+        }
+        log.info("⚠\uFE0F Загружается {} файлов для пользователя: {}", files.size(), user.getUsername());
+
+        // Проверки, не требующие обращения к MinIO, выполняются сразу
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<Blob>> uploads = new LinkedHashMap<>();
+        Set<String> filenames = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String filename = file.getOriginalFilename();
+            if (filename == null || filename.trim().isEmpty()) {
+                errors.put(i, "Имя файла пустое!");
+            } else if (file.isEmpty()) {
+                errors.put(i, "Файл пустой!");
+            } else if (!filenames.add(filename)) {
+                errors.put(i, "Файл с таким именем уже есть в запросе");
+            } else {
+                uploads.put(i, CompletableFuture.supplyAsync(() -> store(file), uploadExecutor));
+            }
+        }
+
+        Map<String, Blob> stored = new LinkedHashMap<>();
+        uploads.forEach((i, upload) -> {
+            String filename = files.get(i).getOriginalFilename();
+            try {
+                stored.put(filename, upload.join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Ошибка при загрузке файла {}: {}", filename, cause.getMessage());
+                errors.put(i, "Ошибка при загрузке файла: " + cause.getMessage());
+            }
+        });
+
+        if (!stored.isEmpty()) {
+            try {
+                fileService.commitUploadedFiles(user, stored);
+            } catch (RuntimeException e) {
+                // Записи не сохранены: ссылки на уже загруженное содержимое снимаются, объекты удалит сборщик
+                stored.values().forEach(blobService::release);
+                throw e;
+            }
+        }
+
+        List<BatchUploadResultDTO> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String error = errors.get(i);
+            results.add(new BatchUploadResultDTO(file.getOriginalFilename(), error == null, file.getSize(), error));
+        }
+        log.info("Загружено {} из {} файлов для пользователя {}", stored.size(), files.size(), user.getUsername());
+        return results;
+    }
+
+    private Blob store(MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return blobService.store(inputStream, file.getSize(), file.getContentType());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+}
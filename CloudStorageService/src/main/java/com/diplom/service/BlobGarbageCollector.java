@@ -0,0 +1,51 @@
+package com.diplom.service;
+
+import com.diplom.repository.BlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Периодическое удаление blob, на которые больше не ссылается ни один файл.
+ * Задержка перед удалением позволяет быстрой загрузке снова сослаться на только что
+ * освобожденное содержимое и не ломает уже выданные подписанные ссылки.
+ * Каждый blob удаляется в своей транзакции (BlobService.collect).
+ */
+@Slf4j
+@Component
+public class BlobGarbageCollector {
+
+    private final BlobRepository blobRepository;
+    private final BlobService blobService;
+    private final Duration delay;
+
+    @Autowired
+    public BlobGarbageCollector(BlobRepository blobRepository, BlobService blobService,
+                                @Value("${storage.blobs.gc-delay:PT1H}") Duration delay) {
+        this.blobRepository = blobRepository;
+        this.blobService = blobService;
+        this.delay = delay;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.blobs.gc-interval:PT1H}")
+    public void collectUnreferenced() {
+        int removed = 0;
+        for (String hash : blobRepository.findUnreferencedBefore(LocalDateTime.now().minus(delay))) {
+            try {
+                if (blobService.collect(hash)) {
+                    removed++;
+                }
+            } catch (Exception e) {
+                log.warn("Не удалось удалить blob {}: {}", hash, e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            log.info("Удалено blob без ссылок: {}", removed);
+        }
+    }
+}
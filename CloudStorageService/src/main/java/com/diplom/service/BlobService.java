@@ -0,0 +1,438 @@
+package com.diplom.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.StorageCodec;
+import com.diplom.model.StorageTier;
+import com.diplom.repository.BlobRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Хранение содержимого файлов по SHA-256 (content-addressable storage).
+ * Хэш считается на лету, пока поток уходит в хранилище под временным ключом;
+ * затем содержимое либо переносится под ключ своего хэша, либо, если такой blob уже есть,
+ * временный объект удаляется и у существующего blob увеличивается счетчик ссылок.
+ * Сжимаемое содержимое (см. {@link StorageCompression}) записывается в хранилище сжатым,
+ * хэш и размер blob при этом относятся к исходным байтам.
+ * За тот же проход по потоку считаются CRC32C и тип содержимого по первым байтам,
+ * поэтому для проверки целостности объект не нужно перечитывать.
+ * Если транзакция, в которой создан новый blob, откатывается, его объект удаляется сразу:
+ * строки blob после отката нет, и сборщик такой объект не найдет.
+ */
+@Slf4j
+@Service
+public class BlobService {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+    private static final String UPLOADS_PREFIX = "uploads/";
+
+    private final BlobRepository blobRepository;
+    private final StorageBackend storageBackend;
+    private final StorageCompression storageCompression;
+    // Удаление объекта после отката выполняется в отдельной транзакции: исходная уже завершена
+    private final TransactionTemplate cleanupTransaction;
+
+    @Autowired
+    public BlobService(BlobRepository blobRepository, StorageBackend storageBackend,
+                       StorageCompression storageCompression, PlatformTransactionManager transactionManager) {
+        this.blobRepository = blobRepository;
+        this.storageBackend = storageBackend;
+        this.storageCompression = storageCompression;
+        this.cleanupTransaction = new TransactionTemplate(transactionManager);
+        this.cleanupTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Временный ключ, под которым содержимое загружается, пока его хэш еще неизвестен
+    public static String temporaryKey(String id) {
+        return UPLOADS_PREFIX + id;
+    }
+
+    /**
+     * Загрузка содержимого из потока (size = -1, если длина неизвестна).
+     * Возвращает blob, на который добавлена одна ссылка.
+     */
+    @Transactional
+    public Blob store(InputStream inputStream, long size, String contentType) {
+        String temporaryKey = temporaryKey(UUID.randomUUID().toString());
+        HashingInputStream hashing = new HashingInputStream(inputStream);
+
+        // Тип и кодек определяются по началу потока; прочитанные байты возвращаются в поток
+        // и уходят в хранилище, а контрольные суммы по ним уже посчитаны
+        int sampleSize = Math.max(storageCompression.getSampleSize(), ContentTypeSniffer.SNIFF_LENGTH);
+        PushbackInputStream sampled = new PushbackInputStream(hashing, sampleSize);
+        String storedType;
+        StorageCodec codec;
+        try {
+            byte[] sample = sampled.readNBytes(sampleSize);
+            storedType = ContentTypeSniffer.effectiveType(contentType, hashing.sniffedType());
+            codec = storageCompression.choose(storedType, sample, sample.length);
+            sampled.unread(sample);
+        } catch (IOException e) {
+            log.error("Ошибка при чтении начала файла: {}", e.getMessage());
+            throw new GeneralServiceException("Ошибка при чтении загружаемого файла", e);
+        }
+
+        long storedSize;
+        if (codec == StorageCodec.NONE) {
+            storageBackend.uploadStream(temporaryKey, sampled, size, storedType);
+            storedSize = hashing.getCount();
+        } else {
+            // Размер после сжатия заранее неизвестен
+            CountingInputStream stored = new CountingInputStream(codec.encode(sampled, storageCompression.getLevel()));
+            try (stored) {
+                storageBackend.uploadStream(temporaryKey, stored, -1, storedType);
+            } catch (IOException e) {
+                throw new GeneralServiceException("Ошибка при сжатии загружаемого файла", e);
+            }
+            storedSize = stored.getCount();
+        }
+        storageCompression.record(hashing.getCount(), storedSize);
+        return registerTemporary(temporaryKey, hashing, codec, storedSize);
+    }
+
+    /**
+     * Регистрация содержимого, уже собранного в хранилище под временным ключом
+     * (завершенная сессия загрузки по частям). Части приходят отдельными запросами
+     * и в любом порядке, поэтому хэш считается повторным чтением объекта.
+     */
+    @Transactional
+    public Blob adopt(String temporaryKey) {
+        HashingInputStream hashing;
+        try (InputStream inputStream = storageBackend.getFileStream(temporaryKey)) {
+            hashing = new HashingInputStream(inputStream);
+            hashing.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.error("Ошибка при чтении объекта {} для вычисления хэша: {}", temporaryKey, e.getMessage());
+            throw new GeneralServiceException("Ошибка при чтении загруженного файла", e);
+        }
+        return registerTemporary(temporaryKey, hashing, StorageCodec.NONE, hashing.getCount());
+    }
+
+    /**
+     * Перевод объекта старого файла, хранящегося под своим ключом, в blob.
+     * На blob сразу ставится references ссылок; исходный объект не удаляется:
+     * это можно сделать только после фиксации транзакции, в которой файлы переведены на blob.
+     */
+    @Transactional
+    public Blob importObject(String objectKey, int references) {
+        HashingInputStream hashing;
+        try (InputStream inputStream = storageBackend.getFileStream(objectKey)) {
+            hashing = new HashingInputStream(inputStream);
+            hashing.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.error("Ошибка при чтении объекта {} для вычисления хэша: {}", objectKey, e.getMessage());
+            throw new GeneralServiceException("Ошибка при чтении файла " + objectKey, e);
+        }
+        return register(objectKey, hashing, StorageCodec.NONE, hashing.getCount(), references);
+    }
+
+    /**
+     * Быстрая загрузка: если содержимое с таким хэшем и размером уже хранится,
+     * на него добавляется ссылка и клиенту не нужно передавать байты.
+     * Хэш и размер не доказывают, что у клиента есть само содержимое: вызывающий
+     * должен сам убедиться, что пользователь уже ссылается на этот blob.
+     */
+    @Transactional
+    public Optional<Blob> link(String hash, long size) {
+        requireSha256(hash);
+        return blobRepository.findForUpdate(hash)
+                .filter(blob -> blob.getSize() == size)
+                .map(this::addReference);
+    }
+
+    // Проверка формата хэша, присланного клиентом
+    static String requireSha256(String hash) {
+        if (hash == null || !SHA256_HEX.matcher(hash).matches()) {
+            log.error("Некорректный SHA-256: {}", hash);
+            throw new InvalidInputException("Хэш должен быть SHA-256 в виде 64 шестнадцатеричных символов");
+        }
+        return hash;
+    }
+
+    // Снятие ссылки; объект удаляется сборщиком, когда ссылок не остается
+    @Transactional
+    public void release(Blob blob) {
+        blobRepository.findForUpdate(blob.getHash()).ifPresent(locked -> {
+            locked.setRefCount(Math.max(0, locked.getRefCount() - 1));
+            locked.setUpdatedAt(LocalDateTime.now());
+            blobRepository.save(locked);
+        });
+    }
+
+    /**
+     * Удаление blob без ссылок. Строка заблокирована на время удаления объекта,
+     * поэтому параллельная загрузка того же содержимого дождется конца и создаст blob заново.
+     */
+    @Transactional
+    public boolean collect(String hash) {
+        Optional<Blob> locked = blobRepository.findForUpdate(hash);
+        if (locked.isEmpty() || locked.get().getRefCount() > 0) {
+            return false;
+        }
+        if (!storageBackend.deleteFile(locked.get().getObjectKey())) {
+            return false;
+        }
+        blobRepository.delete(locked.get());
+        log.info("Удален blob без ссылок: {}", hash);
+        return true;
+    }
+
+    /**
+     * Перенос объекта blob на шард target. Строка заблокирована на время копирования,
+     * поэтому сборщик не удалит blob посреди переноса. source - записанный шард blob
+     * (null - основной). Возвращает true, если объект перенесен: копия на прежнем шарде
+     * удаляется после фиксации транзакции. transfer копирует объект по ключу с source на target.
+     */
+    @Transactional
+    public boolean relocate(String hash, String source, String target, Consumer<String> transfer) {
+        Optional<Blob> locked = blobRepository.findForUpdate(hash);
+        // Blob мог быть удален или перенесен, пока строка не была заблокирована
+        if (locked.isEmpty() || locked.get().getRefCount() == 0 || locked.get().getTier() != StorageTier.HOT
+                || !Objects.equals(locked.get().getShard(), source)) {
+            return false;
+        }
+        Blob blob = locked.get();
+        transfer.accept(blob.getObjectKey());
+        blob.setShard(target);
+        blobRepository.save(blob);
+        return true;
+    }
+
+    /**
+     * Перенос объекта blob между уровнями хранения под блокировкой строки, как в {@link #relocate}.
+     * transfer копирует объект по ключу из уровня source в target; копия в прежнем уровне
+     * удаляется вызывающим после фиксации транзакции. После возврата в горячий уровень
+     * счетчик холодных чтений сбрасывается, а шард берется от нового места объекта.
+     */
+    @Transactional
+    public boolean changeTier(String hash, StorageTier source, StorageTier target, Consumer<String> transfer) {
+        Optional<Blob> locked = blobRepository.findForUpdate(hash);
+        if (locked.isEmpty() || locked.get().getRefCount() == 0 || locked.get().getTier() != source) {
+            return false;
+        }
+        Blob blob = locked.get();
+        transfer.accept(blob.getObjectKey());
+        blob.setTier(target);
+        blob.setColdReads(0);
+        if (target == StorageTier.HOT) {
+            blob.setShard(storageBackend.shardOf(blob.getObjectKey()));
+            blob.setLastAccessedAt(LocalDateTime.now());
+        }
+        blobRepository.save(blob);
+        return true;
+    }
+
+    // Сброс накопленных чтений: время последнего обращения и число чтений из холодного уровня
+    @Transactional
+    public void recordAccess(Collection<String> hotHashes, Map<String, Integer> coldReads) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!hotHashes.isEmpty()) {
+            blobRepository.touch(hotHashes, now);
+        }
+        coldReads.forEach((hash, reads) -> blobRepository.addColdReads(hash, reads, now));
+    }
+
+    private Blob registerTemporary(String temporaryKey, HashingInputStream hashing, StorageCodec codec, long storedSize) {
+        try {
+            return register(temporaryKey, hashing, codec, storedSize, 1);
+        } finally {
+            storageBackend.deleteFile(temporaryKey);
+        }
+    }
+
+    private Blob register(String sourceKey, HashingInputStream hashing, StorageCodec codec, long storedSize,
+                          int references) {
+        String hash = hashing.hash();
+        long size = hashing.getCount();
+        boolean inserted = blobRepository.insertIfAbsent(hash, size) > 0;
+        Blob blob = blobRepository.findForUpdate(hash)
+                .orElseThrow(() -> new GeneralServiceException("Blob не найден после вставки: " + hash));
+        // Объект копируется, только пока на blob нет ссылок: его могли создать только что
+        // или он ждет удаления сборщиком. Копия одинакового содержимого безопасна,
+        // кодек blob берется от записанного объекта
+        if (blob.getRefCount() == 0) {
+            storageBackend.copyObject(sourceKey, blob.getObjectKey());
+            blob.setShard(storageBackend.shardOf(blob.getObjectKey()));
+            // Новая копия лежит в горячем уровне; прежняя холодная будет перезаписана при переносе
+            // или удалена вместе с blob
+            blob.setTier(StorageTier.HOT);
+            blob.setColdReads(0);
+            blob.setLastAccessedAt(LocalDateTime.now());
+            blob.setCodec(codec);
+            blob.setStoredSize(codec == StorageCodec.NONE ? null : storedSize);
+            if (inserted) {
+                discardOnRollback(hash, size);
+            }
+        } else {
+            log.info("Содержимое {} уже хранится, повторная копия не создается", hash);
+        }
+        // У blob, созданных до подсчета CRC32C, значения заполняются при следующей загрузке
+        if (blob.getCrc32c() == null) {
+            blob.setCrc32c(hashing.crc32c());
+            blob.setMimeType(hashing.sniffedType());
+        }
+        return addReferences(blob, references);
+    }
+
+    /**
+     * Удаление объекта только что созданного blob при откате транзакции. Строка вставляется
+     * заново и блокируется, как в {@link #collect}: параллельная загрузка того же содержимого
+     * дождется конца удаления и создаст blob заново, а blob, который она уже успела зафиксировать
+     * со ссылками, не трогается.
+     */
+    private void discardOnRollback(String hash, long size) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    cleanupTransaction.executeWithoutResult(transaction -> {
+                        blobRepository.insertIfAbsent(hash, size);
+                        collect(hash);
+                    });
+                } catch (Exception e) {
+                    log.warn("Не удалось удалить объект blob {} после отката транзакции: {}", hash, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private Blob addReference(Blob blob) {
+        return addReferences(blob, 1);
+    }
+
+    private Blob addReferences(Blob blob, int count) {
+        blob.setRefCount(blob.getRefCount() + count);
+        blob.setUpdatedAt(LocalDateTime.now());
+        return blobRepository.save(blob);
+    }
+
+    // Считает байты, прочитанные из потока (размер сжатого объекта)
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Один проход по потоку: SHA-256, CRC32C, число байтов и первые байты для определения типа.
+     */
+    private static final class HashingInputStream extends DigestInputStream {
+
+        private final CRC32C crc32c = new CRC32C();
+        private final byte[] head = new byte[ContentTypeSniffer.SNIFF_LENGTH];
+        private long count;
+
+        private HashingInputStream(InputStream in) {
+            super(in, sha256());
+        }
+
+        String hash() {
+            return HexFormat.of().formatHex(getMessageDigest().digest());
+        }
+
+        long crc32c() {
+            return crc32c.getValue();
+        }
+
+        String sniffedType() {
+            return ContentTypeSniffer.sniff(head, (int) Math.min(count, head.length));
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                crc32c.update(value);
+                if (count < head.length) {
+                    head[(int) count] = (byte) value;
+                }
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                crc32c.update(buffer, offset, read);
+                if (count < head.length) {
+                    System.arraycopy(buffer, offset, head, (int) count, (int) Math.min(read, head.length - count));
+                }
+                count += read;
+            }
+            return read;
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 недоступен", e);
+            }
+        }
+    }
+}
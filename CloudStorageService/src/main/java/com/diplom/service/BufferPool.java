@@ -0,0 +1,232 @@
+package com.diplom.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.ref.Cleaner;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий пул буферов для циклов копирования при загрузке и скачивании.
+ * Буферы разбиты на классы по размеру: запрос получает буфер наименьшего подходящего
+ * класса, больше самого крупного класса выделяется без пула. Возвращенные буферы
+ * хранятся до лимита max-retained, сверх него отдаются сборщику мусора.
+ * Буфер не очищается при возврате: читающий код использует только записанную часть.
+ * В режиме leak-detection для каждой выдачи запоминается место вызова, а буфер,
+ * не возвращенный до сборки мусора, попадает в лог и счетчик storage.buffers.leaks.
+ */
+@Slf4j
+@Component
+public class BufferPool {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final List<SizeClass> sizeClasses;
+    private final long maxRetained;
+    private final boolean leakDetection;
+
+    private final AtomicLong retained = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicInteger unpooledLeased = new AtomicInteger();
+    private final AtomicLong leaks = new AtomicLong();
+    private final Set<LeakTracker> outstanding = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public BufferPool(@Value("${storage.buffers.size-classes:8KB,64KB,1MB,16MB}") List<DataSize> sizeClasses,
+                      @Value("${storage.buffers.max-retained:128MB}") DataSize maxRetained,
+                      @Value("${storage.buffers.leak-detection:false}") boolean leakDetection,
+                      MeterRegistry meterRegistry) {
+        if (sizeClasses.isEmpty()) {
+            throw new IllegalArgumentException("storage.buffers.size-classes не может быть пустым");
+        }
+        this.sizeClasses = sizeClasses.stream()
+                .map(size -> new SizeClass(Math.toIntExact(size.toBytes())))
+                .sorted(Comparator.comparingInt(SizeClass::size))
+                .toList();
+        this.maxRetained = maxRetained.toBytes();
+        this.leakDetection = leakDetection;
+
+        for (SizeClass sizeClass : this.sizeClasses) {
+            String size = String.valueOf(sizeClass.size());
+            Gauge.builder("storage.buffers.pooled", sizeClass.free, ConcurrentLinkedDeque::size)
+                    .description("Свободные буферы в пуле").tag("size", size).register(meterRegistry);
+            Gauge.builder("storage.buffers.leased", sizeClass.leased, AtomicInteger::get)
+                    .description("Буферы, выданные из пула").tag("size", size).register(meterRegistry);
+        }
+        Gauge.builder("storage.buffers.retained", retained, AtomicLong::get)
+                .description("Объем свободных буферов в пуле").baseUnit("bytes").register(meterRegistry);
+        FunctionCounter.builder("storage.buffers.allocated", allocated, AtomicLong::get)
+                .description("Байты, выделенные под новые буферы").baseUnit("bytes").register(meterRegistry);
+        FunctionCounter.builder("storage.buffers.leaks", leaks, AtomicLong::get)
+                .description("Буферы, не возвращенные в пул").register(meterRegistry);
+    }
+
+    /**
+     * Буфер не меньше capacity байт. Вызывающий обязан вернуть его через {@link Buffer#close()},
+     * удобнее всего в try-with-resources.
+     */
+    public Buffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Отрицательный размер буфера: " + capacity);
+        }
+        SizeClass sizeClass = sizeClassFor(capacity);
+        byte[] array;
+        if (sizeClass == null) {
+            array = new byte[capacity];
+            allocated.addAndGet(capacity);
+        } else {
+            array = sizeClass.free.pollFirst();
+            if (array == null) {
+                array = new byte[sizeClass.size()];
+                allocated.addAndGet(sizeClass.size());
+            } else {
+                retained.addAndGet(-array.length);
+            }
+        }
+        AtomicInteger leased = sizeClass == null ? unpooledLeased : sizeClass.leased;
+        leased.incrementAndGet();
+        return new Buffer(array, sizeClass, leakDetection ? track(leased) : null);
+    }
+
+    // Буферы, выданные и еще не возвращенные
+    public int leased() {
+        return sizeClasses.stream().mapToInt(sizeClass -> sizeClass.leased.get()).sum() + unpooledLeased.get();
+    }
+
+    public long retainedBytes() {
+        return retained.get();
+    }
+
+    public long allocatedBytes() {
+        return allocated.get();
+    }
+
+    /**
+     * Проверка для тестов: все буферы, выданные с включенным leak-detection, возвращены.
+     * Исключение содержит место выдачи первого невозвращенного буфера.
+     */
+    public void checkLeaks() {
+        outstanding.stream().findFirst().ifPresent(tracker -> {
+            throw new IllegalStateException("Буферов не возвращено в пул: " + outstanding.size(), tracker.origin);
+        });
+    }
+
+    private SizeClass sizeClassFor(int capacity) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.size() >= capacity) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    private LeakTracker track(AtomicInteger leased) {
+        LeakTracker tracker = new LeakTracker(new Throwable("Буфер выдан здесь"), outstanding, leased, leaks);
+        outstanding.add(tracker);
+        return tracker;
+    }
+
+    private void release(byte[] array, SizeClass sizeClass) {
+        if (sizeClass == null) {
+            unpooledLeased.decrementAndGet();
+            return;
+        }
+        sizeClass.leased.decrementAndGet();
+        if (retained.addAndGet(array.length) > maxRetained) {
+            retained.addAndGet(-array.length);
+            return;
+        }
+        sizeClass.free.offerFirst(array);
+    }
+
+    /**
+     * Выданный буфер. Возврат идемпотентен и может выполняться в другом потоке,
+     * например после отправки части в MinIO пулом загрузки.
+     */
+    public final class Buffer implements AutoCloseable {
+
+        private final byte[] array;
+        private final SizeClass sizeClass;
+        private final LeakTracker tracker;
+        private final Cleaner.Cleanable cleanable;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Buffer(byte[] array, SizeClass sizeClass, LeakTracker tracker) {
+            this.array = array;
+            this.sizeClass = sizeClass;
+            this.tracker = tracker;
+            this.cleanable = tracker == null ? null : CLEANER.register(this, tracker);
+        }
+
+        public byte[] array() {
+            if (released.get()) {
+                throw new IllegalStateException("Буфер уже возвращен в пул");
+            }
+            return array;
+        }
+
+        public int capacity() {
+            return array.length;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (tracker != null) {
+                tracker.released = true;
+                cleanable.clean();
+            }
+            release(array, sizeClass);
+        }
+    }
+
+    // Действие Cleaner: не ссылается на сам буфер, иначе тот никогда не станет недостижимым
+    private static final class LeakTracker implements Runnable {
+
+        private final Throwable origin;
+        private final Set<LeakTracker> outstanding;
+        private final AtomicInteger leased;
+        private final AtomicLong leaks;
+        private volatile boolean released;
+
+        private LeakTracker(Throwable origin, Set<LeakTracker> outstanding, AtomicInteger leased, AtomicLong leaks) {
+            this.origin = origin;
+            this.outstanding = outstanding;
+            this.leased = leased;
+            this.leaks = leaks;
+        }
+
+        @Override
+        public void run() {
+            outstanding.remove(this);
+            if (!released) {
+                // Буфер потерян, в число выданных он больше не входит
+                leased.decrementAndGet();
+                leaks.incrementAndGet();
+                log.warn("Буфер собран сборщиком мусора без возврата в пул", origin);
+            }
+        }
+    }
+
+    private record SizeClass(int size, ConcurrentLinkedDeque<byte[]> free, AtomicInteger leased) {
+
+        private SizeClass(int size) {
+            this(size, new ConcurrentLinkedDeque<>(), new AtomicInteger());
+        }
+    }
+}
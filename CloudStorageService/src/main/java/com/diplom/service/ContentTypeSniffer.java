@@ -0,0 +1,124 @@
+package com.diplom.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Определение типа содержимого по первым байтам (сигнатуры форматов).
+ * Клиенты часто присылают application/octet-stream или тип по расширению,
+ * а по началу файла тип определяется независимо от имени.
+ */
+public final class ContentTypeSniffer {
+
+    // Сколько первых байтов нужно для определения типа
+    public static final int SNIFF_LENGTH = 512;
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    private ContentTypeSniffer() {
+    }
+
+    // Тип по сигнатуре; null, если тип определить не удалось
+    public static String sniff(byte[] head, int length) {
+        if (length == 0) {
+            return null;
+        }
+        if (startsWith(head, length, 0, "%PDF-")) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, "GIF87a") || startsWith(head, length, 0, "GIF89a")) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, "RIFF") && startsWith(head, length, 8, "WEBP")) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 4, "ftyp")) {
+            return "video/mp4";
+        }
+        if (startsWith(head, length, 0, "ID3") || startsWith(head, length, 0, 0xFF, 0xFB)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(head, length, 0, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C)) {
+            return "application/x-7z-compressed";
+        }
+        if (startsWith(head, length, 0, "Rar!")) {
+            return "application/vnd.rar";
+        }
+        if (startsWith(head, length, 0, 0x7F, 'E', 'L', 'F')) {
+            return "application/x-executable";
+        }
+        return sniffText(head, length);
+    }
+
+    // Тип для сохранения: определенный по содержимому, если клиент не прислал конкретный
+    public static String effectiveType(String declared, String sniffed) {
+        if (declared == null || declared.isBlank() || declared.startsWith(OCTET_STREAM)) {
+            return sniffed != null ? sniffed : declared;
+        }
+        return declared;
+    }
+
+    // Текст - если начало файла корректный UTF-8 без управляющих символов
+    private static String sniffText(byte[] head, int length) {
+        // Без признака конца ввода оборванный на границе выборки символ не считается ошибкой
+        CharBuffer decoded = CharBuffer.allocate(length);
+        CoderResult result = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(head, 0, length), decoded, false);
+        if (result.isError()) {
+            return null;
+        }
+        String text = decoded.flip().toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 && c != '\n' && c != '\r' && c != '\t' && c != '\f') {
+                return null;
+            }
+        }
+
+        String start = (text.startsWith("\uFEFF") ? text.substring(1) : text).stripLeading().toLowerCase(Locale.ROOT);
+        if (start.startsWith("<?xml")) {
+            return "application/xml";
+        }
+        if (start.startsWith("<!doctype html") || start.startsWith("<html")) {
+            return "text/html";
+        }
+        if (start.startsWith("{") || start.startsWith("[")) {
+            return "application/json";
+        }
+        return "text/plain";
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, String signature) {
+        return startsWith(head, length, offset, signature.chars().toArray());
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,371 @@
+package com.diplom.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.File;
+import com.diplom.model.StorageCodec;
+import com.diplom.model.User;
+import com.diplom.model.dto.BlockSignatureDTO;
+import com.diplom.model.dto.FileSignaturesDTO;
+import com.diplom.repository.FileRepository;
+import com.diplom.request.DeltaUploadRequest;
+import com.diplom.request.DeltaUploadRequest.Segment;
+import com.diplom.request.DeltaUploadRequest.SegmentType;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.Adler32;
+
+/**
+ * Загрузка новой версии файла дельтой (по схеме rsync).
+ * Клиент получает сигнатуры блоков текущей версии, находит у себя совпадающие блоки
+ * и присылает только изменившиеся байты плюс ссылки на диапазоны текущей версии.
+ * Новая версия собирается в хранилище через composeObject: неизменные диапазоны копируются
+ * на стороне сервера, через приложение проходят только новые данные и короткие (меньше 5MB)
+ * куски, которые S3 не позволяет использовать как отдельную часть сборки.
+ * Если текущая версия хранится сжатой, диапазоны из нее читаются с распаковкой
+ * и вся новая версия собирается потоком через приложение.
+ */
+@Slf4j
+@Service
+public class DeltaUploadService {
+
+    // Все источники composeObject, кроме последнего, должны быть не меньше 5MB
+    private static final long MIN_COMPOSE_PART = DataSize.ofMegabytes(5).toBytes();
+    private static final int MIN_BLOCK_SIZE = (int) DataSize.ofKilobytes(4).toBytes();
+    private static final int MAX_BLOCK_SIZE = (int) DataSize.ofMegabytes(64).toBytes();
+
+    private final FileRepository fileRepository;
+    private final StorageBackend storageBackend;
+    private final BlobService blobService;
+    private final FileService fileService;
+    private final BufferPool bufferPool;
+    private final int defaultBlockSize;
+
+    @Autowired
+    public DeltaUploadService(FileRepository fileRepository, StorageBackend storageBackend, BlobService blobService,
+                              FileService fileService, BufferPool bufferPool,
+                              @Value("${delta.block-size:1MB}") DataSize defaultBlockSize) {
+        this.fileRepository = fileRepository;
+        this.storageBackend = storageBackend;
+        this.blobService = blobService;
+        this.fileService = fileService;
+        this.bufferPool = bufferPool;
+        this.defaultBlockSize = (int) defaultBlockSize.toBytes();
+    }
+
+    /**
+     * Сигнатуры блоков текущей версии файла: слабая (Adler-32) и сильная (SHA-256) сумма каждого блока.
+     */
+    public FileSignaturesDTO signatures(User user, String filename, Integer blockSize) {
+        int size = blockSize == null ? defaultBlockSize : blockSize;
+        if (size < MIN_BLOCK_SIZE || size > MAX_BLOCK_SIZE) {
+            log.error("Недопустимый размер блока {}", size);
+            throw new InvalidInputException("Размер блока должен быть от " + MIN_BLOCK_SIZE + " до " + MAX_BLOCK_SIZE);
+        }
+
+        File file = findFile(user, filename);
+        String objectKey = file.getObjectKey();
+        StorageBackend.ObjectStat stat = storageBackend.statFile(objectKey);
+        long contentSize = contentSize(file, stat);
+
+        List<BlockSignatureDTO> blocks = new ArrayList<>((int) (contentSize / size) + 1);
+        try (InputStream inputStream = file.getCodec().decode(storageBackend.getFileStream(objectKey));
+             BufferPool.Buffer pooled = bufferPool.acquire(size)) {
+            MessageDigest sha256 = sha256();
+            Adler32 adler32 = new Adler32();
+            byte[] block = pooled.array();
+            long offset = 0;
+            int length;
+            while ((length = inputStream.readNBytes(block, 0, size)) > 0) {
+                adler32.reset();
+                adler32.update(block, 0, length);
+                sha256.update(block, 0, length);
+                blocks.add(new BlockSignatureDTO(blocks.size(), offset, length, adler32.getValue(),
+                        HexFormat.of().formatHex(sha256.digest())));
+                offset += length;
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при чтении файла {} для вычисления сигнатур: {}", filename, e.getMessage());
+            throw new GeneralServiceException("Ошибка при вычислении сигнатур файла: " + filename, e);
+        }
+        return new FileSignaturesDTO(filename, contentSize, stat.etag(), size, blocks);
+    }
+
+    /**
+     * Сборка новой версии из дельты. data - поток новых байтов, сегменты DATA читают его по порядку.
+     */
+    @Transactional
+    public File applyDelta(User user, String filename, DeltaUploadRequest request, InputStream data, long dataSize) {
+        File file = findFile(user, filename);
+        String baseKey = file.getObjectKey();
+        StorageBackend.ObjectStat stat = storageBackend.statFile(baseKey);
+        if (request.getVersion() == null || !request.getVersion().equals(stat.etag())) {
+            log.error("Дельта для файла {} построена от другой версии", filename);
+            throw new InvalidInputException("Файл изменился, запросите сигнатуры заново");
+        }
+        List<Segment> segments = coalesce(validate(request.getSegments(), contentSize(file, stat), dataSize));
+
+        List<String> temporaryKeys = new ArrayList<>();
+        String targetKey = BlobService.temporaryKey(UUID.randomUUID().toString());
+        try {
+            List<StorageBackend.Range> ranges = plan(segments, baseKey, file.getCodec(), data, temporaryKeys);
+            if (ranges.size() == 1 && temporaryKeys.contains(ranges.getFirst().objectKey())) {
+                // Вся версия уместилась в один собранный кусок, отдельная сборка не нужна
+                targetKey = ranges.getFirst().objectKey();
+                temporaryKeys.remove(targetKey);
+            } else {
+                storageBackend.composeObject(targetKey, ranges);
+            }
+        } catch (RuntimeException e) {
+            storageBackend.deleteFile(targetKey);
+            throw e;
+        } finally {
+            temporaryKeys.forEach(storageBackend::deleteFile);
+        }
+
+        Blob blob = blobService.adopt(targetKey);
+        long copied = segments.stream().filter(segment -> segment.getType() == SegmentType.COPY)
+                .mapToLong(Segment::getLength).sum();
+        log.info("Файл {} обновлен дельтой: {} байт скопировано на сервере, {} байт передано", filename, copied, dataSize);
+        return fileService.commitUploadedFile(user, filename, blob);
+    }
+
+    /**
+     * Разбиение сегментов на источники composeObject. Длинные диапазоны текущей версии
+     * копируются как есть; новые данные и короткие диапазоны склеиваются потоком во временные
+     * объекты не меньше 5MB (кроме последнего).
+     */
+    private List<StorageBackend.Range> plan(List<Segment> segments, String baseKey, StorageCodec codec, InputStream data,
+                                         List<String> temporaryKeys) {
+        List<StorageBackend.Range> ranges = new ArrayList<>();
+        Run run = new Run(codec);
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            boolean last = i == segments.size() - 1;
+
+            // Байтовые диапазоны сжатого объекта не совпадают с диапазонами содержимого
+            if (codec == StorageCodec.NONE
+                    && segment.getType() == SegmentType.COPY && segment.getLength() >= MIN_COMPOSE_PART) {
+                long offset = segment.getOffset();
+                long length = segment.getLength();
+                if (!run.isEmpty()) {
+                    // Незаконченный короткий кусок добирается началом диапазона до 5MB;
+                    // остаток короче 5MB допустим только в конце файла, иначе он уходит в тот же кусок
+                    long take = Math.min(length, MIN_COMPOSE_PART - run.length);
+                    if (length - take < MIN_COMPOSE_PART && !last) {
+                        take = length;
+                    }
+                    run.addCopy(baseKey, offset, take);
+                    offset += take;
+                    length -= take;
+                    ranges.add(flush(run, temporaryKeys));
+                }
+                if (length > 0) {
+                    ranges.add(new StorageBackend.Range(baseKey, offset, length));
+                }
+            } else {
+                if (segment.getType() == SegmentType.COPY) {
+                    run.addCopy(baseKey, segment.getOffset(), segment.getLength());
+                } else {
+                    run.addData(data, segment.getLength());
+                }
+                if (run.length >= MIN_COMPOSE_PART) {
+                    ranges.add(flush(run, temporaryKeys));
+                }
+            }
+        }
+        if (!run.isEmpty()) {
+            ranges.add(flush(run, temporaryKeys));
+        }
+        return ranges;
+    }
+
+    private StorageBackend.Range flush(Run run, List<String> temporaryKeys) {
+        String key = BlobService.temporaryKey(UUID.randomUUID().toString());
+        temporaryKeys.add(key);
+        long length = run.length;
+        storageBackend.uploadStream(key, run.open(), length, "application/octet-stream");
+        run.clear();
+        return new StorageBackend.Range(key, 0, length);
+    }
+
+    private static List<Segment> validate(List<Segment> segments, long baseSize, long dataSize) {
+        if (segments == null || segments.isEmpty()) {
+            throw new InvalidInputException("Список сегментов пуст");
+        }
+        long data = 0;
+        for (Segment segment : segments) {
+            if (segment.getType() == null || segment.getLength() <= 0) {
+                throw new InvalidInputException("Некорректный сегмент дельты");
+            }
+            if (segment.getType() == SegmentType.COPY
+                    && (segment.getOffset() < 0 || segment.getOffset() + segment.getLength() > baseSize)) {
+                throw new InvalidInputException("Диапазон сегмента выходит за пределы файла");
+            }
+            if (segment.getType() == SegmentType.DATA) {
+                data += segment.getLength();
+            }
+        }
+        if (data != dataSize) {
+            log.error("Сегменты DATA описывают {} байт, получено {}", data, dataSize);
+            throw new InvalidInputException("Размер данных не совпадает с сегментами");
+        }
+        return segments;
+    }
+
+    // Соседние диапазоны, идущие подряд в текущей версии, объединяются в один
+    private static List<Segment> coalesce(List<Segment> segments) {
+        List<Segment> result = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            Segment previous = result.isEmpty() ? null : result.getLast();
+            if (previous != null && previous.getType() == segment.getType()
+                    && (segment.getType() == SegmentType.DATA
+                    || previous.getOffset() + previous.getLength() == segment.getOffset())) {
+                previous.setLength(previous.getLength() + segment.getLength());
+            } else {
+                result.add(new Segment(segment.getType(), segment.getOffset(), segment.getLength()));
+            }
+        }
+        return result;
+    }
+
+    // Размер содержимого: у сжатого объекта исходный размер хранится в blob
+    private static long contentSize(File file, StorageBackend.ObjectStat stat) {
+        return file.getCodec() == StorageCodec.NONE ? stat.size() : file.getBlob().getSize();
+    }
+
+    private File findFile(User user, String filename) {
+        return fileRepository.findByOwner_IdAndFilename(user.getId(), filename)
+                .orElseThrow(() -> new FilesNotFoundException("Файл не найден: " + filename));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Короткие куски, которые склеиваются во временный объект. Диапазоны текущей версии
+     * открываются в хранилище по очереди, только когда до них доходит чтение.
+     */
+    private final class Run {
+
+        private final List<Supplier<InputStream>> pieces = new ArrayList<>();
+        private final StorageCodec codec;
+        private long length;
+
+        Run(StorageCodec codec) {
+            this.codec = codec;
+        }
+
+        void addCopy(String objectKey, long offset, long pieceLength) {
+            pieces.add(() -> openRange(objectKey, offset, pieceLength));
+            length += pieceLength;
+        }
+
+        private InputStream openRange(String objectKey, long offset, long pieceLength) {
+            if (codec == StorageCodec.NONE) {
+                return storageBackend.getFileStream(objectKey, offset, pieceLength);
+            }
+            try {
+                return codec.decode(storageBackend.getFileStream(objectKey), offset, pieceLength);
+            } catch (IOException e) {
+                throw new GeneralServiceException("Ошибка при распаковке текущей версии файла", e);
+            }
+        }
+
+        void addData(InputStream data, long pieceLength) {
+            pieces.add(() -> new SliceInputStream(data, pieceLength));
+            length += pieceLength;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        InputStream open() {
+            Iterator<Supplier<InputStream>> iterator = new ArrayList<>(pieces).iterator();
+            return new SequenceInputStream(new Enumeration<>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return iterator.next().get();
+                }
+            });
+        }
+
+        void clear() {
+            pieces.clear();
+            length = 0;
+        }
+    }
+
+    // Следующие length байтов общего потока данных; закрытие не закрывает общий поток
+    private static final class SliceInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private SliceInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = in.read();
+            if (value == -1) {
+                throw new IOException("Данные закончились раньше, чем описано в сегментах");
+            }
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new IOException("Данные закончились раньше, чем описано в сегментах");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // общий поток данных закрывает вызывающий
+        }
+    }
+}
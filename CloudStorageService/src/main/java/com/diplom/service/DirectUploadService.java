@@ -0,0 +1,155 @@
+package com.diplom.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.DirectUpload;
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.model.dto.DirectUploadDTO;
+import com.diplom.repository.DirectUploadRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Прямая загрузка в MinIO в два шага. Сначала клиент получает подписанную форму (POST policy)
+ * на временный ключ с ограничением размера и отправляет файл в MinIO сам, минуя приложение.
+ * Затем подтверждает загрузку: объект проверяется через statObject, регистрируется как blob
+ * и только тогда создается запись в таблице files.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@Service
+public class DirectUploadService {
+
+    private static final DateTimeFormatter EXPIRES_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final DirectUploadRepository directUploadRepository;
+    private final MinioService minioService;
+    private final BlobService blobService;
+    private final FileService fileService;
+    private final long maxSize;
+    private final Duration expiry;
+    private final Duration retention;
+
+    @Autowired
+    public DirectUploadService(DirectUploadRepository directUploadRepository, MinioService minioService,
+                               BlobService blobService, FileService fileService,
+                               @Value("${upload.direct.max-size:5GB}") DataSize maxSize,
+                               @Value("${upload.direct.expiry:PT15M}") Duration expiry,
+                               @Value("${upload.direct.retention:PT1H}") Duration retention) {
+        this.directUploadRepository = directUploadRepository;
+        this.minioService = minioService;
+        this.blobService = blobService;
+        this.fileService = fileService;
+        this.maxSize = maxSize.toBytes();
+        this.expiry = expiry;
+        this.retention = retention;
+    }
+
+    /**
+     * Резерв имени файла и подписанная форма загрузки. size - размер файла,
+     * политика не позволит загрузить больше.
+     */
+    @Transactional
+    public DirectUploadDTO reserve(User user, String filename, long size, String contentType) {
+        if (filename == null || filename.trim().isEmpty()) {
+            log.error("Имя файла пустое!");
+            throw new InvalidInputException("Имя файла пустое!");
+        }
+        if (size <= 0 || size > maxSize) {
+            log.error("Недопустимый размер прямой загрузки {} для файла {}", size, filename);
+            throw new InvalidInputException("Размер файла должен быть от 1 до " + maxSize + " байт");
+        }
+
+        String id = UUID.randomUUID().toString();
+        LocalDateTime expiresAt = LocalDateTime.now().plus(expiry);
+        Map<String, String> fields = minioService.getPresignedPostForm(objectKey(id), size, contentType, expiry);
+        DirectUpload upload = directUploadRepository.save(DirectUpload.builder()
+                .id(id)
+                .owner(user)
+                .filename(filename)
+                .maxSize(size)
+                .expiresAt(expiresAt)
+                .build());
+
+        log.info("Выдана форма прямой загрузки {} файла {} для пользователя {}", id, filename, user.getUsername());
+        return new DirectUploadDTO(upload.getId(), filename, minioService.getPostUrl(), fields, size,
+                expiresAt.format(EXPIRES_FORMAT));
+    }
+
+    /**
+     * Подтверждение загрузки: объект должен существовать под временным ключом и уложиться в резерв.
+     * Байты не проходят через приложение при загрузке; для хэша blob объект читается один раз из MinIO.
+     */
+    @Transactional
+    public File complete(User user, String uploadId) {
+        DirectUpload upload = findUpload(user, uploadId);
+        String objectKey = objectKey(uploadId);
+
+        StorageBackend.ObjectStat stat = minioService.findStat(objectKey)
+                .orElseThrow(() -> new InvalidInputException("Файл еще не загружен в хранилище"));
+        if (stat.size() <= 0 || stat.size() > upload.getMaxSize()) {
+            // Политика не пропускает такой размер, проверка защищает от подмены объекта в обход формы
+            log.error("Размер объекта {} прямой загрузки {} вне резерва {}", stat.size(), uploadId, upload.getMaxSize());
+            minioService.deleteFile(objectKey);
+            throw new InvalidInputException("Размер загруженного файла не совпадает с резервом");
+        }
+
+        Blob blob = blobService.adopt(objectKey);
+        directUploadRepository.delete(upload);
+        log.info("Прямая загрузка {} завершена, файл {} ({} байт)", uploadId, upload.getFilename(), blob.getSize());
+        return fileService.commitUploadedFile(user, upload.getFilename(), blob);
+    }
+
+    @Transactional
+    public void cancel(User user, String uploadId) {
+        DirectUpload upload = findUpload(user, uploadId);
+        minioService.deleteFile(objectKey(uploadId));
+        directUploadRepository.delete(upload);
+        log.info("Прямая загрузка {} отменена", uploadId);
+    }
+
+    /**
+     * Удаление неподтвержденных резервов и загруженных по ним объектов.
+     * Резерв хранится еще retention после истечения формы: загрузка, начатая до истечения,
+     * может закончиться позже.
+     */
+    @Scheduled(fixedDelayString = "${upload.sessions.sweep-interval:PT1H}")
+    public void sweepExpiredUploads() {
+        LocalDateTime threshold = LocalDateTime.now().minus(retention);
+        int removed = 0;
+        for (DirectUpload upload : directUploadRepository.findByExpiresAtBefore(threshold)) {
+            if (minioService.deleteFile(objectKey(upload.getId()))) {
+                directUploadRepository.delete(upload);
+                removed++;
+            } else {
+                log.warn("Не удалось удалить объект прямой загрузки {}", upload.getId());
+            }
+        }
+        if (removed > 0) {
+            log.info("Удалено неподтвержденных прямых загрузок: {}", removed);
+        }
+    }
+
+    private static String objectKey(String uploadId) {
+        return BlobService.temporaryKey(uploadId);
+    }
+
+    private DirectUpload findUpload(User user, String uploadId) {
+        return directUploadRepository.findByIdAndOwner_Id(uploadId, user.getId())
+                .orElseThrow(() -> new FilesNotFoundException("Загрузка не найдена: " + uploadId));
+    }
+}
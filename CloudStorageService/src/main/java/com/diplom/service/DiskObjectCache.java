@@ -0,0 +1,437 @@
+package com.diplom.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш часто скачиваемых объектов MinIO на локальном диске.
+ * Ключ записи - имя объекта и его ETag, поэтому измененный объект никогда
+ * не будет отдан из старой копии. Объем ограничен бюджетом в байтах,
+ * при переполнении вытесняются давно не использованные записи (LRU).
+ * Запись на диск атомарна: файл пишется во временный и переименовывается
+ * только после того, как прочитан целиком.
+ * Файлы, выданные по пути ({@link #locate}), - жесткие ссылки в каталоге links:
+ * вытеснение записи их не удаляет, ссылки убираются по истечении link-ttl.
+ */
+@Slf4j
+@Component
+public class DiskObjectCache {
+
+    private static final String TEMP_SUFFIX = ".part";
+    private static final String CACHE_DIRECTORY = "disk-cache";
+    private static final String LINKS_DIRECTORY = "links";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Path linksDirectory;
+    private final Duration linkTtl;
+
+    // Выданные ссылки в порядке создания: первая истекает раньше остальных
+    private final ConcurrentLinkedQueue<IssuedLink> links = new ConcurrentLinkedQueue<>();
+    private final AtomicLong linkSequence = new AtomicLong();
+
+    // Порядок доступа: первая запись - самая давно использованная
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DiskObjectCache(boolean enabled, Path directory, DataSize maxSize, DataSize maxEntrySize,
+                           MeterRegistry meterRegistry) {
+        this(enabled, directory, maxSize, maxEntrySize, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    @Autowired
+    public DiskObjectCache(@Value("${cache.disk.enabled:true}") boolean enabled,
+                           @Value("${cache.disk.directory:${java.io.tmpdir}/cloud-storage-cache}") Path directory,
+                           @Value("${cache.disk.max-size:1GB}") DataSize maxSize,
+                           @Value("${cache.disk.max-entry-size:100MB}") DataSize maxEntrySize,
+                           @Value("${cache.disk.link-ttl:PT1M}") Duration linkTtl,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        // Кэш владеет только своим подкаталогом: cache.disk.directory может указывать на общий каталог
+        this.directory = directory.resolve(CACHE_DIRECTORY);
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = Math.min(maxEntrySize.toBytes(), maxBytes);
+        this.linksDirectory = this.directory.resolve(LINKS_DIRECTORY);
+        this.linkTtl = linkTtl;
+
+        if (enabled) {
+            prepareDirectory();
+        }
+
+        FunctionCounter.builder("storage.cache.hits", hits, AtomicLong::get)
+                .description("Скачивания, отданные из дискового кэша").register(meterRegistry);
+        FunctionCounter.builder("storage.cache.misses", misses, AtomicLong::get)
+                .description("Скачивания, прочитанные из MinIO").register(meterRegistry);
+        FunctionCounter.builder("storage.cache.evictions", evictions, AtomicLong::get)
+                .description("Записи, вытесненные из дискового кэша").register(meterRegistry);
+        Gauge.builder("storage.cache.size", this, DiskObjectCache::usedBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Поток на диапазон закэшированной копии объекта или пустой результат при промахе.
+     */
+    public Optional<InputStream> open(String objectKey, String etag, long offset, long length) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(key(objectKey, etag));
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ);
+            channel.position(offset);
+            hits.incrementAndGet();
+            return Optional.of(new BoundedInputStream(Channels.newInputStream(channel), length));
+        } catch (IOException e) {
+            // Файл мог быть удален вместе с каталогом кэша, считаем это промахом
+            log.warn("Не удалось открыть файл кэша для {}: {}", objectKey, e.getMessage());
+            remove(key(objectKey, etag));
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Путь к закэшированной копии объекта для отдачи файла без чтения через поток (sendfile).
+     * Контейнер открывает файл по пути уже после возврата из контроллера, поэтому выдается
+     * не сам файл записи, а жесткая ссылка на него: вытеснение записи ее не трогает, а после
+     * открытия файла удаление ссылки передаче не мешает. Ссылка живет link-ttl.
+     * Если ссылку создать нельзя, результат пустой и файл отдается потоком.
+     * Промах здесь не учитывается: он будет засчитан при открытии потока через {@link #open}.
+     */
+    public Optional<Path> locate(String objectKey, String etag) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        removeExpiredLinks();
+        Path link = linksDirectory.resolve(linkSequence.incrementAndGet() + "-" + key(objectKey, etag));
+        synchronized (this) {
+            // Пока запись в индексе, ее файл на месте: вытеснение удаляет файл после выхода из индекса
+            CacheEntry entry = entries.get(key(objectKey, etag));
+            if (entry == null) {
+                return Optional.empty();
+            }
+            try {
+                Files.createLink(link, entry.path());
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Не удалось создать ссылку на файл кэша {}: {}", objectKey, e.getMessage());
+                return Optional.empty();
+            }
+        }
+        links.add(new IssuedLink(link, System.nanoTime()));
+        hits.incrementAndGet();
+        return Optional.of(link);
+    }
+
+    /**
+     * Оборачивает поток на объект так, что прочитанные байты параллельно пишутся
+     * во временный файл. Если поток прочитан до конца, файл переносится в кэш,
+     * иначе (обрыв соединения, ошибка) временный файл удаляется.
+     */
+    public InputStream readThrough(String objectKey, String etag, long size, InputStream source) {
+        if (!enabled || size > maxEntryBytes) {
+            return source;
+        }
+        try {
+            Path temp = Files.createTempFile(directory, null, TEMP_SUFFIX);
+            return new CachingInputStream(source, Files.newOutputStream(temp), temp, objectKey, etag, size);
+        } catch (IOException e) {
+            log.warn("Не удалось создать временный файл кэша для {}: {}", objectKey, e.getMessage());
+            return source;
+        }
+    }
+
+    // Удаляет все версии объекта из кэша
+    public void invalidate(String objectKey) {
+        if (!enabled) {
+            return;
+        }
+        List<CacheEntry> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CacheEntry entry = iterator.next();
+                if (entry.objectKey().equals(objectKey)) {
+                    iterator.remove();
+                    usedBytes -= entry.size();
+                    removed.add(entry);
+                }
+            }
+        }
+        removed.forEach(entry -> deleteQuietly(entry.path()));
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    // Удаляет ссылки старше link-ttl; к этому времени контейнер давно открыл файл
+    @Scheduled(fixedDelayString = "${cache.disk.link-ttl:PT1M}")
+    public void removeExpiredLinks() {
+        long now = System.nanoTime();
+        IssuedLink link;
+        while ((link = links.peek()) != null && now - link.createdAt() >= linkTtl.toNanos()) {
+            if (links.remove(link)) {
+                deleteQuietly(link.path());
+            }
+        }
+    }
+
+    private void commit(Path temp, String objectKey, String etag, long size) {
+        String key = key(objectKey, etag);
+        Path target = directory.resolve(key);
+        List<CacheEntry> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                // Ту же версию уже закэшировал параллельный запрос
+                deleteQuietly(temp);
+                return;
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("Не удалось сохранить {} в кэш: {}", objectKey, e.getMessage());
+                deleteQuietly(temp);
+                return;
+            }
+            entries.put(key, new CacheEntry(objectKey, target, size));
+            usedBytes += size;
+
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+            while (usedBytes > maxBytes && iterator.hasNext()) {
+                CacheEntry eldest = iterator.next();
+                iterator.remove();
+                usedBytes -= eldest.size();
+                evicted.add(eldest);
+            }
+        }
+
+        evictions.addAndGet(evicted.size());
+        // Открытые на чтение файлы остаются доступны до закрытия дескриптора
+        evicted.forEach(entry -> deleteQuietly(entry.path()));
+        log.debug("Файл {} добавлен в кэш, вытеснено записей: {}", objectKey, evicted.size());
+    }
+
+    private void remove(String key) {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.remove(key);
+            if (entry != null) {
+                usedBytes -= entry.size();
+            }
+        }
+        if (entry != null) {
+            deleteQuietly(entry.path());
+        }
+    }
+
+    // Индекс кэша хранится только в памяти, поэтому файлы от прошлого запуска удаляются.
+    // Удаляется только собственный подкаталог кэша, остальное содержимое cache.disk.directory не трогается
+    private void prepareDirectory() {
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+            Files.createDirectories(linksDirectory);
+            log.info("Дисковый кэш файлов: {}, бюджет {} байт", directory, maxBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось подготовить каталог кэша: " + directory, e);
+        }
+    }
+
+    // Имя файла в кэше - SHA-256 от имени объекта и ETag, чтобы не зависеть от символов в имени
+    private static String key(String objectKey, String etag) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest((objectKey + "\n" + etag).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл кэша {}: {}", path, e.getMessage());
+        }
+    }
+
+    private record CacheEntry(String objectKey, Path path, long size) {
+    }
+
+    private record IssuedLink(Path path, long createdAt) {
+    }
+
+    private final class CachingInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+        private final Path temp;
+        private final String objectKey;
+        private final String etag;
+        private final long expectedSize;
+        private long written;
+        private boolean failed;
+        private boolean closed;
+
+        private CachingInputStream(InputStream source, OutputStream copy, Path temp,
+                                   String objectKey, String etag, long expectedSize) {
+            super(source);
+            this.copy = copy;
+            this.temp = temp;
+            this.objectKey = objectKey;
+            this.etag = etag;
+            this.expectedSize = expectedSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        // Пропуск байтов сделал бы копию неполной
+        @Override
+        public long skip(long n) throws IOException {
+            failed = true;
+            return super.skip(n);
+        }
+
+        private void write(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            try {
+                copy.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                // Ошибка записи в кэш не должна прерывать скачивание
+                log.warn("Ошибка записи в кэш для {}: {}", objectKey, e.getMessage());
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    failed = true;
+                }
+                if (!failed && written == expectedSize) {
+                    commit(temp, objectKey, etag, written);
+                } else {
+                    deleteQuietly(temp);
+                }
+            }
+        }
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
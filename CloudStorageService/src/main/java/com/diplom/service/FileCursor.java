@@ -0,0 +1,32 @@
+package com.diplom.service;
+
+import com.diplom.exception.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция в списке файлов пользователя: последний выданный файл в порядке
+ * (date_of_upload, id) по убыванию. Клиенту передается непрозрачным токеном (base64url),
+ * следующая страница начинается строго после этой позиции.
+ */
+public record FileCursor(LocalDateTime dateOfUpload, long id) {
+
+    public String encode() {
+        String position = id + "@" + dateOfUpload;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileCursor decode(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.indexOf('@');
+            return new FileCursor(LocalDateTime.parse(position.substring(separator + 1)),
+                    Long.parseLong(position.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidInputException("Некорректный курсор списка файлов");
+        }
+    }
+}
@@ -3,22 +3,40 @@ package com.diplom.service;
 import com.diplom.exception.FilesNotFoundException;
 import com.diplom.exception.GeneralServiceException;
 import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
 import com.diplom.model.File;
+import com.diplom.model.StorageCodec;
 import com.diplom.model.User;
+import com.diplom.model.dto.FileDownload;
+import com.diplom.model.dto.FileListEntry;
+import com.diplom.model.dto.FileListPage;
 import com.diplom.repository.FileRepository;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -28,18 +46,34 @@ public class FileService {
     private final int pageNumber = 0;
     private final FileRepository fileRepository;
     private final String bucketName;
-    private final MinioService minioService;
+    private final StorageBackend storageBackend;
+    private final PresignedUrlCache presignedUrlCache;
+    private final DiskObjectCache diskObjectCache;
+    private final BlobService blobService;
+
+    // Режим скачивания: true - редирект на подписанную ссылку MinIO, false - проксирование через приложение
+    @Value("${minio.download.presigned-redirect:false}")
+    private boolean presignedRedirect;
+
+    @Value("${minio.download.presigned-expiry:PT5M}")
+    private Duration presignedExpiry = Duration.ofMinutes(5);
 
     @Autowired
     public FileService(FileRepository fileRepository, @Value("${minio.bucket-name}") String bucketName,
-                       MinioService minioService) {
+                       StorageBackend storageBackend, PresignedUrlCache presignedUrlCache,
+                       DiskObjectCache diskObjectCache, BlobService blobService) {
         this.fileRepository = fileRepository;
         this.bucketName = bucketName;
-        this.minioService = minioService;
+        this.storageBackend = storageBackend;
+        this.presignedUrlCache = presignedUrlCache;
+        this.diskObjectCache = diskObjectCache;
+        this.blobService = blobService;
     }
 
     /**
-     * Загрузка файла в файловое хранилище
+     * Загрузка файла в файловое хранилище.
+     * Содержимое сохраняется как blob по SHA-256: одинаковые файлы хранятся один раз.
+     * Файл с тем же именем заменяется.
      */
     @Transactional
     public void uploadFile(User user, MultipartFile file) {
@@ -52,70 +86,197 @@ public class FileService {
                 throw new InvalidInputException("Файл пустой!");
             }
 
-            Optional<File> existingFile = fileRepository.findByFilenameAndOwner_Username(filename, user.getUsername());
-            if (existingFile.isPresent()) {
-                log.warn("⚠\uFE0F Файл с именем {} уже существует. Заменяем...", filename);
-                patchFile(filename, user, file);
-                return;
-            }
-
-            // Сохраняем файл в MinIO
-            boolean saveFile = minioService.saveFile(file);
-
-            if (saveFile) {
-                // Создаем запись в таблице File
-                File fileRecord = File.builder()
-                        .filename(filename)
-                        .owner(user)
-                        .filePath(bucketName + "/" + filename)
-                        .size(file.getSize())
-                        .build();
-                // Сохраняем запись в базе данных
-                fileRepository.save(fileRecord);
+            Blob blob;
+            try (InputStream inputStream = file.getInputStream()) {
+                blob = blobService.store(inputStream, file.getSize(), file.getContentType());
             }
+            commitUploadedFile(user, filename, blob);
 
         } catch (Exception e) {
-            // Если произошла ошибка после сохранения в MinIO, необходимо удалить файл из MinIO
-            if (minioService.fileExists(filename)) {
-                try {
-                    minioService.deleteFile(filename);
-                    log.info("Файл {} был удален из MinIO из-за ошибки при загрузке.", filename);
-                } catch (Exception deleteException) {
-                    log.error("Не удалось удалить файл {} из MinIO после ошибки: {}", filename, deleteException.getMessage());
-                }
-            }
+            // Временный объект удаляет BlobService, ссылка на blob откатывается вместе с транзакцией
             log.error("Ошибка при загрузке файла {}: {}", filename, e.getMessage());
             throw new RuntimeException("Ошибка при загрузке файла: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Потоковая загрузка файла: тело запроса передается в хранилище по мере чтения
+     * и не сохраняется на локальный диск, поэтому размер не ограничен лимитами multipart.
+     * Файл с тем же именем заменяется.
+     */
     @Transactional
-    public void patchFile(String filename, User user, MultipartFile newFile) {
-        log.info("⚠\uFE0FЗаменяем файл: {} для пользователя: {}", filename, user.getUsername());
+    public void uploadFileStream(User user, String filename, InputStream body, long contentLength, String contentType) {
+        log.info("⚠\uFE0F Потоковая загрузка файла: {} для пользователя: {}", filename, user.getUsername());
+        if (filename == null || filename.trim().isEmpty()) {
+            log.error("Имя файла пустое!");
+            throw new InvalidInputException("Имя файла пустое!");
+        }
+
+        PushbackInputStream pushback = new PushbackInputStream(body);
+        if (contentLength == 0 || isEmpty(pushback)) {
+            log.error("Файл {} пустой!", filename);
+            throw new InvalidInputException("Файл пустой!");
+        }
+
+        Blob blob = blobService.store(pushback, contentLength, contentType);
+        commitUploadedFile(user, filename, blob);
+    }
+
+    /**
+     * Быстрая загрузка: клиент сначала присылает SHA-256 и размер. Если такое содержимое
+     * уже есть в файлах этого пользователя, файл создается без передачи байтов.
+     * Содержимое других пользователей по хэшу не связывается: знание хэша и размера
+     * не доказывает владение байтами, а ответ раскрывал бы, хранится ли такой файл у кого-то еще.
+     * Одинаковые файлы разных пользователей все равно хранятся один раз после обычной загрузки.
+     * Пустой результат означает, что файл нужно загрузить обычным способом.
+     */
+    @Transactional
+    public Optional<File> instantUpload(User user, String filename, String sha256, long size) {
+        if (filename == null || filename.trim().isEmpty()) {
+            log.error("Имя файла пустое!");
+            throw new InvalidInputException("Имя файла пустое!");
+        }
 
-        File oldFile = fileRepository.findByFilenameAndOwner_Username(filename, user.getUsername())
-                .orElseThrow(() -> new FilesNotFoundException("Файл: " + filename + " не найден."));
+        Optional<File> linked = Optional.empty();
+        if (fileRepository.existsByOwner_IdAndBlob_Hash(user.getId(), BlobService.requireSha256(sha256))) {
+            linked = blobService.link(sha256, size).map(blob -> commitUploadedFile(user, filename, blob));
+        }
+        log.info("Быстрая загрузка файла {} для пользователя {}: {}", filename, user.getUsername(),
+                linked.isPresent() ? "содержимое найдено" : "нужна загрузка");
+        return linked;
+    }
 
+    /**
+     * Запись о файле, содержимое которого уже сохранено как blob (с добавленной ссылкой).
+     * Существующая запись переводится на новый blob, ссылка на прежний снимается,
+     * закэшированные подписанные ссылки на прежнюю версию сбрасываются.
+     */
+    @Transactional
+    public File commitUploadedFile(User user, String filename, Blob blob) {
+        presignedUrlCache.invalidate(user.getId(), filename);
+
+        Optional<File> existingFile = fileRepository.findByOwner_IdAndFilename(user.getId(), filename);
         try {
-            // Удаление старого файла из MinIO
-            minioService.deleteFile(filename);
+            File fileRecord = existingFile.orElseGet(() -> File.builder()
+                    .filename(filename)
+                    .owner(user)
+                    .build());
+            PreviousContent previous = attachBlob(fileRecord, blob);
+            File saved = fileRepository.save(fileRecord);
+
+            releasePrevious(previous);
+            return saved;
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении записи о файле {}: {}", filename, e.getMessage());
+            throw new GeneralServiceException("Ошибка при загрузке файла: " + filename, e);
+        }
+    }
 
-            // Удаление записи о файле из БД
-            fileRepository.delete(oldFile);
+    /**
+     * Записи о нескольких файлах, содержимое которых уже сохранено как blob.
+     * Существующие записи выбираются одним запросом, все строки сохраняются
+     * в одной транзакции пакетами JDBC (hibernate.jdbc.batch_size).
+     */
+    @Transactional
+    public List<File> commitUploadedFiles(User user, Map<String, Blob> blobs) {
+        Map<String, File> existingFiles = fileRepository.findByOwner_IdAndFilenameIn(user.getId(), blobs.keySet())
+                .stream()
+                .collect(Collectors.toMap(File::getFilename, Function.identity()));
 
-            // Загрузка нового файла
-            minioService.uploadFile(filename, newFile);
+        List<File> fileRecords = new ArrayList<>(blobs.size());
+        List<PreviousContent> previousContents = new ArrayList<>(blobs.size());
+        blobs.forEach((filename, blob) -> {
+            presignedUrlCache.invalidate(user.getId(), filename);
 
-            // Сохранение новой записи в БД
-            File updatedFile = File.builder()
+            File fileRecord = existingFiles.getOrDefault(filename, File.builder()
                     .filename(filename)
                     .owner(user)
-                    .filePath(bucketName + "/" + filename)
-                    .size(newFile.getSize())
-                    .build();
+                    .build());
+            previousContents.add(attachBlob(fileRecord, blob));
+            fileRecords.add(fileRecord);
+        });
+
+        try {
+            List<File> saved = fileRepository.saveAll(fileRecords);
+            previousContents.forEach(this::releasePrevious);
+            return saved;
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении записей о {} файлах: {}", fileRecords.size(), e.getMessage());
+            throw new GeneralServiceException("Ошибка при сохранении загруженных файлов", e);
+        }
+    }
+
+    // Перевод записи на новый blob; возвращает прежнее содержимое, которое нужно освободить
+    private PreviousContent attachBlob(File fileRecord, Blob blob) {
+        PreviousContent previous = fileRecord.getBlob() != null
+                ? new PreviousContent(fileRecord.getBlob(), null, null)
+                : fileRecord.getFilePath() != null
+                ? new PreviousContent(null, fileRecord.getFilePath(), fileRecord.getObjectKey())
+                : new PreviousContent(null, null, null);
+        fileRecord.setBlob(blob);
+        fileRecord.setFilePath(bucketName + "/" + blob.getObjectKey());
+        fileRecord.setSize(blob.getSize());
+        fileRecord.setDateOfUpload(LocalDateTime.now());
+        return previous;
+    }
+
+    private void releasePrevious(PreviousContent previous) {
+        if (previous.blob() != null) {
+            blobService.release(previous.blob());
+        } else if (previous.filePath() != null) {
+            // Прежняя версия была загружена до хранения по хэшу
+            deleteLegacyObject(previous.filePath(), previous.objectKey());
+        }
+    }
+
+    // Объект старого файла удаляется, только если под тем же ключом не осталось других файлов:
+    // до хранения по хэшу одноименные файлы разных пользователей делили один объект
+    private boolean deleteLegacyObject(String filePath, String objectKey) {
+        if (fileRepository.existsByFilePathAndBlobIsNull(filePath)) {
+            log.info("Объект {} используется другими файлами и не удаляется", objectKey);
+            return true;
+        }
+        diskObjectCache.invalidate(objectKey);
+        return storageBackend.deleteFile(objectKey);
+    }
+
+    /**
+     * Перевод старых файлов, хранящихся под своим именем, на blob по SHA-256.
+     * Объект читается один раз, на blob ставится по ссылке на каждый файл с тем же ключом.
+     * Возвращает ключ старого объекта: удалять его можно только после фиксации транзакции.
+     */
+    @Transactional
+    public Optional<String> migrateLegacyObject(String filePath) {
+        List<File> files = fileRepository.findByFilePathAndBlobIsNull(filePath);
+        if (files.isEmpty()) {
+            return Optional.empty();
+        }
+        String objectKey = files.getFirst().getObjectKey();
+        Blob blob = blobService.importObject(objectKey, files.size());
+        for (File file : files) {
+            file.setBlob(blob);
+            file.setFilePath(bucketName + "/" + blob.getObjectKey());
+            file.setSize(blob.getSize());
+            presignedUrlCache.invalidate(file.getOwner().getId(), file.getFilename());
+        }
+        fileRepository.saveAll(files);
+        diskObjectCache.invalidate(objectKey);
+        log.info("Объект {} переведен на blob {}, файлов: {}", objectKey, blob.getHash(), files.size());
+        return Optional.of(objectKey);
+    }
+
+    @Transactional
+    public void patchFile(String filename, User user, MultipartFile newFile) {
+        log.info("⚠\uFE0FЗаменяем файл: {} для пользователя: {}", filename, user.getUsername());
 
-            fileRepository.save(updatedFile);
+        if (fileRepository.findByOwner_IdAndFilename(user.getId(), filename).isEmpty()) {
+            throw new FilesNotFoundException("Файл: " + filename + " не найден.");
+        }
 
+        try (InputStream inputStream = newFile.getInputStream()) {
+            // Новое содержимое сохраняется как blob, запись о файле переводится на него
+            Blob blob = blobService.store(inputStream, newFile.getSize(), newFile.getContentType());
+            commitUploadedFile(user, filename, blob);
         } catch (Exception e) {
             log.error("Ошибка при замене файла {}", filename);
             throw new GeneralServiceException("Ошибка при замене файла: " + filename, e);
@@ -125,22 +286,29 @@ public class FileService {
     @Transactional
     public void deleteFile(User user, String filename) {
         // Находим запись файла в базе данных
-        Optional<File> fileRecordOptional = fileRepository.findByFilenameAndOwner_Username(filename, user.getUsername());
+        Optional<File> fileRecordOptional = fileRepository.findByOwner_IdAndFilename(user.getId(), filename);
 
         if (fileRecordOptional.isPresent()) {
             File fileRecord = fileRecordOptional.get();
 
             // Удаляем запись из таблицы File
             fileRepository.delete(fileRecord);
+            presignedUrlCache.invalidate(user.getId(), filename);
+
+            if (fileRecord.getBlob() != null) {
+                // Содержимое может использоваться другими файлами, объект удалит сборщик
+                blobService.release(fileRecord.getBlob());
+                return;
+            }
 
             try {
-                // Удаляем файл из MinIO
-                boolean deleted = minioService.deleteFile(filename);
+                // Удаляем файл из хранилища
+                boolean deleted = deleteLegacyObject(fileRecord.getFilePath(), fileRecord.getObjectKey());
                 if (!deleted) {
                     // Если удаление не удалось, восстанавливаем запись в базе данных
                     fileRepository.save(fileRecord);
-                    log.error("Не удалось удалить файл {} из MinIO. Запись восстановлена в базе данных.", filename);
-                    throw new GeneralServiceException("Не удалось удалить файл из MinIO: " + filename);
+                    log.error("Не удалось удалить файл {} из хранилища. Запись восстановлена в базе данных.", filename);
+                    throw new GeneralServiceException("Не удалось удалить файл из хранилища: " + filename);
                 }
             } catch (Exception e) {
                 // Если возникла ошибка при удалении файла, восстанавливаем запись в базе данных
@@ -155,19 +323,31 @@ public class FileService {
     }
 
 
-    public List<File> listFiles(User user, int limit) {
+    /**
+     * Страница списка файлов пользователя от новых к старым.
+     * cursor - токен продолжения из предыдущей страницы, null - первая страница.
+     */
+    public FileListPage listFiles(User user, int limit, String cursor) {
         if (limit <= 0) {
             log.error("Лимит для списка файлов должен быть > 0");
             throw new InvalidInputException("Лимит для списка файлов должен быть > 0");
         }
 
         try {
-            Pageable pageable = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "id"));
-
-            Page<File> filePage = fileRepository.findByOwner_Id(user.getId(), pageable);
-            List<File> files = filePage.getContent();
+            Pageable pageable = PageRequest.ofSize(limit);
+            Slice<FileListEntry> slice;
+            if (cursor == null || cursor.isEmpty()) {
+                slice = fileRepository.findFirstPage(user.getId(), pageable);
+            } else {
+                FileCursor position = FileCursor.decode(cursor);
+                slice = fileRepository.findPageAfter(user.getId(), position.dateOfUpload(), position.id(), pageable);
+            }
+            List<FileListEntry> files = slice.getContent();
 
-            return files;
+            String nextCursor = slice.hasNext()
+                    ? new FileCursor(files.getLast().dateOfUpload(), files.getLast().id()).encode()
+                    : null;
+            return new FileListPage(files, nextCursor);
         } catch (InvalidInputException | FilesNotFoundException e) {
             throw e;
         } catch (Exception e) {
@@ -183,25 +363,24 @@ public class FileService {
             throw new InvalidInputException("Имя файла пустое!");
         }
 
-        File file = fileRepository.findByFilenameAndOwner_Username(filename, user.getUsername())
+        File file = fileRepository.findByOwner_IdAndFilename(user.getId(), filename)
                 .orElseThrow(() -> new FilesNotFoundException(
                         "Файл с именем " + filename + " не найден для пользователя " + user.getUsername() + ".")
                 );
 
         // Проверяем, существует ли файл с таким именем
-        Optional<File> existingFile = fileRepository.findByFilenameAndOwner_Username(newFileName, user.getUsername());
+        Optional<File> existingFile = fileRepository.findByOwner_IdAndFilename(user.getId(), newFileName);
         if (existingFile.isPresent()) {
             log.error("Файл с таким именем уже существует!");
             throw new InvalidInputException("Файл с таким именем уже существует!");
         }
 
         try {
-            // Переименование файла в MinIO
-            minioService.renameFile(filename, newFileName);
+            // Ключ объекта записан в filePath и от имени не зависит, переименование затрагивает только БД
+            presignedUrlCache.invalidate(user.getId(), filename);
 
             // Обновление записи в БД
             file.setFilename(newFileName);
-            file.setFilePath(bucketName + "/" + newFileName);
             fileRepository.save(file);
         } catch (Exception e) {
             // При возникновении ошибки откат транзакции
@@ -211,13 +390,124 @@ public class FileService {
     }
 
 
-    public byte[] downloadFile(User user, String filename) {
+    public boolean isPresignedRedirect() {
+        return presignedRedirect && storageBackend.supportsPresignedUrls();
+    }
+
+    /**
+     * Подписанная ссылка на скачивание файла напрямую из MinIO.
+     * Владелец проверяется по БД при каждом запросе, а сама подпись берется из кэша.
+     * MinIO отдает сжатый в хранилище объект как есть, с Content-Encoding его кодека,
+     * поэтому если клиент эту кодировку не принимает (acceptsEncoding), ссылка не выдается
+     * и файл нужно отдать через приложение с распаковкой.
+     */
+    public Optional<URI> presignedDownloadUrl(User user, String filename, Predicate<String> acceptsEncoding) {
+        File file = fileRepository.findByOwner_IdAndFilename(user.getId(), filename)
+                .orElseThrow(() -> new FilesNotFoundException("Файл не найден: " + filename));
+
+        String contentEncoding = file.getCodec().contentEncoding();
+        if (contentEncoding != null && !acceptsEncoding.test(contentEncoding)) {
+            return Optional.empty();
+        }
+        String url = presignedUrlCache.get(user.getId(), file.getFilename(), objectLocation(file), presignedExpiry,
+                () -> storageBackend.getPresignedUrl(file.getObjectKey(), file.getFilename(), presignedExpiry,
+                        contentEncoding));
+        return Optional.of(URI.create(url));
+    }
+
+    // Место объекта, на которое подписывается ссылка: уровень хранения меняет TierMover, шард - ShardRebalancer
+    private static String objectLocation(File file) {
+        Blob blob = file.getBlob();
+        return blob == null ? file.getObjectKey() : blob.getObjectKey() + "@" + blob.getTier() + "/" + blob.getShard();
+    }
+
+    /**
+     * Подготовка скачивания: проверка владельца и метаданные объекта.
+     * Содержимое читается потоком только при записи ответа, поэтому условный
+     * запрос (ответ 304) не затрагивает байты объекта. Байты берутся из дискового
+     * кэша, а при промахе - из хранилища с сохранением полной копии в кэш.
+     * Сжатые в хранилище объекты распаковываются потоком, в кэше лежит исходное содержимое.
+     * Для файла с blob метаданные берутся из строки БД, а валидатором служит SHA-256 содержимого:
+     * запрос в хранилище не нужен, и ETag не меняется при переносе blob между уровнями и шардами.
+     */
+    public FileDownload downloadFile(User user, String filename) {
 
-        File file = fileRepository.findByFilenameAndOwner_Username(filename, user.getUsername())
+        File file = fileRepository.findByOwner_IdAndFilename(user.getId(), filename)
                 .orElseThrow(() -> new FilesNotFoundException("Файл не найден: " + filename));
 
-        // Вызываем MinIO для загрузки файла
-        return minioService.getFile(file.getFilename());
+        String objectKey = file.getObjectKey();
+        StorageCodec codec = file.getCodec();
+        Blob blob = file.getBlob();
+        String version;
+        String contentType;
+        long size;
+        if (blob != null) {
+            version = blob.getHash();
+            contentType = blobContentType(file.getFilename(), blob);
+            size = blob.getSize();
+        } else {
+            StorageBackend.ObjectStat stat = storageBackend.statFile(objectKey);
+            version = stat.etag();
+            contentType = stat.contentType();
+            size = stat.size();
+        }
+
+        return FileDownload.builder()
+                .filename(file.getFilename())
+                .contentType(contentType)
+                .size(size)
+                .etag("\"" + version + "\"")
+                .lastModified(file.getDateOfUpload() == null ? null
+                        : file.getDateOfUpload().atZone(ZoneId.systemDefault()).toInstant())
+                .content((offset, length) -> openContent(objectKey, codec, version, size, offset, length))
+                .localFileLocator(() -> diskObjectCache.locate(objectKey, version))
+                .build();
+    }
+
+    // Тип по расширению, как его присылает браузер при загрузке; если он неконкретный - определенный по содержимому
+    private static String blobContentType(String filename, Blob blob) {
+        String byExtension = MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse(null);
+        String type = ContentTypeSniffer.effectiveType(byExtension, blob.getMimeType());
+        return type != null ? type : MediaType.APPLICATION_OCTET_STREAM_VALUE;
     }
 
-}
\ No newline at end of file
+    private InputStream openContent(String objectKey, StorageCodec codec, String version, long size,
+                                    long offset, long length) {
+        Optional<InputStream> cached = diskObjectCache.open(objectKey, version, offset, length);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        // В кэш попадает только объект, прочитанный целиком; диапазоны читаются из хранилища напрямую
+        if (offset == 0 && length == size) {
+            return diskObjectCache.readThrough(objectKey, version, size,
+                    codec.decode(storageBackend.getFileStream(objectKey)));
+        }
+        if (codec == StorageCodec.NONE) {
+            return storageBackend.getFileStream(objectKey, offset, length);
+        }
+        try {
+            return codec.decode(storageBackend.getFileStream(objectKey), offset, length);
+        } catch (IOException e) {
+            log.error("Ошибка при распаковке файла {}: {}", objectKey, e.getMessage());
+            throw new GeneralServiceException("Ошибка при чтении файла", e);
+        }
+    }
+
+    // Проверка на пустое тело без потери первого байта
+    private static boolean isEmpty(PushbackInputStream body) {
+        try {
+            int first = body.read();
+            if (first == -1) {
+                return true;
+            }
+            body.unread(first);
+            return false;
+        } catch (IOException e) {
+            throw new GeneralServiceException("Ошибка при чтении тела запроса", e);
+        }
+    }
+
+    // Прежнее содержимое записи: blob или ключ объекта старого файла
+    private record PreviousContent(Blob blob, String filePath, String objectKey) {
+    }
+}
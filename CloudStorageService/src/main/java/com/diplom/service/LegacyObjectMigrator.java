@@ -0,0 +1,83 @@
+package com.diplom.service;
+
+import com.diplom.repository.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Фоновый перевод файлов, загруженных до хранения по хэшу, на blob.
+ * Такие объекты лежат в хранилище под именем файла, общим для всех пользователей.
+ * Каждый ключ переводится в своей транзакции (FileService.migrateLegacyObject),
+ * старый объект удаляется только после ее фиксации. Ошибочный ключ пропускается
+ * и будет повторен при следующем проходе.
+ */
+@Slf4j
+@Component
+public class LegacyObjectMigrator {
+
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final StorageBackend storageBackend;
+    private final boolean enabled;
+    private final int batchSize;
+
+    @Autowired
+    public LegacyObjectMigrator(FileRepository fileRepository, FileService fileService, StorageBackend storageBackend,
+                                @Value("${storage.legacy-migration.enabled:true}") boolean enabled,
+                                @Value("${storage.legacy-migration.batch-size:100}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.storageBackend = storageBackend;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.legacy-migration.interval:PT10M}")
+    public void migrateLegacyObjects() {
+        if (!enabled) {
+            return;
+        }
+        int migrated = 0;
+        String after = "";
+        List<String> filePaths;
+        do {
+            filePaths = fileRepository.findLegacyFilePaths(after, PageRequest.ofSize(batchSize));
+            for (String filePath : filePaths) {
+                if (migrate(filePath)) {
+                    migrated++;
+                }
+            }
+            if (!filePaths.isEmpty()) {
+                after = filePaths.getLast();
+            }
+        } while (filePaths.size() == batchSize);
+
+        if (migrated > 0) {
+            log.info("Переведено на blob старых объектов: {}", migrated);
+        }
+    }
+
+    private boolean migrate(String filePath) {
+        Optional<String> objectKey;
+        try {
+            objectKey = fileService.migrateLegacyObject(filePath);
+        } catch (Exception e) {
+            log.warn("Не удалось перевести на blob объект {}: {}", filePath, e.getMessage());
+            return false;
+        }
+        objectKey.ifPresent(key -> {
+            // Файлы уже ссылаются на blob; не удаленный объект только занимает место
+            if (!storageBackend.deleteFile(key)) {
+                log.warn("Старый объект {} не удален после перевода на blob", key);
+            }
+        });
+        return objectKey.isPresent();
+    }
+}
@@ -0,0 +1,440 @@
+package com.diplom.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище объектов в каталоге на локальном диске (storage.backend=local) для установки
+ * на одном узле без MinIO. Объект - файл objects/&lt;ключ&gt;: заголовок (тип содержимого и MD5,
+ * он же ETag) и содержимое. Объект пишется во временный файл в том же каталоге и
+ * переименовывается на место ключа атомарно, поэтому записанный файл больше не меняется:
+ * копия объекта - жесткая ссылка на тот же файл. Небольшие объекты и диапазоны читаются
+ * через отображение файла в память, большие - потоком из FileChannel.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final int MAGIC = 0x43534F31; // "CSO1"
+    private static final int MD5_LENGTH = 16;
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final Path objects;
+    private final Path temporary;
+    private final long mmapThreshold;
+    private final boolean fsync;
+    private final BufferPool bufferPool;
+
+    @Autowired
+    public LocalStorageBackend(@Value("${storage.local.directory:${java.io.tmpdir}/cloud-storage}") Path directory,
+                               @Value("${storage.local.mmap-threshold:1MB}") DataSize mmapThreshold,
+                               @Value("${storage.local.fsync:true}") boolean fsync,
+                               BufferPool bufferPool) {
+        Path root = directory.toAbsolutePath().normalize();
+        this.objects = root.resolve("objects");
+        this.temporary = root.resolve("tmp");
+        this.mmapThreshold = mmapThreshold.toBytes();
+        this.fsync = fsync;
+        this.bufferPool = bufferPool;
+        try {
+            // Временные файлы прерванных записей не нужны: объект под ключом либо прежний, либо новый целиком
+            FileSystemUtils.deleteRecursively(temporary);
+            Files.createDirectories(objects);
+            Files.createDirectories(temporary);
+            log.info("Локальное хранилище объектов: {}", root);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось подготовить каталог хранилища: " + root, e);
+        }
+    }
+
+    @Override
+    public void uploadStream(String key, InputStream inputStream, long size, String contentType) {
+        Path target = resolve(key);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(temporary, null, TEMP_SUFFIX);
+            write(temp, inputStream, size, contentType == null ? DEFAULT_CONTENT_TYPE : contentType);
+            commit(temp, target);
+            log.info("✅ Файл записан в локальное хранилище: {}", key);
+        } catch (IOException e) {
+            log.error("Ошибка при записи файла в локальное хранилище: {}", key);
+            throw new GeneralServiceException("Ошибка при записи файла в хранилище: " + key, e);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    @Override
+    public InputStream getFileStream(String key) {
+        return open(key, 0, -1);
+    }
+
+    @Override
+    public InputStream getFileStream(String key, long offset, long length) {
+        return open(key, offset, length);
+    }
+
+    @Override
+    public Optional<ObjectStat> findStat(String key) {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            Header header = readHeader(channel, key);
+            return Optional.of(new ObjectStat(channel.size() - header.length(), header.contentType(),
+                    HexFormat.of().formatHex(header.md5())));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.error("Ошибка при получении метаданных файла {}: {}", key, e.getMessage());
+            throw new GeneralServiceException("Ошибка при получении метаданных файла: " + key, e);
+        }
+    }
+
+    // Записанный файл не меняется, поэтому копия - жесткая ссылка; без их поддержки файл копируется
+    @Override
+    public void copyObject(String sourceKey, String targetKey) {
+        Path source = resolve(sourceKey);
+        Path target = resolve(targetKey);
+        Path temp = temporary.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            try {
+                Files.createLink(temp, source);
+            } catch (NoSuchFileException e) {
+                throw e;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(source, temp);
+            }
+            commit(temp, target);
+        } catch (IOException e) {
+            log.error("Ошибка при копировании объекта {} в {}", sourceKey, targetKey);
+            throw new GeneralServiceException("Ошибка при копировании файла в хранилище", e);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    // Диапазоны читаются по очереди и записываются одним объектом
+    @Override
+    public void composeObject(String targetKey, List<Range> ranges) {
+        long size = ranges.stream().mapToLong(Range::length).sum();
+        Iterator<Range> remaining = ranges.iterator();
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                Range range = remaining.next();
+                return getFileStream(range.objectKey(), range.offset(), range.length());
+            }
+        };
+        try (InputStream inputStream = new SequenceInputStream(parts)) {
+            uploadStream(targetKey, inputStream, size, DEFAULT_CONTENT_TYPE);
+        } catch (IOException e) {
+            throw new GeneralServiceException("Ошибка при сборке файла в хранилище", e);
+        }
+        log.info("✅ Объект {} собран из {} диапазонов", targetKey, ranges.size());
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+            log.info("✅ Файл удален из локального хранилища: {}", key);
+            return true;
+        } catch (IOException e) {
+            log.error("Ошибка при удалении файла из локального хранилища: {}", key);
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> listObjects(String prefix) {
+        // Обход начинается с каталога, в котором лежат все ключи с этим префиксом
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? objects : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(start)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(start)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> objects.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/"))
+                    .filter(key -> key.startsWith(prefix))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            log.error("Ошибка при получении списка объектов с префиксом {}: {}", prefix, e.getMessage());
+            throw new GeneralServiceException("Ошибка при получении списка объектов", e);
+        }
+    }
+
+    /**
+     * Запись заголовка и содержимого во временный файл. MD5 становится известен только
+     * в конце, поэтому в заголовке сначала место под него, а значение пишется последним.
+     */
+    private void write(Path temp, InputStream inputStream, long size, String contentType) throws IOException {
+        byte[] type = contentType.getBytes(StandardCharsets.UTF_8);
+        if (type.length > 0xFFFF) {
+            type = DEFAULT_CONTENT_TYPE.getBytes(StandardCharsets.UTF_8);
+        }
+        int headerLength = Integer.BYTES + Short.BYTES + type.length + MD5_LENGTH;
+        ByteBuffer header = ByteBuffer.allocate(headerLength)
+                .putInt(MAGIC)
+                .putShort((short) type.length)
+                .put(type)
+                .put(new byte[MD5_LENGTH])
+                .flip();
+        int bufferSize = (int) (size >= 0 ? Math.clamp(size, 1, COPY_BUFFER_SIZE) : COPY_BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+             BufferPool.Buffer pooled = bufferPool.acquire(bufferSize)) {
+            writeFully(channel, header);
+            MessageDigest md5 = md5();
+            byte[] buffer = pooled.array();
+            long written = 0;
+            // При известном размере читается ровно size байтов, как при записи в MinIO
+            while (size < 0 || written < size) {
+                int limit = size < 0 ? buffer.length : (int) Math.min(buffer.length, size - written);
+                int read = inputStream.read(buffer, 0, limit);
+                if (read == -1) {
+                    break;
+                }
+                md5.update(buffer, 0, read);
+                writeFully(channel, ByteBuffer.wrap(buffer, 0, read));
+                written += read;
+            }
+            if (size >= 0 && written != size) {
+                throw new EOFException("Поток закончился раньше заявленного размера: " + written + " из " + size);
+            }
+            ByteBuffer digest = ByteBuffer.wrap(md5.digest());
+            long position = headerLength - MD5_LENGTH;
+            while (digest.hasRemaining()) {
+                position += channel.write(digest, position);
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+    }
+
+    // Атомарная замена объекта: читатель видит либо прежний файл, либо новый целиком
+    private void commit(Path temp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (fsync) {
+            // Запись о переименовании в каталоге тоже должна пережить сбой питания
+            try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            } catch (IOException e) {
+                log.debug("Каталог {} не поддерживает fsync: {}", target.getParent(), e.getMessage());
+            }
+        }
+    }
+
+    private InputStream open(String key, long offset, long length) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+            Header header = readHeader(channel, key);
+            long size = channel.size() - header.length();
+            long start = Math.min(offset, size);
+            long count = length < 0 ? size - start : Math.min(length, size - start);
+            if (count <= mmapThreshold) {
+                // Отображение остается действительным после закрытия канала и удаления файла
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, header.length() + start, count);
+                channel.close();
+                return new ByteBufferInputStream(mapped);
+            }
+            channel.position(header.length() + start);
+            return new BoundedInputStream(Channels.newInputStream(channel), count);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            log.error("Ошибка при чтении файла из локального хранилища: {}", key);
+            throw new GeneralServiceException("Ошибка при чтении файла из хранилища: " + key, e);
+        }
+    }
+
+    private static Header readHeader(FileChannel channel, String key) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(Integer.BYTES + Short.BYTES);
+        readFully(channel, prefix, 0);
+        if (prefix.getInt() != MAGIC) {
+            throw new IOException("Файл объекта поврежден: " + key);
+        }
+        int typeLength = Short.toUnsignedInt(prefix.getShort());
+        ByteBuffer rest = ByteBuffer.allocate(typeLength + MD5_LENGTH);
+        readFully(channel, rest, prefix.capacity());
+        byte[] type = new byte[typeLength];
+        byte[] md5 = new byte[MD5_LENGTH];
+        rest.get(type).get(md5);
+        return new Header(new String(type, StandardCharsets.UTF_8), md5, prefix.capacity() + rest.capacity());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Неожиданный конец файла объекта");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Ключ не должен выходить за каталог объектов
+    private Path resolve(String key) {
+        Path path = objects.resolve(key).normalize();
+        if (key.isEmpty() || !path.startsWith(objects) || path.equals(objects)) {
+            log.error("Недопустимый ключ объекта: {}", key);
+            throw new InvalidInputException("Недопустимый ключ объекта: " + key);
+        }
+        return path;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Ошибка при закрытии файла: {}", e.getMessage());
+        }
+    }
+
+    // Заголовок файла объекта: тип содержимого, MD5 и длина заголовка (смещение содержимого)
+    private record Header(String contentType, byte[] md5, int length) {
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.clamp(n, 0, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
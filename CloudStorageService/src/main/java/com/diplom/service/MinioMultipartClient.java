@@ -0,0 +1,89 @@
+package com.diplom.service;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioAsyncClient;
+import io.minio.errors.MinioException;
+import io.minio.messages.ListPartsResult;
+import io.minio.messages.Part;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Клиент MinIO с доступом к низкоуровневому API multipart upload
+ * (создание загрузки, части, список частей, завершение и отмена).
+ * В SDK эти методы защищенные, поэтому они открываются через наследника.
+ */
+public class MinioMultipartClient extends MinioAsyncClient {
+
+    private static final int MAX_PARTS_PER_PAGE = 1000;
+
+    public MinioMultipartClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public String createMultipartUpload(String bucket, String object, String contentType)
+            throws MinioException, IOException, GeneralSecurityException, InterruptedException {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        return await(createMultipartUploadAsync(bucket, null, object, headers, none())).result().uploadId();
+    }
+
+    // Загружает часть из буфера и возвращает ее ETag
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data, int length)
+            throws MinioException, IOException, GeneralSecurityException, InterruptedException {
+        return await(uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber, none(), none())).etag();
+    }
+
+    // Все загруженные части с учетом постраничной выдачи S3
+    public List<Part> listParts(String bucket, String object, String uploadId)
+            throws MinioException, IOException, GeneralSecurityException, InterruptedException {
+        List<Part> parts = new ArrayList<>();
+        Integer marker = null;
+        ListPartsResult result;
+        do {
+            result = await(listPartsAsync(bucket, null, object, MAX_PARTS_PER_PAGE, marker, uploadId, none(), none())).result();
+            parts.addAll(result.partList());
+            marker = result.nextPartNumberMarker();
+        } while (result.isTruncated());
+        return parts;
+    }
+
+    public void completeMultipartUpload(String bucket, String object, String uploadId, Part[] parts)
+            throws MinioException, IOException, GeneralSecurityException, InterruptedException {
+        await(completeMultipartUploadAsync(bucket, null, object, uploadId, parts, none(), none()));
+    }
+
+    public void abortMultipartUpload(String bucket, String object, String uploadId)
+            throws MinioException, IOException, GeneralSecurityException, InterruptedException {
+        await(abortMultipartUploadAsync(bucket, null, object, uploadId, none(), none()));
+    }
+
+    private static Multimap<String, String> none() {
+        return HashMultimap.create();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws MinioException, IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof MinioException minioException) {
+                throw minioException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -1,57 +1,130 @@
 package com.diplom.service;
 
 import com.diplom.exception.GeneralServiceException;
+import com.diplom.model.Blob;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
 import io.minio.errors.MinioException;
+import io.minio.http.Method;
 import io.minio.messages.Bucket;
+import io.minio.messages.Item;
+import io.minio.messages.Part;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 
+/**
+ * Хранилище объектов в MinIO (storage.backend=minio, по умолчанию). Содержимое blob распределяется по шардам кольцом
+ * согласованного хэширования ({@link ShardRing}); временные объекты загрузок, сессии
+ * и старые файлы лежат на основном шарде. Пока объект не перенесен на нового владельца
+ * после изменения набора шардов, чтение находит его на остальных шардах.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class MinioService {
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class MinioService implements StorageBackend {
 
-    private final MinioClient minioClient;
+    private static final Pattern MD5_HEX = Pattern.compile("[0-9a-fA-F]{32}");
 
-    @Value("${minio.bucket-name}")
-    private String bucketName;
+    private final MinioMultipartClient minioMultipartClient;
+    private final ParallelMultipartUploader parallelMultipartUploader;
+    private final ShardRing shardRing;
+
+    // Адрес MinIO, доступный клиентам: на него отправляется форма прямой загрузки
+    @Value("${minio.public-endpoint:${minio.endpoint}}")
+    private String publicEndpoint;
 
     @PostConstruct
     public void ensureBucketExists() {
-        try {
-            // Проверяем существующие бакеты
-            List<Bucket> bucketList = minioClient.listBuckets();
-            boolean bucketExists = bucketList.stream()
-                    .anyMatch(bucket -> bucket.name().equals(bucketName));
+        for (StorageShard shard : shardRing.shards()) {
+            String bucketName = shard.bucket();
+            try {
+                // Проверяем существующие бакеты
+                List<Bucket> bucketList = shard.client().listBuckets();
+                boolean bucketExists = bucketList.stream()
+                        .anyMatch(bucket -> bucket.name().equals(bucketName));
 
-            if (!bucketExists) {
-                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
-                log.info("Bucket '{}' was created successfully.", bucketName);
-            } else {
-                log.info("Bucket '{}' already exists.", bucketName);
+                if (!bucketExists) {
+                    shard.client().makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+                    log.info("Bucket '{}' was created successfully.", bucketName);
+                } else {
+                    log.info("Bucket '{}' already exists.", bucketName);
+                }
+            } catch (MinioException | IOException | NoSuchAlgorithmException | InvalidKeyException e) {
+                log.error("Error while creating MinIO bucket: {}", e.getMessage(), e);
             }
-        } catch (MinioException | IOException | NoSuchAlgorithmException | InvalidKeyException e) {
-            log.error("Error while creating MinIO bucket: {}", e.getMessage(), e);
         }
     }
 
+    // Удаление со всех шардов, где объект может лежать
+    @Override
     public boolean deleteFile(String filename) {
+        boolean deleted = true;
+        for (StorageShard shard : candidates(filename)) {
+            deleted &= deleteFromShard(filename, shard);
+        }
+        return deleted;
+    }
+
+    // Шард, которому принадлежит объект с таким ключом
+    @Override
+    public String shardOf(String objectKey) {
+        return owner(objectKey).name();
+    }
+
+    /**
+     * Перенос объекта с шарда from на шард to. Источник не удаляется: это делает вызывающий
+     * после того, как запись о шарде обновлена.
+     */
+    // Шард null - основной
+    public void copyBetweenShards(String objectKey, String from, String to) {
+        StorageShard source = shard(from);
+        StorageShard target = shard(to);
         try {
-            minioClient.removeObject(
+            transfer(objectKey, source, objectKey, target);
+            log.info("Объект {} скопирован с шарда {} на {}", objectKey, from, to);
+        } catch (Exception e) {
+            log.error("Ошибка при переносе объекта {} с шарда {} на {}", objectKey, from, to);
+            throw new GeneralServiceException("Ошибка при переносе объекта между шардами: " + objectKey, e);
+        }
+    }
+
+    public boolean deleteFromShard(String objectKey, String shardName) {
+        return deleteFromShard(objectKey, shard(shardName));
+    }
+
+    private boolean deleteFromShard(String filename, StorageShard shard) {
+        try {
+            shard.client().removeObject(
                     RemoveObjectArgs.builder()
-                            .bucket(bucketName)
+                            .bucket(shard.bucket())
                             .object(filename)
                             .build()
             );
@@ -63,114 +136,443 @@ public class MinioService {
         }
     }
 
-    public void uploadFile(String filename, MultipartFile file) {
+    /**
+     * Загрузка объекта прямо из потока запроса без промежуточного файла.
+     * Если длина неизвестна (size = -1), поток режется на части и отправляется
+     * параллельной multipart-загрузкой.
+     */
+    @Override
+    public void uploadStream(String filename, InputStream inputStream, long size, String contentType) {
         try {
-            InputStream fileInputStream = file.getInputStream();
-            minioClient.putObject(
+            putObject(filename, inputStream, size, contentType == null ? "application/octet-stream" : contentType);
+            log.info("✅ Файл загружен в MinIO потоком: {}", filename);
+        } catch (Exception e) {
+            log.error("Ошибка при потоковой загрузке файла в MinIO: {}", filename);
+            throw new GeneralServiceException("Ошибка при загрузке файла в MinIO: " + filename, e);
+        }
+    }
+
+    /**
+     * Объект не больше одной части уходит одним PUT, большой или неизвестной длины -
+     * параллельной multipart-загрузкой (части отправляются одновременно на пуле потоков),
+     * если шард на основном сервере, иначе последовательной multipart-загрузкой клиентом шарда.
+     * Части multipart SDK отправляет из byte[] с заголовком Content-MD5; для одиночного PUT
+     * из потока SDK его не ставит, поэтому MD5 считается по пути в MinIO и сверяется с ETag ответа.
+     */
+    private void putObject(String filename, InputStream inputStream, long size, String contentType) throws Exception {
+        StorageShard shard = owner(filename);
+        if (size >= 0 && size <= parallelMultipartUploader.getPartSize()) {
+            DigestInputStream md5 = new DigestInputStream(inputStream, MessageDigest.getInstance("MD5"));
+            ObjectWriteResponse response = shard.client().putObject(
                     PutObjectArgs.builder()
-                            .bucket(bucketName)
+                            .bucket(shard.bucket())
                             .object(filename)
-                            .stream(fileInputStream, file.getSize(), -1)
-                            .contentType(file.getContentType())
+                            .stream(md5, size, -1)
+                            .contentType(contentType)
+                            .build()
+            );
+            verifyEtag(filename, response, md5.getMessageDigest().digest());
+        } else if (shard.sameServer(shardRing.primary())) {
+            // Параллельный загрузчик работает через клиент основного сервера и годится для его бакетов
+            parallelMultipartUploader.upload(shard.bucket(), filename, inputStream, size, contentType);
+        } else {
+            // Шард на другом сервере (blob при переносе, возврате из холодного уровня, сборке потоком):
+            // multipart-загрузка его собственным клиентом, части того же размера
+            shard.client().putObject(
+                    PutObjectArgs.builder()
+                            .bucket(shard.bucket())
+                            .object(filename)
+                            .stream(inputStream, size, parallelMultipartUploader.getPartSize())
+                            .contentType(contentType)
                             .build()
             );
-            log.info("✅ Файл загружен в MinIO: {}", filename);
-        } catch (Exception e) {
-            log.error("Ошибка при загрузке файла в MinIO: {}", filename);
-            throw new RuntimeException("Ошибка при загрузке файла в MinIO: " + filename, e);
         }
     }
 
-    public boolean saveFile(MultipartFile file) {
-        InputStream fileInputStream = null;
-        String filename = file.getOriginalFilename();
+    // ETag одиночного PUT без шифрования на сервере - MD5 содержимого в hex
+    private void verifyEtag(String filename, ObjectWriteResponse response, byte[] md5) {
+        String etag = response == null || response.etag() == null ? null : response.etag().replace("\"", "");
+        if (etag == null || !MD5_HEX.matcher(etag).matches()) {
+            return;
+        }
+        if (!etag.equalsIgnoreCase(HexFormat.of().formatHex(md5))) {
+            log.error("ETag объекта {} не совпадает с MD5 отправленных байтов", filename);
+            deleteFile(filename);
+            throw new GeneralServiceException("Содержимое файла повреждено при передаче в MinIO: " + filename);
+        }
+    }
 
+    /**
+     * Копирование объекта на стороне MinIO, байты через приложение не проходят.
+     * Объекты больше 5GB клиент MinIO копирует по частям. Если целевой шард
+     * на другом сервере, объект передается потоком через приложение.
+     */
+    @Override
+    public void copyObject(String sourceKey, String targetKey) {
         try {
-            fileInputStream = file.getInputStream();
+            transfer(sourceKey, locate(sourceKey), targetKey, owner(targetKey));
+        } catch (Exception e) {
+            log.error("Ошибка при копировании объекта {} в {}", sourceKey, targetKey);
+            throw new GeneralServiceException("Ошибка при копировании файла в MinIO", e);
+        }
+    }
 
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(filename)
-                            .stream(fileInputStream, file.getSize(), -1)
-                            .contentType(file.getContentType())
+    /**
+     * Сборка объекта из диапазонов других объектов на стороне MinIO (UploadPartCopy).
+     * Все диапазоны, кроме последнего, должны быть не меньше 5MB.
+     */
+    @Override
+    public void composeObject(String targetKey, List<Range> ranges) {
+        StorageShard target = owner(targetKey);
+        try {
+            List<ComposeSource> sources = new ArrayList<>(ranges.size());
+            for (Range range : ranges) {
+                StorageShard source = locate(range.objectKey());
+                if (!source.sameServer(target)) {
+                    // Диапазоны с другого сервера нельзя собрать на стороне MinIO
+                    assembleByStreaming(targetKey, ranges);
+                    return;
+                }
+                sources.add(ComposeSource.builder()
+                        .bucket(source.bucket())
+                        .object(range.objectKey())
+                        .offset(range.offset())
+                        .length(range.length())
+                        .build());
+            }
+            target.client().composeObject(
+                    ComposeObjectArgs.builder()
+                            .bucket(target.bucket())
+                            .object(targetKey)
+                            .sources(sources)
                             .build()
             );
-            return true; // Возвращаем true при успешном сохранении
-        } catch (Exception e) {
-            log.error("Ошибка при загрузке файла в MinIO {}: {}", filename, e.getMessage());
-            return false; // Возвращаем false при ошибке
-        } finally {
-            // Закрываем InputStream, если он был открыт
-            if (fileInputStream != null) {
-                try {
-                    fileInputStream.close();
-                } catch (IOException e) {
-                    log.error("Ошибка при закрытии InputStream: {}", e.getMessage());
-                }
+            log.info("✅ Объект {} собран из {} диапазонов", targetKey, ranges.size());
+        } catch (Exception e) {
+            log.error("Ошибка при сборке объекта {} в MinIO", targetKey);
+            throw new GeneralServiceException("Ошибка при сборке файла в MinIO", e);
+        }
+    }
+
+    // Сборка потоком: диапазоны читаются по очереди и уходят в MinIO одной загрузкой
+    private void assembleByStreaming(String targetKey, List<Range> ranges) throws Exception {
+        long size = ranges.stream().mapToLong(Range::length).sum();
+        Iterator<Range> remaining = ranges.iterator();
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
             }
+
+            @Override
+            public InputStream nextElement() {
+                Range range = remaining.next();
+                return getFileStream(range.objectKey(), range.offset(), range.length());
+            }
+        };
+        try (InputStream inputStream = new SequenceInputStream(parts)) {
+            putObject(targetKey, inputStream, size, "application/octet-stream");
         }
+        log.info("✅ Объект {} собран потоком из {} диапазонов", targetKey, ranges.size());
     }
 
-    public void renameFile(String oldFilename, String newFilename) {
-        try {
-            // Копирование файла с новым именем
-            minioClient.copyObject(
+    // Копирование между шардами: на одном сервере - на его стороне, иначе потоком через приложение
+    private void transfer(String sourceKey, StorageShard source, String targetKey, StorageShard target) throws Exception {
+        if (source.sameServer(target)) {
+            target.client().copyObject(
                     CopyObjectArgs.builder()
                             .source(CopySource.builder()
-                                    .bucket(bucketName)
-                                    .object(oldFilename)
+                                    .bucket(source.bucket())
+                                    .object(sourceKey)
                                     .build())
-                            .bucket(bucketName)
-                            .object(newFilename)
+                            .bucket(target.bucket())
+                            .object(targetKey)
+                            .build()
+            );
+            return;
+        }
+        StatObjectResponse stat = stat(source, sourceKey);
+        try (InputStream inputStream = source.client().getObject(
+                GetObjectArgs.builder().bucket(source.bucket()).object(sourceKey).build())) {
+            target.client().putObject(
+                    PutObjectArgs.builder()
+                            .bucket(target.bucket())
+                            .object(targetKey)
+                            .stream(inputStream, stat.size(), -1)
+                            .contentType(stat.contentType())
                             .build()
             );
+        }
+    }
+
+    // Метаданные объекта (размер, ETag, тип) без чтения его содержимого
+    @Override
+    public ObjectStat statFile(String filename) {
+        try {
+            StatObjectResponse stat = withHandoff(filename, shard -> stat(shard, filename));
+            return new ObjectStat(stat.size(), stat.contentType(), stat.etag());
+        } catch (Exception e) {
+            log.error("Ошибка при получении метаданных файла из MinIO: {}", filename);
+            throw new GeneralServiceException("Ошибка при получении метаданных файла из MinIO: " + filename, e);
+        }
+    }
 
-            // Удаление старого файла
-            deleteFile(oldFilename);
+    // Метаданные объекта или пустой результат, если объекта нет
+    @Override
+    public Optional<ObjectStat> findStat(String filename) {
+        try {
+            return Optional.of(statFile(filename));
+        } catch (GeneralServiceException e) {
+            if (e.getCause() instanceof ErrorResponseException response
+                    && "NoSuchKey".equals(response.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * Подписанная форма (POST policy) для загрузки объекта браузером напрямую в MinIO.
+     * Политика разрешает только указанный ключ и размер от 1 до maxSize байт;
+     * возвращаются поля формы, которые клиент отправляет вместе с полем "file".
+     */
+    public Map<String, String> getPresignedPostForm(String objectKey, long maxSize, String contentType, Duration expiry) {
+        try {
+            StorageShard shard = owner(objectKey);
+            PostPolicy policy = new PostPolicy(shard.bucket(), ZonedDateTime.now().plus(expiry));
+            policy.addEqualsCondition("key", objectKey);
+            policy.addContentLengthRangeCondition(1, maxSize);
+            Map<String, String> form = new LinkedHashMap<>();
+            form.put("key", objectKey);
+            if (contentType != null) {
+                policy.addEqualsCondition("Content-Type", contentType);
+                form.put("Content-Type", contentType);
+            }
+            form.putAll(shard.client().getPresignedPostFormData(policy));
+            return form;
         } catch (Exception e) {
-            log.error("Ошибка при переименовании файла в MinIO");
-            throw new GeneralServiceException("Ошибка при переименовании файла в MinIO", e);
+            log.error("Ошибка при создании формы прямой загрузки: {}", objectKey);
+            throw new GeneralServiceException("Ошибка при создании ссылки для загрузки файла", e);
         }
     }
 
-    public byte[] getFile(String filename) {
-        try (InputStream stream = minioClient.getObject(
-                GetObjectArgs.builder()
-                        .bucket(bucketName)
-                        .object(filename)
-                        .build())) {
+    // Адрес, на который отправляется форма прямой загрузки (временные объекты - на основном шарде)
+    public String getPostUrl() {
+        return publicEndpoint.replaceAll("/+$", "") + "/" + shardRing.primary().bucket();
+    }
 
-            return stream.readAllBytes();
+    /**
+     * Открывает поток на содержимое объекта. Вызывающий обязан закрыть поток,
+     * чтобы вернуть HTTP-соединение в пул клиента MinIO.
+     */
+    @Override
+    public InputStream getFileStream(String filename) {
+        try {
+            return withHandoff(filename, shard -> shard.client().getObject(
+                    GetObjectArgs.builder()
+                            .bucket(shard.bucket())
+                            .object(filename)
+                            .build()
+            ));
         } catch (Exception e) {
             log.error("Ошибка при загрузке файла из MinIO: {}", filename);
             throw new GeneralServiceException("Ошибка при загрузке файла из MinIO: " + filename, e);
         }
     }
 
-    // Метод для проверки существования файла
-    public boolean fileExists(String filename) {
+    // Поток на диапазон байтов объекта (Range-запрос к MinIO)
+    @Override
+    public InputStream getFileStream(String filename, long offset, long length) {
         try {
-            // Проверяем, существует ли объект в указанном бакете
-            minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket(bucketName)
+            return withHandoff(filename, shard -> shard.client().getObject(
+                    GetObjectArgs.builder()
+                            .bucket(shard.bucket())
                             .object(filename)
+                            .offset(offset)
+                            .length(length)
+                            .build()
+            ));
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке диапазона {}-{} файла из MinIO: {}", offset, offset + length - 1, filename);
+            throw new GeneralServiceException("Ошибка при загрузке файла из MinIO: " + filename, e);
+        }
+    }
+
+    /**
+     * Подписанная ссылка на скачивание объекта напрямую из MinIO.
+     * Подпись вычисляется локально; обращение к серверу нужно, только если шардов несколько
+     * и надо найти шард, на котором объект лежит сейчас.
+     * contentEncoding - Content-Encoding ответа для сжатых объектов, null у несжатых.
+     */
+    @Override
+    public String getPresignedUrl(String objectKey, String filename, Duration expiry, String contentEncoding) {
+        String encodedFileName = URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
+        Map<String, String> responseHeaders = new LinkedHashMap<>();
+        responseHeaders.put("response-content-disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+        if (contentEncoding != null) {
+            // Сжатый объект отдается как есть, браузер распаковывает его сам
+            responseHeaders.put("response-content-encoding", contentEncoding);
+        }
+        try {
+            StorageShard shard = locate(objectKey);
+            return shard.client().getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(shard.bucket())
+                            .object(objectKey)
+                            .expiry((int) expiry.toSeconds())
+                            .extraQueryParams(responseHeaders)
                             .build()
             );
-            return true; // Если исключение не выброшено, файл существует
+        } catch (Exception e) {
+            log.error("Ошибка при создании подписанной ссылки на файл: {}", filename);
+            throw new GeneralServiceException("Ошибка при создании подписанной ссылки на файл: " + filename, e);
+        }
+    }
+
+    @Override
+    public boolean supportsPresignedUrls() {
+        return true;
+    }
+
+    // Ключи со всех шардов: до переноса объект может лежать не на владельце
+    @Override
+    public List<String> listObjects(String prefix) {
+        Set<String> keys = new TreeSet<>();
+        try {
+            for (StorageShard shard : shardRing.shards()) {
+                Iterable<Result<Item>> items = shard.client().listObjects(
+                        ListObjectsArgs.builder()
+                                .bucket(shard.bucket())
+                                .prefix(prefix)
+                                .recursive(true)
+                                .build()
+                );
+                for (Result<Item> item : items) {
+                    keys.add(item.get().objectName());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при получении списка объектов с префиксом {}: {}", prefix, e.getMessage());
+            throw new GeneralServiceException("Ошибка при получении списка объектов из MinIO", e);
+        }
+        return new ArrayList<>(keys);
+    }
+
+    // Начало multipart upload; объект станет видимым только после завершения
+    public String createMultipartUpload(String filename, String contentType) {
+        try {
+            return minioMultipartClient.createMultipartUpload(shardRing.primary().bucket(), filename, contentType);
+        } catch (Exception e) {
+            log.error("Ошибка при создании multipart upload для файла: {}", filename);
+            throw new GeneralServiceException("Ошибка при создании загрузки файла: " + filename, e);
+        }
+    }
+
+    public String uploadPart(String filename, String uploadId, int partNumber, byte[] data, int length) {
+        try {
+            return minioMultipartClient.uploadPart(shardRing.primary().bucket(), filename, uploadId, partNumber, data, length);
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке части {} файла: {}", partNumber, filename);
+            throw new GeneralServiceException("Ошибка при загрузке части файла: " + filename, e);
+        }
+    }
+
+    public List<Part> listParts(String filename, String uploadId) {
+        try {
+            return minioMultipartClient.listParts(shardRing.primary().bucket(), filename, uploadId);
+        } catch (Exception e) {
+            log.error("Ошибка при получении списка частей файла: {}", filename);
+            throw new GeneralServiceException("Ошибка при получении списка частей файла: " + filename, e);
+        }
+    }
+
+    public void completeMultipartUpload(String filename, String uploadId, List<Part> parts) {
+        try {
+            // В запрос на сборку идут только номер и ETag каждой части
+            Part[] completed = parts.stream().map(part -> new Part(part.partNumber(), part.etag())).toArray(Part[]::new);
+            minioMultipartClient.completeMultipartUpload(shardRing.primary().bucket(), filename, uploadId, completed);
+            log.info("✅ Файл собран из {} частей в MinIO: {}", parts.size(), filename);
+        } catch (Exception e) {
+            log.error("Ошибка при завершении multipart upload файла: {}", filename);
+            throw new GeneralServiceException("Ошибка при завершении загрузки файла: " + filename, e);
+        }
+    }
+
+    // Отмена загрузки: MinIO удаляет уже принятые части. Уже отмененная загрузка считается успехом
+    public boolean abortMultipartUpload(String filename, String uploadId) {
+        try {
+            minioMultipartClient.abortMultipartUpload(shardRing.primary().bucket(), filename, uploadId);
+            return true;
         } catch (ErrorResponseException e) {
-            // Если объект не найден, возвращаем false
-            if ("NoSuchKey".equals(e.errorResponse().code())) {
-                return false;
+            if ("NoSuchUpload".equals(e.errorResponse().code())) {
+                return true;
             }
-            // Логируем другие исключения
-            log.error("Ошибка при проверке существования файла {}: {}", filename, e.getMessage());
-            throw new RuntimeException("Ошибка при проверке существования файла: " + e.getMessage(), e);
+            log.error("Ошибка при отмене multipart upload файла {}: {}", filename, e.getMessage());
+            return false;
         } catch (Exception e) {
-            log.error("Ошибка при проверке существования файла {}: {}", filename, e.getMessage());
-            throw new RuntimeException("Ошибка при проверке существования файла: " + e.getMessage(), e);
+            log.error("Ошибка при отмене multipart upload файла {}: {}", filename, e.getMessage());
+            return false;
+        }
+    }
+
+    // Владелец ключа: blob распределяются по кольцу, остальные объекты лежат на основном шарде
+    private StorageShard owner(String objectKey) {
+        return Blob.isObjectKey(objectKey) ? shardRing.locate(objectKey) : shardRing.primary();
+    }
+
+    // Где искать объект: владелец, затем остальные шарды
+    private List<StorageShard> candidates(String objectKey) {
+        return Blob.isObjectKey(objectKey) && shardRing.size() > 1
+                ? shardRing.preference(objectKey)
+                : List.of(owner(objectKey));
+    }
+
+    // Шард, на котором объект лежит сейчас; при одном кандидате сервер не опрашивается
+    private StorageShard locate(String objectKey) throws Exception {
+        List<StorageShard> candidates = candidates(objectKey);
+        if (candidates.size() == 1) {
+            return candidates.getFirst();
+        }
+        return withHandoff(objectKey, shard -> {
+            stat(shard, objectKey);
+            return shard;
+        });
+    }
+
+    private StorageShard shard(String name) {
+        if (name == null) {
+            return shardRing.primary();
+        }
+        return shardRing.find(name)
+                .orElseThrow(() -> new GeneralServiceException("Неизвестный шард хранилища: " + name));
+    }
+
+    // Операция над объектом на владельце; если его там нет (объект еще не перенесен), - на остальных шардах
+    private <T> T withHandoff(String objectKey, ShardOperation<T> operation) throws Exception {
+        List<StorageShard> candidates = candidates(objectKey);
+        for (int i = 0; ; i++) {
+            try {
+                return operation.apply(candidates.get(i));
+            } catch (ErrorResponseException e) {
+                if (!"NoSuchKey".equals(e.errorResponse().code()) || i == candidates.size() - 1) {
+                    throw e;
+                }
+            }
         }
     }
+
+    private static StatObjectResponse stat(StorageShard shard, String objectKey) throws Exception {
+        return shard.client().statObject(
+                StatObjectArgs.builder()
+                        .bucket(shard.bucket())
+                        .object(objectKey)
+                        .build()
+        );
+    }
+
+    @FunctionalInterface
+    private interface ShardOperation<T> {
+        T apply(StorageShard shard) throws Exception;
+    }
 }
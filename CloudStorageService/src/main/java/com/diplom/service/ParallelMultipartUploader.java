@@ -0,0 +1,197 @@
+package com.diplom.service;
+
+import com.diplom.exception.GeneralServiceException;
+import io.minio.messages.Part;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Параллельная multipart-загрузка большого объекта в MinIO.
+ * Поток запроса читает файл частями и отдает их пулу потоков, так что одновременно
+ * в MinIO уходит до parallelism частей одного файла. Части читаются в буферы из общего
+ * пула и возвращаются в него после отправки. Память ограничена двумя семафорами:
+ * число частей в полете на одну загрузку и общий объем буферов по всем загрузкам
+ * (max-buffered). При любой ошибке multipart upload отменяется, части не остаются в бакете.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@Component
+public class ParallelMultipartUploader {
+
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes(); // ограничение S3
+    private static final long MAX_PART_SIZE = Integer.MAX_VALUE - 8; // часть держится в одном byte[]
+
+    private final MinioMultipartClient minioMultipartClient;
+    private final BufferPool bufferPool;
+    private final int partSize;
+    private final int parallelism;
+    private final Semaphore bufferedBytes;
+    private final ExecutorService uploadExecutor;
+
+    @Autowired
+    public ParallelMultipartUploader(MinioMultipartClient minioMultipartClient, BufferPool bufferPool,
+                                     @Value("${minio.upload.part-size:16MB}") DataSize partSize,
+                                     @Value("${minio.upload.parallelism:4}") int parallelism,
+                                     @Value("${minio.upload.threads:16}") int threads,
+                                     @Value("${minio.upload.max-buffered:256MB}") DataSize maxBuffered) {
+        if (partSize.toBytes() < MIN_PART_SIZE || partSize.toBytes() > MAX_PART_SIZE) {
+            throw new IllegalArgumentException("minio.upload.part-size должен быть от 5MB до 2GB: " + partSize);
+        }
+        if (parallelism < 1 || threads < 1) {
+            throw new IllegalArgumentException("minio.upload.parallelism и minio.upload.threads должны быть больше нуля");
+        }
+        this.minioMultipartClient = minioMultipartClient;
+        this.bufferPool = bufferPool;
+        this.partSize = (int) partSize.toBytes();
+        this.parallelism = parallelism;
+        // Общий лимит не меньше одной части, иначе загрузка не сможет начаться
+        this.bufferedBytes = new Semaphore((int) Math.min(Math.max(maxBuffered.toBytes(), partSize.toBytes()), MAX_PART_SIZE), true);
+        this.uploadExecutor = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("minio-upload-", 0).daemon().factory());
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Загрузка потока как multipart upload. Если size = -1, поток читается до конца.
+     * Возвращает число загруженных байтов.
+     */
+    public long upload(String bucket, String object, InputStream inputStream, long size, String contentType) {
+        String uploadId;
+        try {
+            uploadId = minioMultipartClient.createMultipartUpload(bucket, object, contentType);
+        } catch (Exception e) {
+            log.error("Ошибка при создании multipart upload для файла: {}", object);
+            throw new GeneralServiceException("Ошибка при загрузке файла в MinIO: " + object, e);
+        }
+
+        Semaphore partsInFlight = new Semaphore(parallelism);
+        List<CompletableFuture<Part>> pending = new ArrayList<>();
+        long total = 0;
+        try {
+            for (int partNumber = 1; ; partNumber++) {
+                int length = size < 0 ? partSize : (int) Math.min(partSize, size - total);
+                if (length == 0 && partNumber > 1) {
+                    break;
+                }
+
+                partsInFlight.acquire();
+                bufferedBytes.acquire(length);
+                BufferPool.Buffer buffer;
+                int read;
+                try {
+                    buffer = bufferPool.acquire(length);
+                } catch (RuntimeException e) {
+                    release(partsInFlight, length);
+                    throw e;
+                }
+                try {
+                    read = inputStream.readNBytes(buffer.array(), 0, length);
+                } catch (IOException | RuntimeException e) {
+                    release(buffer, partsInFlight, length);
+                    throw e;
+                }
+                if (size >= 0 && read < length) {
+                    release(buffer, partsInFlight, length);
+                    throw new EOFException("Поток закончился раньше заявленного размера: " + (total + read) + " из " + size);
+                }
+                if (read == 0 && partNumber > 1) {
+                    release(buffer, partsInFlight, length);
+                    break;
+                }
+
+                pending.add(submit(bucket, object, uploadId, partNumber, buffer, read, partsInFlight, length));
+                total += read;
+
+                // Неудачная часть прерывает чтение, не дожидаясь остальных
+                if (pending.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+                if (read < length) {
+                    break;
+                }
+            }
+
+            List<Part> parts = new ArrayList<>(pending.size());
+            for (CompletableFuture<Part> future : pending) {
+                parts.add(future.join());
+            }
+            minioMultipartClient.completeMultipartUpload(bucket, object, uploadId, parts.toArray(new Part[0]));
+            log.info("✅ Файл загружен в MinIO параллельно ({} частей): {}", parts.size(), object);
+            return total;
+        } catch (Exception e) {
+            abort(bucket, object, uploadId, pending);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Ошибка при параллельной загрузке файла {} в MinIO: {}", object, cause.getMessage());
+            throw new GeneralServiceException("Ошибка при загрузке файла в MinIO: " + object, cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    private CompletableFuture<Part> submit(String bucket, String object, String uploadId, int partNumber,
+                                           BufferPool.Buffer buffer, int length, Semaphore partsInFlight, int reserved) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    String etag = minioMultipartClient.uploadPart(bucket, object, uploadId, partNumber, buffer.array(), length);
+                    return new Part(partNumber, etag);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    release(buffer, partsInFlight, reserved);
+                }
+            }, uploadExecutor);
+        } catch (RuntimeException e) {
+            release(buffer, partsInFlight, reserved);
+            throw e;
+        }
+    }
+
+    // Перед отменой дожидаемся частей в полете, иначе они могут появиться после abort
+    private void abort(String bucket, String object, String uploadId, List<CompletableFuture<Part>> pending) {
+        pending.forEach(future -> future.exceptionally(e -> null).join());
+        try {
+            minioMultipartClient.abortMultipartUpload(bucket, object, uploadId);
+        } catch (Exception e) {
+            log.error("Не удалось отменить multipart upload файла {}: {}", object, e.getMessage());
+        }
+    }
+
+    private void release(BufferPool.Buffer buffer, Semaphore partsInFlight, int reserved) {
+        buffer.close();
+        release(partsInFlight, reserved);
+    }
+
+    private void release(Semaphore partsInFlight, int reserved) {
+        bufferedBytes.release(reserved);
+        partsInFlight.release();
+    }
+}
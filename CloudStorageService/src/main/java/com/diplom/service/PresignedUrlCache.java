@@ -0,0 +1,73 @@
+package com.diplom.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Кэш подписанных ссылок на скачивание по паре (пользователь, файл).
+ * Ссылка переиспользуется, пока у нее остается больше половины срока жизни,
+ * поэтому клиент всегда получает ссылку, действующую не меньше ttl / 2.
+ * Вместе со ссылкой хранится место объекта, на которое она подписана: после переноса
+ * объекта между уровнями или шардами (копия на прежнем месте удаляется) ссылка подписывается заново.
+ */
+@Slf4j
+@Component
+public class PresignedUrlCache {
+
+    private final Map<String, CachedUrl> urls = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Clock clock;
+
+    public PresignedUrlCache(@Value("${minio.download.presigned-cache-size:10000}") int maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    PresignedUrlCache(int maxEntries, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    public String get(Long userId, String filename, String location, Duration ttl, Supplier<String> signer) {
+        Instant now = clock.instant();
+        CachedUrl cached = urls.compute(key(userId, filename), (key, current) ->
+                current != null && now.isBefore(current.refreshAt()) && current.location().equals(location)
+                        ? current : sign(signer, location, now, ttl));
+
+        if (urls.size() > maxEntries) {
+            evictExpired(now);
+        }
+        return cached.url();
+    }
+
+    public void invalidate(Long userId, String filename) {
+        urls.remove(key(userId, filename));
+    }
+
+    private CachedUrl sign(Supplier<String> signer, String location, Instant now, Duration ttl) {
+        return new CachedUrl(signer.get(), location, now.plus(ttl.dividedBy(2)));
+    }
+
+    // Удаляем ссылки, которые уже не будут выданы повторно; при переполнении свежими сбрасываем кэш
+    private void evictExpired(Instant now) {
+        urls.values().removeIf(cached -> !now.isBefore(cached.refreshAt()));
+        if (urls.size() > maxEntries) {
+            urls.clear();
+        }
+        log.debug("Очистка кэша подписанных ссылок, осталось записей: {}", urls.size());
+    }
+
+    private static String key(Long userId, String filename) {
+        return userId + "/" + filename;
+    }
+
+    private record CachedUrl(String url, String location, Instant refreshAt) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.diplom.service;
+
+import com.diplom.model.Blob;
+import com.diplom.repository.BlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Фоновый перенос blob на шард, которому они принадлежат по кольцу.
+ * После добавления шарда его доля объектов еще лежит на прежних шардах и читается
+ * оттуда; перенос копирует объект под блокировкой строки (BlobService.relocate),
+ * записывает новый шард и только после фиксации удаляет копию на прежнем.
+ * Ошибочный blob пропускается и будет повторен при следующем проходе.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@Component
+public class ShardRebalancer {
+
+    private final BlobRepository blobRepository;
+    private final BlobService blobService;
+    private final MinioService minioService;
+    private final ShardRing shardRing;
+    private final int batchSize;
+
+    @Autowired
+    public ShardRebalancer(BlobRepository blobRepository, BlobService blobService, MinioService minioService,
+                           ShardRing shardRing,
+                           @Value("${minio.rebalance.batch-size:100}") int batchSize) {
+        this.blobRepository = blobRepository;
+        this.blobService = blobService;
+        this.minioService = minioService;
+        this.shardRing = shardRing;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${minio.rebalance.interval:PT1H}")
+    public void rebalance() {
+        if (shardRing.size() == 1) {
+            return;
+        }
+        int moved = 0;
+        String after = "";
+        List<Blob> blobs;
+        do {
+            blobs = blobRepository.findReferencedAfter(after, PageRequest.ofSize(batchSize));
+            for (Blob blob : blobs) {
+                if (move(blob)) {
+                    moved++;
+                }
+            }
+            if (!blobs.isEmpty()) {
+                after = blobs.getLast().getHash();
+            }
+        } while (blobs.size() == batchSize);
+
+        if (moved > 0) {
+            log.info("Перенесено blob на другие шарды: {}", moved);
+        }
+    }
+
+    private boolean move(Blob blob) {
+        String current = blob.getShard() != null ? blob.getShard() : shardRing.primary().name();
+        String owner = minioService.shardOf(blob.getObjectKey());
+        if (owner.equals(current)) {
+            return false;
+        }
+        try {
+            if (!blobService.relocate(blob.getHash(), blob.getShard(), owner,
+                    key -> minioService.copyBetweenShards(key, blob.getShard(), owner))) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось перенести blob {} с шарда {} на {}: {}", blob.getHash(), current, owner, e.getMessage());
+            return false;
+        }
+        // Blob уже ссылается на новый шард; не удаленная копия только занимает место
+        if (!minioService.deleteFromShard(blob.getObjectKey(), current)) {
+            log.warn("Копия blob {} на шарде {} не удалена после переноса", blob.getHash(), current);
+        }
+        return true;
+    }
+}
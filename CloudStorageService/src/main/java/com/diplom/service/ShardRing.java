@@ -0,0 +1,97 @@
+package com.diplom.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хэширования по шардам хранилища.
+ * Каждый шард занимает на кольце virtualNodes * weight точек, объект принадлежит
+ * шарду первой точки по часовой стрелке от хэша его ключа. При добавлении шарда
+ * переезжает только доля объектов, попавшая на его точки, а не все объекты.
+ * Первый шард в списке - основной: на нем лежат временные объекты загрузок и старые файлы.
+ */
+public class ShardRing {
+
+    private final List<StorageShard> shards;
+    private final NavigableMap<Long, StorageShard> ring = new TreeMap<>();
+
+    public ShardRing(List<StorageShard> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Нужен хотя бы один шард хранилища");
+        }
+        if (shards.stream().map(StorageShard::name).distinct().count() != shards.size()) {
+            throw new IllegalArgumentException("Имена шардов хранилища должны быть уникальны");
+        }
+        this.shards = List.copyOf(shards);
+        for (StorageShard shard : shards) {
+            for (int i = 0; i < virtualNodes * Math.max(shard.weight(), 1); i++) {
+                ring.putIfAbsent(hash(shard.name() + "#" + i), shard);
+            }
+        }
+    }
+
+    public StorageShard primary() {
+        return shards.getFirst();
+    }
+
+    public List<StorageShard> shards() {
+        return shards;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public Optional<StorageShard> find(String name) {
+        return shards.stream().filter(shard -> shard.name().equals(name)).findFirst();
+    }
+
+    // Шард, которому принадлежит ключ
+    public StorageShard locate(String key) {
+        Map.Entry<Long, StorageShard> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Все шарды в порядке обхода кольца от ключа: первый - владелец, дальше - где искать объект,
+     * который еще не перенесен на владельца после изменения набора шардов.
+     */
+    public List<StorageShard> preference(String key) {
+        Set<StorageShard> ordered = new LinkedHashSet<>();
+        long hash = hash(key);
+        for (StorageShard shard : ring.tailMap(hash, true).values()) {
+            if (ordered.add(shard) && ordered.size() == shards.size()) {
+                return new ArrayList<>(ordered);
+            }
+        }
+        for (StorageShard shard : ring.headMap(hash, false).values()) {
+            if (ordered.add(shard) && ordered.size() == shards.size()) {
+                break;
+            }
+        }
+        return new ArrayList<>(ordered);
+    }
+
+    // Первые 8 байт MD5: равномерное распределение, криптостойкость не нужна
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
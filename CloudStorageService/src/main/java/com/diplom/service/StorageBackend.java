@@ -0,0 +1,75 @@
+package com.diplom.service;
+
+import com.diplom.exception.GeneralServiceException;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Хранилище содержимого объектов по ключу. Сервисы работают только через этот интерфейс,
+ * реализация выбирается свойством storage.backend: minio - MinIO ({@link MinioService}),
+ * local - каталог на локальном диске ({@link LocalStorageBackend}).
+ * Запись объекта атомарна: читатель видит либо прежнее содержимое ключа, либо новое целиком.
+ * Ошибки хранилища передаются как {@link GeneralServiceException}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Запись объекта из потока. size = -1 - длина неизвестна, поток читается до конца.
+     * contentType = null - application/octet-stream.
+     */
+    void uploadStream(String key, InputStream inputStream, long size, String contentType);
+
+    // Поток на содержимое объекта; вызывающий обязан закрыть поток
+    InputStream getFileStream(String key);
+
+    // Поток на диапазон байтов объекта
+    InputStream getFileStream(String key, long offset, long length);
+
+    // Метаданные объекта или пустой результат, если объекта нет
+    Optional<ObjectStat> findStat(String key);
+
+    // Метаданные объекта без чтения содержимого
+    default ObjectStat statFile(String key) {
+        return findStat(key).orElseThrow(() -> new GeneralServiceException("Объект не найден в хранилище: " + key));
+    }
+
+    void copyObject(String sourceKey, String targetKey);
+
+    // Сборка объекта из диапазонов других объектов по порядку
+    void composeObject(String targetKey, List<Range> ranges);
+
+    // Удаление объекта; отсутствующий объект считается удаленным
+    boolean deleteFile(String key);
+
+    // Ключи объектов с заданным префиксом по возрастанию
+    List<String> listObjects(String prefix);
+
+    // Шард, на котором хранилище размещает ключ; null - хранилище без шардов
+    default String shardOf(String key) {
+        return null;
+    }
+
+    // Может ли клиент скачивать объекты из хранилища напрямую по подписанной ссылке
+    default boolean supportsPresignedUrls() {
+        return false;
+    }
+
+    /**
+     * Подписанная ссылка на скачивание объекта напрямую из хранилища.
+     * contentEncoding - Content-Encoding ответа для сжатых объектов, null у несжатых.
+     */
+    default String getPresignedUrl(String key, String filename, Duration expiry, String contentEncoding) {
+        throw new UnsupportedOperationException("Хранилище не выдает подписанные ссылки");
+    }
+
+    // Метаданные объекта: размер в хранилище, тип и ETag (меняется вместе с содержимым)
+    record ObjectStat(long size, String contentType, String etag) {
+    }
+
+    // Диапазон байтов объекта - источник для composeObject
+    record Range(String objectKey, long offset, long length) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.diplom.service;
+
+import com.diplom.model.StorageCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Выбор кодека для хранения содержимого в MinIO.
+ * Сжимаются только типы из настроек, и только если пробное сжатие начала файла
+ * уменьшает его хотя бы до max-ratio: логи и CSV сжимаются в разы, а уже сжатое
+ * содержимое под текстовым типом хранится как есть.
+ * Метрики storage.compression.* показывают исходные и записанные в MinIO байты.
+ */
+@Slf4j
+@Component
+public class StorageCompression {
+
+    private static final int TRIAL_BUFFER_SIZE = 8192;
+
+    private final boolean enabled;
+    private final int sampleSize;
+    private final double maxRatio;
+    private final int level;
+    private final List<MimeType> mimeTypes;
+    private final BufferPool bufferPool;
+
+    private final Counter originalBytes;
+    private final Counter storedBytes;
+
+    @Autowired
+    public StorageCompression(@Value("${storage.compression.enabled:true}") boolean enabled,
+                              @Value("${storage.compression.sample-size:64KB}") DataSize sampleSize,
+                              @Value("${storage.compression.max-ratio:0.8}") double maxRatio,
+                              @Value("${storage.compression.level:6}") int level,
+                              @Value("${storage.compression.mime-types:text/*,application/json,application/xml,application/javascript,application/x-ndjson}")
+                              List<String> mimeTypes,
+                              BufferPool bufferPool,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.sampleSize = (int) sampleSize.toBytes();
+        this.maxRatio = maxRatio;
+        this.level = level;
+        this.mimeTypes = mimeTypes.stream().map(MimeTypeUtils::parseMimeType).toList();
+        this.bufferPool = bufferPool;
+
+        this.originalBytes = Counter.builder("storage.compression.bytes.original")
+                .description("Байты загруженного содержимого до сжатия").baseUnit("bytes").register(meterRegistry);
+        this.storedBytes = Counter.builder("storage.compression.bytes.stored")
+                .description("Байты, записанные в MinIO").baseUnit("bytes").register(meterRegistry);
+    }
+
+    public int getSampleSize() {
+        return enabled ? sampleSize : 0;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    // Кодек по типу содержимого и степени сжатия начала файла
+    public StorageCodec choose(String contentType, byte[] sample, int length) {
+        if (!enabled || length == 0 || !isCompressibleType(contentType)) {
+            return StorageCodec.NONE;
+        }
+        Deflater deflater = new Deflater(level);
+        try (BufferPool.Buffer pooled = bufferPool.acquire(TRIAL_BUFFER_SIZE)) {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = pooled.array();
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            double ratio = (double) compressed / length;
+            log.debug("Пробное сжатие {} байт типа {}: {}", length, contentType, ratio);
+            return ratio <= maxRatio ? StorageCodec.DEFLATE : StorageCodec.NONE;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Учет объема: original - исходные байты, stored - записанные в MinIO
+    public void record(long original, long stored) {
+        originalBytes.increment(original);
+        storedBytes.increment(stored);
+    }
+
+    private boolean isCompressibleType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MimeType type = MimeTypeUtils.parseMimeType(contentType);
+            return mimeTypes.stream().anyMatch(allowed -> allowed.includes(type));
+        } catch (IllegalArgumentException e) {
+            log.debug("Некорректный тип содержимого {}: {}", contentType, e.getMessage());
+            return false;
+        }
+    }
+}
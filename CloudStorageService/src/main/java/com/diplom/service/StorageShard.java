@@ -0,0 +1,17 @@
+package com.diplom.service;
+
+import io.minio.MinioClient;
+
+/**
+ * Шард хранилища: бакет на одном из серверов MinIO.
+ * Шарды на одном сервере с одними учетными данными используют общий клиент,
+ * поэтому объекты между ними копируются на стороне сервера.
+ * weight - доля виртуальных узлов шарда на кольце относительно остальных.
+ */
+public record StorageShard(String name, MinioClient client, String bucket, int weight) {
+
+    // Копирование между шардами без передачи байтов через приложение
+    public boolean sameServer(StorageShard other) {
+        return client == other.client;
+    }
+}
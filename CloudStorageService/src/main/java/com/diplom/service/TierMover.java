@@ -0,0 +1,129 @@
+package com.diplom.service;
+
+import com.diplom.model.Blob;
+import com.diplom.model.StorageTier;
+import com.diplom.repository.BlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Фоновый перенос содержимого blob между уровнями хранения.
+ * Blob, которые не читали дольше demote-after, переносятся в холодный уровень;
+ * холодные blob, прочитанные не меньше promote-after-reads раз, возвращаются в горячий.
+ * Перенос, как и между шардами, идет под блокировкой строки (BlobService.changeTier),
+ * копия в прежнем уровне удаляется после фиксации. Ошибочный blob пропускается
+ * и будет повторен при следующем проходе.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.tiering.enabled", havingValue = "true")
+public class TierMover {
+
+    private final BlobRepository blobRepository;
+    private final BlobService blobService;
+    private final TieredStorageBackend tieredStorage;
+    private final Duration demoteAfter;
+    private final int promoteAfterReads;
+    private final int batchSize;
+
+    @Autowired
+    public TierMover(BlobRepository blobRepository, BlobService blobService, TieredStorageBackend tieredStorage,
+                     @Value("${storage.tiering.demote-after:P30D}") Duration demoteAfter,
+                     @Value("${storage.tiering.promote-after-reads:3}") int promoteAfterReads,
+                     @Value("${storage.tiering.batch-size:100}") int batchSize) {
+        this.blobRepository = blobRepository;
+        this.blobService = blobService;
+        this.tieredStorage = tieredStorage;
+        this.demoteAfter = demoteAfter;
+        this.promoteAfterReads = promoteAfterReads;
+        this.batchSize = batchSize;
+    }
+
+    // Чтения копятся в памяти хранилища и записываются в БД пачкой
+    @Scheduled(fixedDelayString = "${storage.tiering.access-flush-interval:PT1M}")
+    public void flushAccess() {
+        TieredStorageBackend.AccessSnapshot access = tieredStorage.drainAccess();
+        if (access.hotHashes().isEmpty() && access.coldReads().isEmpty()) {
+            return;
+        }
+        try {
+            blobService.recordAccess(access.hotHashes(), access.coldReads());
+        } catch (Exception e) {
+            // Потерянные чтения только отложат перенос, данные не страдают
+            log.warn("Не удалось сохранить статистику чтений blob: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.tiering.interval:PT1H}")
+    public void moveBetweenTiers() {
+        flushAccess();
+        LocalDateTime threshold = LocalDateTime.now().minus(demoteAfter);
+        int demoted = forEachBatch(after -> blobRepository.findIdleAfter(after, threshold, PageRequest.ofSize(batchSize)),
+                this::demote);
+        int promoted = forEachBatch(after -> blobRepository.findFrequentlyReadColdAfter(after, promoteAfterReads,
+                PageRequest.ofSize(batchSize)), this::promote);
+        if (demoted > 0 || promoted > 0) {
+            log.info("Перенесено blob в холодный уровень: {}, возвращено в горячий: {}", demoted, promoted);
+        }
+    }
+
+    private boolean demote(Blob blob) {
+        try {
+            if (!blobService.changeTier(blob.getHash(), StorageTier.HOT, StorageTier.COLD, tieredStorage::demote)) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось перенести blob {} в холодный уровень: {}", blob.getHash(), e.getMessage());
+            return false;
+        }
+        if (!tieredStorage.deleteFromHot(blob.getObjectKey())) {
+            log.warn("Горячая копия blob {} не удалена после переноса", blob.getHash());
+        }
+        return true;
+    }
+
+    private boolean promote(Blob blob) {
+        try {
+            if (!blobService.changeTier(blob.getHash(), StorageTier.COLD, StorageTier.HOT, tieredStorage::promote)) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось вернуть blob {} в горячий уровень: {}", blob.getHash(), e.getMessage());
+            return false;
+        }
+        if (!tieredStorage.deleteFromCold(blob.getObjectKey())) {
+            log.warn("Холодная копия blob {} не удалена после возврата", blob.getHash());
+        }
+        return true;
+    }
+
+    // Обход страницами по хэшу: страница начинается после последнего хэша предыдущей
+    private int forEachBatch(Function<String, List<Blob>> page, Predicate<Blob> move) {
+        int moved = 0;
+        String after = "";
+        List<Blob> blobs;
+        do {
+            blobs = page.apply(after);
+            for (Blob blob : blobs) {
+                if (move.test(blob)) {
+                    moved++;
+                }
+            }
+            if (!blobs.isEmpty()) {
+                after = blobs.getLast().getHash();
+            }
+        } while (blobs.size() == batchSize);
+        return moved;
+    }
+}
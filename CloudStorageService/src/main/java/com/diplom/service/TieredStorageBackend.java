@@ -0,0 +1,193 @@
+package com.diplom.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.model.Blob;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Хранилище из двух уровней: горячего (основной backend) и холодного (отдельный бакет).
+ * Запись, копирование и сборка идут в горячий уровень, в холодный содержимое blob
+ * переносит {@link TierMover}. Чтение blob прозрачно: объект ищется в горячем уровне,
+ * а если его там нет - в холодном, поэтому вызывающим не нужно знать уровень.
+ * Чтения blob запоминаются в памяти и периодически сбрасываются в БД (см. {@link #drainAccess}),
+ * чтобы не писать в БД при каждом скачивании.
+ */
+@Slf4j
+public class TieredStorageBackend implements StorageBackend {
+
+    private final StorageBackend hot;
+    private final StorageBackend cold;
+
+    private final Set<String> hotReads = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, AtomicInteger> coldReads = new ConcurrentHashMap<>();
+
+    public TieredStorageBackend(StorageBackend hot, StorageBackend cold) {
+        this.hot = hot;
+        this.cold = cold;
+    }
+
+    @Override
+    public void uploadStream(String key, InputStream inputStream, long size, String contentType) {
+        hot.uploadStream(key, inputStream, size, contentType);
+    }
+
+    @Override
+    public InputStream getFileStream(String key) {
+        return read(key, backend -> backend.getFileStream(key));
+    }
+
+    @Override
+    public InputStream getFileStream(String key, long offset, long length) {
+        return read(key, backend -> backend.getFileStream(key, offset, length));
+    }
+
+    @Override
+    public Optional<ObjectStat> findStat(String key) {
+        Optional<ObjectStat> stat = hot.findStat(key);
+        return stat.isPresent() || !Blob.isObjectKey(key) ? stat : cold.findStat(key);
+    }
+
+    @Override
+    public void copyObject(String sourceKey, String targetKey) {
+        hot.copyObject(sourceKey, targetKey);
+    }
+
+    @Override
+    public void composeObject(String targetKey, List<Range> ranges) {
+        hot.composeObject(targetKey, ranges);
+    }
+
+    // Удаляемый blob может лежать в любом уровне, а во время переноса - в обоих
+    @Override
+    public boolean deleteFile(String key) {
+        boolean deleted = hot.deleteFile(key);
+        if (Blob.isObjectKey(key)) {
+            deleted &= cold.deleteFile(key);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<String> listObjects(String prefix) {
+        return hot.listObjects(prefix);
+    }
+
+    @Override
+    public String shardOf(String key) {
+        return hot.shardOf(key);
+    }
+
+    @Override
+    public boolean supportsPresignedUrls() {
+        return hot.supportsPresignedUrls();
+    }
+
+    // Ссылка ведет в тот уровень, где объект лежит сейчас; выдача ссылки считается чтением
+    @Override
+    public String getPresignedUrl(String key, String filename, Duration expiry, String contentEncoding) {
+        if (!Blob.isObjectKey(key) || hot.findStat(key).isPresent()) {
+            recordHot(key);
+            return hot.getPresignedUrl(key, filename, expiry, contentEncoding);
+        }
+        if (!cold.supportsPresignedUrls()) {
+            throw new GeneralServiceException("Холодное хранилище не выдает подписанные ссылки: " + key);
+        }
+        recordCold(key);
+        return cold.getPresignedUrl(key, filename, expiry, contentEncoding);
+    }
+
+    // Перенос содержимого blob в холодный уровень; копия в горячем удаляется отдельно
+    public void demote(String key) {
+        transfer(key, hot, cold);
+    }
+
+    // Возврат содержимого blob в горячий уровень; копия в холодном удаляется отдельно
+    public void promote(String key) {
+        transfer(key, cold, hot);
+    }
+
+    public boolean deleteFromHot(String key) {
+        return hot.deleteFile(key);
+    }
+
+    public boolean deleteFromCold(String key) {
+        return cold.deleteFile(key);
+    }
+
+    // Накопленные с прошлого вызова чтения: хэши прочитанных горячих blob и число чтений холодных
+    public AccessSnapshot drainAccess() {
+        Set<String> hotHashes = new HashSet<>();
+        for (String hash : hotReads) {
+            if (hotReads.remove(hash)) {
+                hotHashes.add(hash);
+            }
+        }
+        Map<String, Integer> coldHashes = new HashMap<>();
+        for (String hash : coldReads.keySet()) {
+            AtomicInteger reads = coldReads.remove(hash);
+            if (reads != null) {
+                coldHashes.put(hash, reads.get());
+            }
+        }
+        return new AccessSnapshot(hotHashes, coldHashes);
+    }
+
+    /**
+     * Чтение из горячего уровня; если объекта там нет (blob перенесен в холодный) -
+     * из холодного. Ошибка чтения существующего горячего объекта передается как есть.
+     */
+    private InputStream read(String key, Function<StorageBackend, InputStream> open) {
+        if (!Blob.isObjectKey(key)) {
+            return open.apply(hot);
+        }
+        try {
+            InputStream inputStream = open.apply(hot);
+            recordHot(key);
+            return inputStream;
+        } catch (GeneralServiceException e) {
+            if (hot.findStat(key).isPresent()) {
+                throw e;
+            }
+            InputStream inputStream = open.apply(cold);
+            recordCold(key);
+            return inputStream;
+        }
+    }
+
+    private void recordHot(String key) {
+        if (Blob.isObjectKey(key)) {
+            hotReads.add(Blob.hashOf(key));
+        }
+    }
+
+    private void recordCold(String key) {
+        coldReads.computeIfAbsent(Blob.hashOf(key), hash -> new AtomicInteger()).incrementAndGet();
+    }
+
+    // Копирование потоком: уровни могут быть на разных серверах и разных backend
+    private static void transfer(String key, StorageBackend source, StorageBackend target) {
+        ObjectStat stat = source.statFile(key);
+        try (InputStream inputStream = source.getFileStream(key)) {
+            target.uploadStream(key, inputStream, stat.size(), stat.contentType());
+        } catch (IOException e) {
+            log.error("Ошибка при переносе объекта {} между уровнями хранения", key);
+            throw new GeneralServiceException("Ошибка при переносе объекта между уровнями хранения: " + key, e);
+        }
+    }
+
+    public record AccessSnapshot(Set<String> hotHashes, Map<String, Integer> coldReads) {
+    }
+}
@@ -0,0 +1,206 @@
+package com.diplom.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.File;
+import com.diplom.model.UploadSession;
+import com.diplom.model.User;
+import com.diplom.model.dto.UploadChunkDTO;
+import com.diplom.model.dto.UploadSessionDTO;
+import com.diplom.repository.UploadSessionRepository;
+import io.minio.messages.Part;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Возобновляемая загрузка больших файлов по частям.
+ * Сессия соответствует multipart upload в MinIO: каждая часть загружается
+ * отдельным запросом и может быть повторена, список принятых частей берется
+ * из MinIO. Части собираются под временным ключом сессии; при завершении содержимое
+ * регистрируется как blob, и только тогда создается запись в таблице files.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@Service
+public class UploadSessionService {
+
+    private static final int MAX_PART_NUMBER = 10_000;
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes(); // ограничение S3 для всех частей, кроме последней
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final MinioService minioService;
+    private final FileService fileService;
+    private final BlobService blobService;
+    private final BufferPool bufferPool;
+    private final long maxChunkSize;
+    private final Duration sessionTtl;
+
+    @Autowired
+    public UploadSessionService(UploadSessionRepository uploadSessionRepository, MinioService minioService,
+                                FileService fileService, BlobService blobService, BufferPool bufferPool,
+                                @Value("${upload.sessions.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                @Value("${upload.sessions.ttl:P1D}") Duration sessionTtl) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.minioService = minioService;
+        this.fileService = fileService;
+        this.blobService = blobService;
+        this.bufferPool = bufferPool;
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.sessionTtl = sessionTtl;
+    }
+
+    @Transactional
+    public UploadSession createSession(User user, String filename, String contentType) {
+        if (filename == null || filename.trim().isEmpty()) {
+            log.error("Имя файла пустое!");
+            throw new InvalidInputException("Имя файла пустое!");
+        }
+
+        String id = UUID.randomUUID().toString();
+        String uploadId = minioService.createMultipartUpload(BlobService.temporaryKey(id), contentType);
+        UploadSession session = UploadSession.builder()
+                .id(id)
+                .owner(user)
+                .filename(filename)
+                .uploadId(uploadId)
+                .updatedAt(LocalDateTime.now())
+                .build();
+        log.info("Создана сессия загрузки {} файла {} для пользователя {}", session.getId(), filename, user.getUsername());
+        return uploadSessionRepository.save(session);
+    }
+
+    /**
+     * Прием одной части. Часть читается целиком в буфер из пула (не больше max-chunk-size),
+     * повторная загрузка части с тем же номером заменяет предыдущую.
+     */
+    @Transactional
+    public UploadChunkDTO uploadChunk(User user, String sessionId, int partNumber, InputStream body, long contentLength) {
+        UploadSession session = findSession(user, sessionId);
+
+        if (partNumber < 1 || partNumber > MAX_PART_NUMBER) {
+            log.error("Недопустимый номер части {} в сессии {}", partNumber, sessionId);
+            throw new InvalidInputException("Номер части должен быть от 1 до " + MAX_PART_NUMBER);
+        }
+        if (contentLength <= 0 || contentLength > maxChunkSize) {
+            log.error("Недопустимый размер части {} в сессии {}", contentLength, sessionId);
+            throw new InvalidInputException("Размер части должен быть указан в Content-Length и не превышать " + maxChunkSize);
+        }
+
+        int length = (int) contentLength;
+        try (BufferPool.Buffer pooled = bufferPool.acquire(length)) {
+            int read;
+            try {
+                read = body.readNBytes(pooled.array(), 0, length);
+            } catch (IOException e) {
+                log.error("Ошибка при чтении части {} сессии {}: {}", partNumber, sessionId, e.getMessage());
+                throw new GeneralServiceException("Ошибка при чтении части файла", e);
+            }
+            if (read != length) {
+                log.error("Часть {} сессии {} короче Content-Length: {} из {}", partNumber, sessionId, read, contentLength);
+                throw new InvalidInputException("Часть файла получена не полностью");
+            }
+
+            minioService.uploadPart(objectKey(session), session.getUploadId(), partNumber, pooled.array(), length);
+        }
+
+        session.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+        return new UploadChunkDTO(partNumber, length);
+    }
+
+    // Состояние сессии: какие части уже приняты
+    public UploadSessionDTO getSession(User user, String sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        List<UploadChunkDTO> chunks = minioService.listParts(objectKey(session), session.getUploadId()).stream()
+                .sorted(Comparator.comparingInt(Part::partNumber))
+                .map(part -> new UploadChunkDTO(part.partNumber(), part.partSize()))
+                .toList();
+        return new UploadSessionDTO(session.getId(), session.getFilename(), chunks);
+    }
+
+    /**
+     * Сборка файла из принятых частей в порядке номеров и создание записи о файле.
+     */
+    @Transactional
+    public File completeSession(User user, String sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        List<Part> parts = minioService.listParts(objectKey(session), session.getUploadId()).stream()
+                .sorted(Comparator.comparingInt(Part::partNumber))
+                .toList();
+
+        if (parts.isEmpty()) {
+            log.error("В сессии {} нет загруженных частей", sessionId);
+            throw new InvalidInputException("В сессии нет загруженных частей");
+        }
+        for (int i = 0; i < parts.size() - 1; i++) {
+            if (parts.get(i).partSize() < MIN_PART_SIZE) {
+                log.error("Часть {} сессии {} меньше 5MB и не последняя", parts.get(i).partNumber(), sessionId);
+                throw new InvalidInputException("Все части, кроме последней, должны быть не меньше 5MB");
+            }
+        }
+
+        minioService.completeMultipartUpload(objectKey(session), session.getUploadId(), parts);
+        Blob blob = blobService.adopt(objectKey(session));
+
+        uploadSessionRepository.delete(session);
+        log.info("Сессия загрузки {} завершена, файл {} ({} байт)", sessionId, session.getFilename(), blob.getSize());
+        return fileService.commitUploadedFile(user, session.getFilename(), blob);
+    }
+
+    @Transactional
+    public void abortSession(User user, String sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        if (!minioService.abortMultipartUpload(objectKey(session), session.getUploadId())) {
+            throw new GeneralServiceException("Не удалось отменить загрузку файла: " + session.getFilename());
+        }
+        uploadSessionRepository.delete(session);
+        log.info("Сессия загрузки {} отменена", sessionId);
+    }
+
+    /**
+     * Отмена брошенных сессий, чтобы их части не занимали место в бакете.
+     * Если MinIO недоступен, сессия остается в БД и будет отменена при следующем проходе.
+     */
+    @Scheduled(fixedDelayString = "${upload.sessions.sweep-interval:PT1H}")
+    public void sweepAbandonedSessions() {
+        LocalDateTime threshold = LocalDateTime.now().minus(sessionTtl);
+        int removed = 0;
+        for (UploadSession session : uploadSessionRepository.findByUpdatedAtBefore(threshold)) {
+            if (minioService.abortMultipartUpload(objectKey(session), session.getUploadId())) {
+                uploadSessionRepository.delete(session);
+                removed++;
+            } else {
+                log.warn("Не удалось отменить multipart upload сессии {}", session.getId());
+            }
+        }
+        if (removed > 0) {
+            log.info("Удалено брошенных сессий загрузки: {}", removed);
+        }
+    }
+
+    // Части собираются под временным ключом, имя файла в MinIO не используется
+    private static String objectKey(UploadSession session) {
+        return BlobService.temporaryKey(session.getId());
+    }
+
+    private UploadSession findSession(User user, String sessionId) {
+        return uploadSessionRepository.findByIdAndOwner_Id(sessionId, user.getId())
+                .orElseThrow(() -> new FilesNotFoundException("Сессия загрузки не найдена: " + sessionId));
+    }
+}
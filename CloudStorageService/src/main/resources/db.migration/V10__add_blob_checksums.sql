@@ -0,0 +1,3 @@
+-- Контрольная сумма и тип содержимого, вычисленные за один проход при загрузке
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS crc32c BIGINT;
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS mime_type VARCHAR(255);
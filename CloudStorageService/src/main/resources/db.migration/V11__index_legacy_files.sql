@@ -0,0 +1,2 @@
+-- Старые файлы без blob: поиск по ключу объекта при переводе на blob и при удалении
+CREATE INDEX IF NOT EXISTS idx_files_legacy_filepath ON files (filepath) WHERE blob_hash IS NULL;
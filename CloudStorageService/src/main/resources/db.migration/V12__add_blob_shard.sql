@@ -0,0 +1,2 @@
+-- Шард хранилища, на котором лежит объект blob; NULL - основной шард
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS shard VARCHAR(64);
@@ -0,0 +1,10 @@
+-- Уровень хранения blob и статистика чтений для переноса между горячим и холодным уровнями
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS tier VARCHAR(8) NOT NULL DEFAULT 'HOT';
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS last_accessed_at TIMESTAMP;
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS cold_reads INTEGER NOT NULL DEFAULT 0;
+-- До учета чтений последним обращением считается последнее изменение ссылок
+UPDATE blobs SET last_accessed_at = updated_at WHERE last_accessed_at IS NULL;
+-- Кандидаты на перенос в холодный уровень: давно не читавшиеся горячие blob
+CREATE INDEX IF NOT EXISTS idx_blobs_hot_last_access ON blobs (last_accessed_at) WHERE tier = 'HOT';
+-- Кандидаты на возврат: холодные blob с повторными чтениями
+CREATE INDEX IF NOT EXISTS idx_blobs_cold_reads ON blobs (cold_reads) WHERE tier = 'COLD';
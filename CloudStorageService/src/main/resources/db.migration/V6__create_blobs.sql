@@ -0,0 +1,15 @@
+-- Хранение содержимого по SHA-256 с подсчетом ссылок
+CREATE TABLE IF NOT EXISTS blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count BIGINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_blobs_unreferenced ON blobs (updated_at) WHERE ref_count = 0;
+
+-- Файлы, загруженные до перехода, остаются без blob и хранятся под своим именем
+ALTER TABLE files ADD COLUMN IF NOT EXISTS blob_hash VARCHAR(64) REFERENCES blobs (hash);
+
+CREATE INDEX IF NOT EXISTS idx_files_blob_hash ON files (blob_hash);
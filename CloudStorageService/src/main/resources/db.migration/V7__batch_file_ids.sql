@@ -0,0 +1,4 @@
+-- Идентификаторы файлов выдаются блоками по 50 (allocationSize), чтобы вставки шли пакетами JDBC
+CREATE SEQUENCE IF NOT EXISTS files_id_seq;
+ALTER SEQUENCE files_id_seq INCREMENT BY 50;
+SELECT setval('files_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM files));
@@ -0,0 +1,12 @@
+-- Резервы прямой загрузки в MinIO по подписанной форме
+CREATE TABLE IF NOT EXISTS direct_uploads (
+    id VARCHAR(36) PRIMARY KEY,
+    owner BIGINT NOT NULL,
+    filename VARCHAR(255) NOT NULL,
+    max_size BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL,
+    FOREIGN KEY (owner) REFERENCES "user"(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_direct_uploads_expires_at ON direct_uploads (expires_at);
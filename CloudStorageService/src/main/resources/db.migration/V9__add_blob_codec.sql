@@ -0,0 +1,3 @@
+-- Сжатие содержимого в MinIO: кодек объекта и его размер после сжатия
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS codec VARCHAR(16) NOT NULL DEFAULT 'NONE';
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS stored_size BIGINT;
@@ -0,0 +1,120 @@
+package com.diplom.CloudStorageService.benchmark;
+
+import com.diplom.service.BufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выделение памяти в цикле копирования до и после общего пула буферов:
+ * <ul>
+ *     <li>freshBuffer - новый byte[] на каждую передачу, как было в циклах копирования;</li>
+ *     <li>pooledBuffer - буфер из BufferPool, возвращаемый после передачи.</li>
+ * </ul>
+ * Размер буфера 64 КБ соответствует отдаче файла и архива, 16 МБ - части multipart-загрузки.
+ * Кроме пропускной способности выводится счетчик allocatedMbPerGb - мегабайты, выделенные
+ * потоком на гигабайт переданных данных. Те же цифры дает профилировщик {@code -prof gc}
+ * (gc.alloc.rate.norm).
+ * Запуск: main-метод из IDE или {@code java -cp target/test-classes:<classpath> ...BufferPoolBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class BufferPoolBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Param({"65536", "16777216"})
+    private int bufferSize;
+
+    @Param({"33554432"})
+    private int transferSize;
+
+    private byte[] content;
+    private BufferPool bufferPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        content = new byte[transferSize];
+        new Random(42).nextBytes(content);
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64), DataSize.ofMegabytes(16)),
+                DataSize.ofMegabytes(128), false, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public long freshBuffer(AllocationCounters counters) throws IOException {
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long copied = copy(new ByteArrayInputStream(content), OutputStream.nullOutputStream(), new byte[bufferSize]);
+        counters.record(THREADS.getCurrentThreadAllocatedBytes() - allocated, copied);
+        return copied;
+    }
+
+    @Benchmark
+    public long pooledBuffer(AllocationCounters counters) throws IOException {
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long copied;
+        try (BufferPool.Buffer buffer = bufferPool.acquire(bufferSize)) {
+            copied = copy(new ByteArrayInputStream(content), OutputStream.nullOutputStream(), buffer.array());
+        }
+        counters.record(THREADS.getCurrentThreadAllocatedBytes() - allocated, copied);
+        return copied;
+    }
+
+    private long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        long copied = 0;
+        int read;
+        while ((read = in.read(buffer, 0, bufferSize)) != -1) {
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class AllocationCounters {
+
+        private long allocatedBytes;
+        private long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            allocatedBytes = 0;
+            bytes = 0;
+        }
+
+        void record(long allocated, long transferred) {
+            allocatedBytes += allocated;
+            bytes += transferred;
+        }
+
+        public double allocatedMbPerGb() {
+            return bytes == 0 ? 0 : (allocatedBytes / 1_048_576.0) / (bytes / 1_000_000_000.0);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BufferPoolBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,157 @@
+package com.diplom.CloudStorageService.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение способов отдачи файла из дискового кэша в сокет:
+ * <ul>
+ *     <li>bufferedCopy - InputStream и буфер byte[] 64 КБ (отдача без sendfile);</li>
+ *     <li>transferToStream - FileChannel.transferTo в OutputStream через Channels.newChannel;</li>
+ *     <li>transferToSocket - FileChannel.transferTo прямо в сокет, как делает sendfile Tomcat.</li>
+ * </ul>
+ * Кроме пропускной способности выводится счетчик cpuMsPerGb - процессорное время
+ * отправляющего потока (user + system) на гигабайт переданных данных.
+ * Запуск: main-метод из IDE или {@code java -cp target/test-classes:<classpath> ...DownloadCopyBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class DownloadCopyBenchmark {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"1048576", "67108864"})
+    private int fileSize;
+
+    private Path file;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private Thread drain;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        file = Files.createTempFile("download-benchmark", ".bin");
+        Files.write(file, content);
+
+        // Принимающая сторона вычитывает и отбрасывает данные, как быстрый клиент
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        drain = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            try (accepted) {
+                while (accepted.read(buffer) != -1) {
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+                // соединение закрыто по окончании замера
+            }
+        }, "benchmark-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        client.close();
+        server.close();
+        drain.join(1000);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void bufferedCopy(CpuCounters counters) throws IOException {
+        long cpu = THREADS.getCurrentThreadCpuTime();
+        OutputStream out = Channels.newOutputStream(client);
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        counters.record(THREADS.getCurrentThreadCpuTime() - cpu, fileSize);
+    }
+
+    @Benchmark
+    public void transferToStream(CpuCounters counters) throws IOException {
+        long cpu = THREADS.getCurrentThreadCpuTime();
+        transfer(Channels.newChannel(Channels.newOutputStream(client)));
+        counters.record(THREADS.getCurrentThreadCpuTime() - cpu, fileSize);
+    }
+
+    @Benchmark
+    public void transferToSocket(CpuCounters counters) throws IOException {
+        long cpu = THREADS.getCurrentThreadCpuTime();
+        transfer(client);
+        counters.record(THREADS.getCurrentThreadCpuTime() - cpu, fileSize);
+    }
+
+    private void transfer(WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < fileSize) {
+                position += channel.transferTo(position, fileSize - position, target);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+
+        private long cpuNanos;
+        private long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanos = 0;
+            bytes = 0;
+        }
+
+        void record(long nanos, long transferred) {
+            cpuNanos += nanos;
+            bytes += transferred;
+        }
+
+        public double cpuMsPerGb() {
+            return bytes == 0 ? 0 : (cpuNanos / 1_000_000.0) / (bytes / 1_000_000_000.0);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DownloadCopyBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
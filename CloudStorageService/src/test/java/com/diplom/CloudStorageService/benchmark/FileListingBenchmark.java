@@ -0,0 +1,90 @@
+package com.diplom.CloudStorageService.benchmark;
+
+import com.diplom.model.File;
+import com.diplom.model.Role;
+import com.diplom.model.User;
+import com.diplom.model.dto.FileDTO;
+import com.diplom.model.dto.FileListEntry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка ответа GET /list из строк результата запроса, без БД:
+ * <ul>
+ *     <li>entities - как было: сущность File и ее владелец User на каждую строку (EAGER-связь),
+ *     затем FileDTO с новым DateTimeFormatter на каждый элемент;</li>
+ *     <li>projection - строка FileListEntry из конструктора в запросе и FileDTO с общим форматтером.</li>
+ * </ul>
+ * Стоимость самого запроса (join с "user") сюда не входит, ее показывает EXPLAIN в FileRepositoryIntegrationTest.
+ * Выделение памяти на один список показывает профилировщик gc, включенный в main (gc.alloc.rate.norm, байт на операцию).
+ * Запуск: main-метод из IDE или {@code java -cp target/test-classes:<classpath> ...FileListingBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class FileListingBenchmark {
+
+    @Param({"10000"})
+    private int rows;
+
+    // Значения столбцов, как их отдает драйвер: id, имя, размер, дата, путь, данные владельца
+    private Object[][] resultSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LocalDateTime now = LocalDateTime.now();
+        resultSet = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            resultSet[i] = new Object[]{(long) i, "file-" + i + ".txt", 1024L * i, now.minusSeconds(i),
+                    "bucket/file-" + i, 1L, "user", "$2a$10$hash", "user@example.com"};
+        }
+    }
+
+    @Benchmark
+    public List<FileDTO> entities() {
+        List<File> files = new ArrayList<>(rows);
+        for (Object[] row : resultSet) {
+            User owner = User.builder().id((Long) row[5]).username((String) row[6]).password((String) row[7])
+                    .role(Role.ROLE_USER).email((String) row[8]).build();
+            files.add(File.builder().id((Long) row[0]).filename((String) row[1]).size((Long) row[2])
+                    .dateOfUpload((LocalDateTime) row[3]).filePath((String) row[4]).owner(owner).build());
+        }
+        return files.stream()
+                .map(file -> {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+                    return new FileDTO(file.getFilename(), (int) file.getSize(), file.getDateOfUpload().format(formatter));
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public List<FileDTO> projection() {
+        List<FileListEntry> entries = new ArrayList<>(rows);
+        for (Object[] row : resultSet) {
+            entries.add(new FileListEntry((Long) row[0], (String) row[1], (Long) row[2], (LocalDateTime) row[3]));
+        }
+        return entries.stream()
+                .map(FileDTO::of)
+                .toList();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FileListingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
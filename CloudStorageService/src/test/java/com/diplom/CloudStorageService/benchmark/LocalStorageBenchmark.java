@@ -0,0 +1,101 @@
+package com.diplom.CloudStorageService.benchmark;
+
+import com.diplom.service.BufferPool;
+import com.diplom.service.LocalStorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальное хранилище без контейнера MinIO:
+ * <ul>
+ *     <li>mappedRead - чтение объекта через отображение файла в память (объекты до mmap-threshold);</li>
+ *     <li>channelRead - чтение того же объекта потоком из FileChannel;</li>
+ *     <li>write - запись во временный файл и атомарное переименование (без fsync).</li>
+ * </ul>
+ * Запуск: main-метод из IDE или {@code java -cp target/test-classes:<classpath> ...LocalStorageBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalStorageBenchmark {
+
+    private static final String KEY = "blobs/ab/object";
+
+    @Param({"16384", "1048576"})
+    private int objectSize;
+
+    private Path directory;
+    private byte[] content;
+    private byte[] readBuffer;
+    private LocalStorageBackend mapped;
+    private LocalStorageBackend streamed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("local-storage-benchmark");
+        content = new byte[objectSize];
+        new Random(42).nextBytes(content);
+        readBuffer = new byte[64 * 1024];
+        BufferPool bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64), DataSize.ofMegabytes(1)),
+                DataSize.ofMegabytes(16), false, new SimpleMeterRegistry());
+        mapped = new LocalStorageBackend(directory, DataSize.ofMegabytes(1), false, bufferPool);
+        streamed = new LocalStorageBackend(directory, DataSize.ofBytes(0), false, bufferPool);
+        mapped.uploadStream(KEY, new ByteArrayInputStream(content), objectSize, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long mappedRead() throws IOException {
+        return drain(mapped.getFileStream(KEY));
+    }
+
+    @Benchmark
+    public long channelRead() throws IOException {
+        return drain(streamed.getFileStream(KEY));
+    }
+
+    @Benchmark
+    public void write() {
+        streamed.uploadStream("uploads/object", new ByteArrayInputStream(content), objectSize, null);
+    }
+
+    private long drain(InputStream inputStream) throws IOException {
+        long total = 0;
+        try (inputStream) {
+            int read;
+            while ((read = inputStream.read(readBuffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LocalStorageBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.diplom.CloudStorageService.benchmark;
+
+import com.diplom.service.BufferPool;
+import com.diplom.service.MinioMultipartClient;
+import com.diplom.service.ParallelMultipartUploader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioAsyncClient;
+import io.minio.messages.Part;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Пропускная способность загрузки одного файла при 1, 4 и 8 частях в полете.
+ * <p>
+ * По умолчанию MinIO заменен моделью: каждая часть идет отдельным соединением
+ * с задержкой на запрос (rttMs) и ограниченной скоростью одного соединения
+ * (connectionMbPerSecond), как у одиночного TCP-потока на канале с большой задержкой.
+ * Результат - время загрузки файла (по умолчанию 256 МБ) в миллисекундах.
+ * <p>
+ * Для замера на настоящем MinIO задайте -Dbenchmark.minio.endpoint, -Dbenchmark.minio.access-key,
+ * -Dbenchmark.minio.secret-key и -Dbenchmark.minio.bucket (бакет должен существовать).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadParallelismBenchmark {
+
+    private static final String ENDPOINT = System.getProperty("benchmark.minio.endpoint");
+
+    @Param({"1", "4", "8"})
+    private int parallelism;
+
+    @Param({"268435456"})
+    private int fileSize;
+
+    @Param({"16777216"})
+    private int partSize;
+
+    @Param({"20"})
+    private int rttMs;
+
+    @Param({"100"})
+    private int connectionMbPerSecond;
+
+    private byte[] content;
+    private String bucket;
+    private ParallelMultipartUploader uploader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        MinioMultipartClient client;
+        if (ENDPOINT != null) {
+            bucket = System.getProperty("benchmark.minio.bucket", "storagebucket");
+            client = new MinioMultipartClient(MinioAsyncClient.builder()
+                    .endpoint(ENDPOINT)
+                    .credentials(System.getProperty("benchmark.minio.access-key"), System.getProperty("benchmark.minio.secret-key"))
+                    .build());
+        } else {
+            bucket = "benchmark";
+            client = new SimulatedMinio(rttMs, connectionMbPerSecond);
+        }
+        BufferPool bufferPool = new BufferPool(List.of(DataSize.ofBytes(partSize)), DataSize.ofBytes((long) partSize * parallelism),
+                false, new SimpleMeterRegistry());
+        uploader = new ParallelMultipartUploader(client, bufferPool, DataSize.ofBytes(partSize), parallelism, parallelism,
+                DataSize.ofBytes((long) partSize * parallelism));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        uploader.shutdown();
+    }
+
+    @Benchmark
+    public long upload() {
+        return uploader.upload(bucket, "benchmark-" + UUID.randomUUID(), new ByteArrayInputStream(content),
+                content.length, "application/octet-stream");
+    }
+
+    // Модель сервера: время части = RTT + размер / скорость одного соединения
+    private static final class SimulatedMinio extends MinioMultipartClient {
+
+        private final long rttNanos;
+        private final double bytesPerNano;
+
+        private SimulatedMinio(int rttMs, int connectionMbPerSecond) {
+            super(MinioAsyncClient.builder().endpoint("http://localhost:9000").credentials("benchmark", "benchmark").build());
+            this.rttNanos = TimeUnit.MILLISECONDS.toNanos(rttMs);
+            this.bytesPerNano = connectionMbPerSecond * 1_048_576.0 / 1_000_000_000.0;
+        }
+
+        @Override
+        public String createMultipartUpload(String bucket, String object, String contentType) {
+            LockSupport.parkNanos(rttNanos);
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public String uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data, int length) {
+            LockSupport.parkNanos(rttNanos + (long) (length / bytesPerNano));
+            return "etag-" + partNumber;
+        }
+
+        @Override
+        public void completeMultipartUpload(String bucket, String object, String uploadId, Part[] parts) {
+            LockSupport.parkNanos(rttNanos);
+        }
+
+        @Override
+        public void abortMultipartUpload(String bucket, String object, String uploadId) {
+            LockSupport.parkNanos(rttNanos);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UploadParallelismBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
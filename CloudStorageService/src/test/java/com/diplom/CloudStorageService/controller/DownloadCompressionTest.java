@@ -0,0 +1,157 @@
+package com.diplom.CloudStorageService.controller;
+
+import com.diplom.controller.DownloadCompression;
+import com.diplom.controller.DownloadResponseFactory;
+import com.diplom.model.dto.FileDownload;
+import com.diplom.service.BufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadCompressionTest {
+
+    private final byte[] csv = "id;name;amount\n1;Иванов;100\n2;Петров;200\n".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    private SimpleMeterRegistry meterRegistry;
+    private BufferPool bufferPool;
+    private DownloadResponseFactory downloadResponseFactory;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64)), DataSize.ofMegabytes(1), true, meterRegistry);
+        DownloadCompression compression = new DownloadCompression(true, DataSize.ofKilobytes(1),
+                DataSize.ofMegabytes(512), 6, List.of("text/*", "application/json"), bufferPool, meterRegistry);
+        downloadResponseFactory = new DownloadResponseFactory(compression, bufferPool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should gzip compressible file when client accepts gzip")
+    void shouldCompressTextFile() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = build(download("report.csv", "text/csv", csv), "gzip, deflate, br");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+        assertEquals("\"etag-1-gzip\"", response.getHeaders().getETag());
+        assertEquals(-1, response.getHeaders().getContentLength());
+
+        byte[] compressed = body(response);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(csv, gzip.readAllBytes());
+        }
+
+        assertEquals(csv.length, meterRegistry.get("download.compression.bytes.original").counter().count());
+        assertEquals(compressed.length, meterRegistry.get("download.compression.bytes.sent").counter().count());
+        assertEquals(1, meterRegistry.get("download.compression.cpu").timer().count());
+    }
+
+    @Test
+    @DisplayName("Should send identity when gzip is refused, ranged or type is already compressed")
+    void shouldNotCompressWhenNotApplicable() throws IOException {
+        ResponseEntity<StreamingResponseBody> refused = build(download("report.csv", "text/csv", csv), "gzip;q=0, *");
+        assertNull(refused.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), refused.getHeaders().getVary());
+        assertArrayEquals(csv, body(refused));
+
+        HttpHeaders ranged = new HttpHeaders();
+        ranged.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ranged.set(HttpHeaders.RANGE, "bytes=0-9");
+        ResponseEntity<StreamingResponseBody> range = downloadResponseFactory.build(
+                download("report.csv", "text/csv", csv), ranged, new MockHttpServletRequest());
+        assertEquals(HttpStatus.PARTIAL_CONTENT, range.getStatusCode());
+        assertNull(range.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        byte[] photo = new byte[10_000];
+        new Random(1).nextBytes(photo);
+        ResponseEntity<StreamingResponseBody> image = build(download("photo.jpg", "image/jpeg", photo), "gzip");
+        assertNull(image.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(image.getHeaders().getVary().isEmpty());
+        assertArrayEquals(photo, body(image));
+    }
+
+    @Test
+    @DisplayName("Should detect compressible type by extension for octet-stream uploads")
+    void shouldDetectTypeByExtension() {
+        ResponseEntity<StreamingResponseBody> response = build(
+                download("data.json", "application/octet-stream", csv), "gzip");
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    @DisplayName("Should answer 304 for gzip representation by its own ETag")
+    void shouldMatchGzipEtag() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        requestHeaders.setIfNoneMatch("\"etag-1-gzip\"");
+
+        ResponseEntity<StreamingResponseBody> response = downloadResponseFactory.build(
+                download("report.csv", "text/csv", csv), requestHeaders, new MockHttpServletRequest());
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"etag-1-gzip\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    @DisplayName("Should accept encoding only when Accept-Encoding allows it explicitly or by wildcard")
+    void shouldCheckAcceptedEncoding() {
+        HttpHeaders none = new HttpHeaders();
+        assertFalse(DownloadCompression.accepts(none, "deflate"));
+        assertTrue(DownloadCompression.accepts(headers("gzip, deflate, br"), "deflate"));
+        assertFalse(DownloadCompression.accepts(headers("gzip"), "deflate"));
+        assertFalse(DownloadCompression.accepts(headers("deflate;q=0, *"), "deflate"));
+        assertTrue(DownloadCompression.accepts(headers("*"), "deflate"));
+    }
+
+    private static HttpHeaders headers(String acceptEncoding) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return requestHeaders;
+    }
+
+    private ResponseEntity<StreamingResponseBody> build(FileDownload download, String acceptEncoding) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return downloadResponseFactory.build(download, requestHeaders, new MockHttpServletRequest());
+    }
+
+    private static FileDownload download(String filename, String contentType, byte[] content) {
+        return FileDownload.builder()
+                .filename(filename)
+                .contentType(contentType)
+                .size(content.length)
+                .etag("\"etag-1\"")
+                .content((offset, length) -> new ByteArrayInputStream(content, (int) offset, (int) length))
+                .build();
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
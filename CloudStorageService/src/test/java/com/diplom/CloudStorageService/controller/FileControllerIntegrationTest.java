@@ -14,15 +14,18 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
@@ -106,7 +109,7 @@ public class FileControllerIntegrationTest {
         assertEquals(HttpStatus.OK, uploadResponse.getStatusCode(), "File upload failed");
 
         // Теперь проверяем, что файлы успешно перечисляются
-        ResponseEntity<List<FileDTO>> response = fileController.listFiles("mocked-auth-token", 10);
+        ResponseEntity<List<FileDTO>> response = fileController.listFiles("mocked-auth-token", 10, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(1, response.getBody().size());
     }
@@ -126,13 +129,15 @@ public class FileControllerIntegrationTest {
         assertEquals(HttpStatus.OK, uploadResponse.getStatusCode(), "File upload failed");
 
         // Теперь проверяем, что файл успешно скачивается
-        ResponseEntity<byte[]> response = fileController.downloadFile("mocked-auth-token", "testfile.txt");
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadFile("mocked-auth-token", "testfile.txt", new HttpHeaders(), new MockHttpServletRequest());
 
         // Проверяем статус ответа
         assertEquals(HttpStatus.OK, response.getStatusCode());
 
         // Проверяем содержимое файла
-        assertEquals(fileContent, new String(response.getBody()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals(fileContent, out.toString());
 
         // Проверяем заголовок Content-Disposition
         assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).contains("testfile.txt"));
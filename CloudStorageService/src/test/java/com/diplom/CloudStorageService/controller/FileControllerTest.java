@@ -1,12 +1,24 @@
 package com.diplom.CloudStorageService.controller;
 
+import com.diplom.controller.DownloadCompression;
+import com.diplom.controller.DownloadResponseFactory;
 import com.diplom.controller.FileController;
 import com.diplom.exception.InvalidInputException;
 import com.diplom.model.File;
 import com.diplom.model.User;
 import com.diplom.model.dto.FileDTO;
+import com.diplom.model.dto.FileDownload;
+import com.diplom.model.dto.FileListEntry;
+import com.diplom.model.dto.FileListPage;
 import com.diplom.repository.UserRepository;
+import com.diplom.request.ArchiveRequest;
+import com.diplom.request.InstantUploadRequest;
+import com.diplom.service.ArchiveService;
+import com.diplom.service.BatchUploadService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.DeltaUploadService;
 import com.diplom.service.FileService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,23 +26,34 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -44,6 +67,23 @@ public class FileControllerTest {
     @Mock
     private UserRepository userRepository;
 
+    private final BufferPool bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64)), DataSize.ofMegabytes(1), false,
+            new SimpleMeterRegistry());
+
+    @Spy
+    private DownloadResponseFactory downloadResponseFactory = new DownloadResponseFactory(new DownloadCompression(
+            true, DataSize.ofKilobytes(1), DataSize.ofMegabytes(512), 6, List.of("text/*"), bufferPool,
+            new SimpleMeterRegistry()), bufferPool);
+
+    @Mock
+    private ArchiveService archiveService;
+
+    @Mock
+    private DeltaUploadService deltaUploadService;
+
+    @Mock
+    private BatchUploadService batchUploadService;
+
     @InjectMocks
     private FileController fileController;
 
@@ -96,42 +136,54 @@ public class FileControllerTest {
         int limit = 10;
 
         // Создаем список с замоканными файлами
-        List<File> mockedFiles = Arrays.asList(
-                new File("file1.txt", 1024, LocalDateTime.parse("2023-10-01T12:00:00")),
-                new File("file2.txt", 2048, LocalDateTime.parse("2023-10-01T12:00:00"))
+        List<FileListEntry> mockedFiles = Arrays.asList(
+                new FileListEntry(1L, "file1.txt", 1024, LocalDateTime.parse("2023-10-01T12:00:00")),
+                new FileListEntry(2L, "file2.txt", 2048, LocalDateTime.parse("2023-10-01T12:00:00"))
         );
 
         // Настраиваем мок для fileService
-        when(fileService.listFiles(any(User.class), eq(limit))).thenReturn(mockedFiles);
+        when(fileService.listFiles(any(User.class), eq(limit), isNull())).thenReturn(new FileListPage(mockedFiles, "next"));
 
         // Вызываем метод контроллера
-        ResponseEntity<List<FileDTO>> response = fileController.listFiles(authToken, limit);
+        ResponseEntity<List<FileDTO>> response = fileController.listFiles(authToken, limit, null);
 
         // Проверяем результаты
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("next", response.getHeaders().getFirst("X-Next-Cursor"));
         assertNotNull(response.getBody());
         assertEquals(2, response.getBody().size());
         assertEquals("file1.txt", response.getBody().get(0).getFilename());
         assertEquals("file2.txt", response.getBody().get(1).getFilename());
+        assertEquals("2023-10-01 12:00:00", response.getBody().get(0).getEditedAt());
 
         // Проверяем, что метод listFiles был вызван один раз
-        Mockito.verify(fileService, Mockito.times(1)).listFiles(any(User.class), eq(limit));
+        Mockito.verify(fileService, Mockito.times(1)).listFiles(any(User.class), eq(limit), isNull());
     }
 
 
     @Test
     @DisplayName("Should download file successfully with valid parameters")
-    void shouldDownloadFileSuccessfully() {
+    void shouldDownloadFileSuccessfully() throws IOException {
         String filename = "file1.txt";
         byte[] fileContent = "File content".getBytes();
 
-        when(fileService.downloadFile(user, filename)).thenReturn(fileContent);
+        FileDownload download = FileDownload.builder()
+                .filename(filename)
+                .size(fileContent.length)
+                .content((offset, length) -> new ByteArrayInputStream(fileContent))
+                .build();
+        when(fileService.downloadFile(user, filename)).thenReturn(download);
 
-        ResponseEntity<byte[]> response = fileController.downloadFile(authToken, filename);
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadFile(authToken, filename, new HttpHeaders(), new MockHttpServletRequest());
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
-        assertArrayEquals(fileContent, response.getBody());
+        assertEquals(fileContent.length, response.getHeaders().getContentLength());
+
+        // Тело ответа пишется потоком
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(fileContent, out.toByteArray());
 
         // Получаем фактический заголовок Content-Disposition
         String contentDisposition = response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION);
@@ -142,6 +194,77 @@ public class FileControllerTest {
         Mockito.verify(fileService, Mockito.times(1)).downloadFile(user, filename);
     }
 
+    @Test
+    @DisplayName("Should answer 304 to matching If-None-Match without opening object content")
+    void shouldReturnNotModifiedForMatchingEtag() {
+        String filename = "file1.txt";
+        when(fileService.downloadFile(user, filename)).thenReturn(cachedDownload(filename));
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"etag-1\"");
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadFile(authToken, filename, requestHeaders, new MockHttpServletRequest());
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"etag-1\"", response.getHeaders().getETag());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    @DisplayName("Should answer 304 to If-Modified-Since not older than upload date")
+    void shouldReturnNotModifiedForIfModifiedSince() {
+        String filename = "file1.txt";
+        when(fileService.downloadFile(user, filename)).thenReturn(cachedDownload(filename));
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfModifiedSince(Instant.parse("2023-10-01T12:00:00Z"));
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadFile(authToken, filename, requestHeaders, new MockHttpServletRequest());
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+
+        // Файл изменился после даты клиента — отдаем содержимое
+        requestHeaders.setIfModifiedSince(Instant.parse("2023-09-30T12:00:00Z"));
+        response = fileController.downloadFile(authToken, filename, requestHeaders, new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Instant.parse("2023-10-01T12:00:00Z").toEpochMilli(), response.getHeaders().getLastModified());
+    }
+
+    @Test
+    @DisplayName("Should redirect to presigned URL when redirect download mode is enabled")
+    void shouldRedirectToPresignedUrl() {
+        String filename = "file1.txt";
+        URI presigned = URI.create("http://localhost:9000/storagebucket/file1.txt?X-Amz-Signature=abc");
+        when(fileService.isPresignedRedirect()).thenReturn(true);
+        when(fileService.presignedDownloadUrl(eq(user), eq(filename), any())).thenReturn(Optional.of(presigned));
+
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadFile(authToken, filename, new HttpHeaders(), new MockHttpServletRequest());
+
+        assertEquals(HttpStatus.FOUND, response.getStatusCode());
+        assertEquals(presigned, response.getHeaders().getLocation());
+        Mockito.verify(fileService, Mockito.never()).downloadFile(any(User.class), any());
+    }
+
+    @Test
+    @DisplayName("Should proxy deflated file instead of redirecting when client does not accept deflate")
+    void shouldProxyWhenClientRefusesStoredEncoding() {
+        String filename = "file1.txt";
+        when(fileService.isPresignedRedirect()).thenReturn(true);
+        // Ссылка выдается, только если клиент принимает кодировку объекта
+        when(fileService.presignedDownloadUrl(eq(user), eq(filename), any())).thenAnswer(invocation ->
+                invocation.<Predicate<String>>getArgument(2).test("deflate")
+                        ? Optional.of(URI.create("http://localhost:9000/storagebucket/blob")) : Optional.empty());
+        when(fileService.downloadFile(user, filename)).thenReturn(cachedDownload(filename));
+
+        ResponseEntity<StreamingResponseBody> proxied = fileController.downloadFile(authToken, filename,
+                new HttpHeaders(), new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, proxied.getStatusCode());
+
+        HttpHeaders acceptsDeflate = new HttpHeaders();
+        acceptsDeflate.set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        ResponseEntity<StreamingResponseBody> redirected = fileController.downloadFile(authToken, filename,
+                acceptsDeflate, new MockHttpServletRequest());
+        assertEquals(HttpStatus.FOUND, redirected.getStatusCode());
+        Mockito.verify(fileService, Mockito.times(1)).downloadFile(user, filename);
+    }
+
     @Test
     @DisplayName("Should throw InvalidInputException when filename is empty during download")
     void shouldThrowInvalidInputExceptionWhenFilenameIsEmptyDuringDownload() {
@@ -150,7 +273,7 @@ public class FileControllerTest {
         when(fileService.downloadFile(user, filename)).thenThrow(new InvalidInputException("Filename cannot be empty."));
         // Проверка, что при вызове downloadFile выбрасывается ожидаемое исключение
         InvalidInputException exception = assertThrows(InvalidInputException.class, () -> {
-            fileController.downloadFile(authToken, filename);
+            fileController.downloadFile(authToken, filename, new HttpHeaders(), new MockHttpServletRequest());
         });
 
         assertEquals("Filename cannot be empty.", exception.getMessage());
@@ -176,4 +299,70 @@ public class FileControllerTest {
         assertEquals("Filename cannot be empty.", exception.getMessage());
     }
 
+    @Test
+    @DisplayName("Should pass raw request body to streaming upload")
+    void shouldUploadFileStream() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent("Some content".getBytes());
+        request.setContentType("text/plain");
+
+        ResponseEntity<Void> response = fileController.uploadFileStream(authToken, "big.txt", request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Mockito.verify(fileService).uploadFileStream(eq(user), eq("big.txt"), any(), eq(12L), eq("text/plain"));
+    }
+
+    @Test
+    @DisplayName("Should create file by hash or ask for full upload")
+    void shouldInstantUpload() {
+        InstantUploadRequest instantUploadRequest = new InstantUploadRequest();
+        instantUploadRequest.setSha256("a".repeat(64));
+        instantUploadRequest.setSize(12);
+        when(fileService.instantUpload(user, "copy.txt", "a".repeat(64), 12))
+                .thenReturn(Optional.of(new File("copy.txt", 12, LocalDateTime.of(2023, 10, 1, 12, 0))));
+        when(fileService.instantUpload(user, "new.txt", "a".repeat(64), 12)).thenReturn(Optional.empty());
+
+        ResponseEntity<?> linked = fileController.instantUpload(authToken, "copy.txt", instantUploadRequest);
+        ResponseEntity<?> missing = fileController.instantUpload(authToken, "new.txt", instantUploadRequest);
+
+        assertEquals(HttpStatus.OK, linked.getStatusCode());
+        assertEquals(new FileDTO("copy.txt", 12, "2023-10-01 12:00:00"), linked.getBody());
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should stream ZIP archive of requested files")
+    void shouldDownloadArchive() throws IOException {
+        List<String> filenames = List.of("a.txt", "b.txt");
+        List<File> files = List.of(new File("a.txt", 1, LocalDateTime.now()), new File("b.txt", 1, LocalDateTime.now()));
+        when(archiveService.prepareArchive(user, filenames)).thenReturn(files);
+
+        ArchiveRequest archiveRequest = new ArchiveRequest();
+        archiveRequest.setFilenames(filenames);
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadArchive(authToken, archiveRequest);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("application/zip", response.getHeaders().getContentType().toString());
+        assertEquals(-1, response.getHeaders().getContentLength());
+
+        // Архив пишется только при отдаче тела ответа
+        Mockito.verify(archiveService, Mockito.never()).writeArchive(any(), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        Mockito.verify(archiveService).writeArchive(files, out);
+    }
+
+    // Скачивание, содержимое которого не должно читаться
+    private FileDownload cachedDownload(String filename) {
+        return FileDownload.builder()
+                .filename(filename)
+                .size(12)
+                .etag("\"etag-1\"")
+                .lastModified(Instant.parse("2023-10-01T12:00:00Z"))
+                .content((offset, length) -> {
+                    throw new AssertionError("Содержимое файла не должно запрашиваться");
+                })
+                .build();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,284 @@
+package com.diplom.CloudStorageService.controller;
+
+import com.diplom.controller.DownloadCompression;
+import com.diplom.controller.DownloadResponseFactory;
+import com.diplom.controller.FileController;
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.repository.FileRepository;
+import com.diplom.repository.UserRepository;
+import com.diplom.service.ArchiveService;
+import com.diplom.service.BatchUploadService;
+import com.diplom.service.BlobService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.DeltaUploadService;
+import com.diplom.service.DiskObjectCache;
+import com.diplom.service.FileService;
+import com.diplom.service.MinioMultipartClient;
+import com.diplom.service.MinioService;
+import com.diplom.service.ParallelMultipartUploader;
+import com.diplom.service.PresignedUrlCache;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageShard;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import okhttp3.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+/**
+ * Range-запросы через реальные FileController, FileService и MinioService.
+ * Вместо MinIO используется хранилище в памяти, которое отвечает на GetObject
+ * срезом по offset/length так же, как S3 отвечает на заголовок Range.
+ * Сервисы, не участвующие в скачивании, - моки Mockito.
+ */
+@ExtendWith(MockitoExtension.class)
+public class FileDownloadRangeTest {
+
+    private static final String FILENAME = "video.bin";
+
+    private final byte[] content = new byte[10_000];
+    private final AtomicInteger getObjectCalls = new AtomicInteger();
+    private FileController fileController;
+    private DiskObjectCache diskObjectCache;
+    private final BufferPool bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64)), DataSize.ofMegabytes(1), true,
+            new SimpleMeterRegistry());
+
+    @TempDir
+    Path cacheDirectory;
+
+    @Mock
+    private MinioClient minioClient;
+
+    @Mock
+    private MinioMultipartClient minioMultipartClient;
+
+    @Mock
+    private ParallelMultipartUploader parallelMultipartUploader;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private ArchiveService archiveService;
+
+    @Mock
+    private DeltaUploadService deltaUploadService;
+
+    @Mock
+    private BatchUploadService batchUploadService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + 7);
+        }
+
+        when(minioClient.statObject(any(StatObjectArgs.class))).thenAnswer(invocation -> new StatObjectResponse(
+                Headers.of("Content-Length", String.valueOf(content.length), "ETag", "\"etag-1\"",
+                        "Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT"),
+                "bucket", "us-east-1", FILENAME));
+        // Хранилище в памяти: не каждый тест доходит до чтения объекта
+        lenient().when(minioClient.getObject(any(GetObjectArgs.class))).thenAnswer(invocation -> {
+            GetObjectArgs args = invocation.getArgument(0);
+            getObjectCalls.incrementAndGet();
+            int offset = args.offset() == null ? 0 : args.offset().intValue();
+            int end = args.length() == null ? content.length : (int) Math.min(content.length, offset + args.length());
+            byte[] slice = Arrays.copyOfRange(content, offset, end);
+            return new GetObjectResponse(Headers.of(), "bucket", "us-east-1", FILENAME, new ByteArrayInputStream(slice));
+        });
+
+        MinioService minioService = new MinioService(minioMultipartClient, parallelMultipartUploader,
+                new ShardRing(List.of(new StorageShard("primary", minioClient, "bucket", 1)), 1));
+
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        File file = File.builder().filename(FILENAME).owner(user).size(content.length).build();
+
+        when(fileRepository.findByOwner_IdAndFilename(1L, FILENAME)).thenReturn(Optional.of(file));
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+
+        diskObjectCache = new DiskObjectCache(true, cacheDirectory, DataSize.ofMegabytes(1), DataSize.ofMegabytes(1),
+                new SimpleMeterRegistry());
+        FileService fileService = new FileService(fileRepository, "bucket", minioService, new PresignedUrlCache(100),
+                diskObjectCache, blobService);
+        fileController = new FileController(fileService, userRepository, new DownloadResponseFactory(new DownloadCompression(
+                true, DataSize.ofKilobytes(1), DataSize.ofMegabytes(512), 6, List.of("text/*"), bufferPool,
+                new SimpleMeterRegistry()), bufferPool), archiveService, deltaUploadService, batchUploadService);
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should return whole file with Accept-Ranges when no Range is requested")
+    void shouldReturnWholeFile() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download(null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(content.length, response.getHeaders().getContentLength());
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    @DisplayName("Should return exact slice for a single byte range")
+    void shouldReturnSingleRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=9000-9499");
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 9000-9499/10000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(500, response.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 9000, 9500), body(response));
+    }
+
+    @Test
+    @DisplayName("Should resume download from offset with open-ended and suffix ranges")
+    void shouldReturnOpenEndedAndSuffixRanges() throws IOException {
+        ResponseEntity<StreamingResponseBody> openEnded = download("bytes=9990-");
+        assertEquals("bytes 9990-9999/10000", openEnded.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 9990, 10_000), body(openEnded));
+
+        ResponseEntity<StreamingResponseBody> suffix = download("bytes=-3");
+        assertEquals("bytes 9997-9999/10000", suffix.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 9997, 10_000), body(suffix));
+    }
+
+    @Test
+    @DisplayName("Should return multipart/byteranges with exact slices for several ranges")
+    void shouldReturnMultipleRanges() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=0-9, 100-199");
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        String contentType = response.getHeaders().getContentType().toString();
+        assertTrue(contentType.startsWith("multipart/byteranges"));
+        String boundary = response.getHeaders().getContentType().getParameter("boundary");
+
+        byte[] body = body(response);
+        assertEquals(response.getHeaders().getContentLength(), body.length);
+
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("Content-Range: bytes 0-9/10000"));
+        assertTrue(text.contains("Content-Range: bytes 100-199/10000"));
+        assertTrue(text.endsWith("--" + boundary + "--\r\n"));
+
+        // Проверяем байты каждой части
+        int first = text.indexOf("\r\n\r\n") + 4;
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 10), Arrays.copyOfRange(body, first, first + 10));
+        int second = text.indexOf("\r\n\r\n", text.indexOf("bytes 100-199")) + 4;
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), Arrays.copyOfRange(body, second, second + 100));
+
+        // Каждый диапазон читается отдельным ranged-запросом
+        assertEquals(2, getObjectCalls.get());
+    }
+
+    @Test
+    @DisplayName("Should return 416 when range starts beyond end of file")
+    void shouldReturnNotSatisfiable() {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=10000-10010");
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertNull(response.getBody());
+        assertEquals(0, getObjectCalls.get());
+    }
+
+    @Test
+    @DisplayName("Should serve repeated downloads and ranges from disk cache")
+    void shouldServeRepeatedDownloadFromDiskCache() throws IOException {
+        assertArrayEquals(content, body(download(null)));
+        assertEquals(1, getObjectCalls.get());
+        assertEquals(content.length, diskObjectCache.usedBytes());
+
+        assertArrayEquals(content, body(download(null)));
+        assertArrayEquals(Arrays.copyOfRange(content, 9000, 9500), body(download("bytes=9000-9499")));
+
+        // Повторное скачивание и диапазон не обращаются к MinIO
+        assertEquals(1, getObjectCalls.get());
+        assertEquals(2, diskObjectCache.hitCount());
+        assertEquals(1, diskObjectCache.missCount());
+    }
+
+    @Test
+    @DisplayName("Should hand cached file region to container sendfile without writing body")
+    void shouldUseSendfileForCachedFile() throws IOException {
+        body(download(null));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        ResponseEntity<StreamingResponseBody> response = download("bytes=9000-9499", request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals(500, response.getHeaders().getContentLength());
+        assertNull(response.getBody());
+        assertEquals(9000L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(9500L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        Path cached = Path.of((String) request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertArrayEquals(content, Files.readAllBytes(cached));
+        assertEquals(1, getObjectCalls.get());
+    }
+
+    private ResponseEntity<StreamingResponseBody> download(String range) {
+        return download(range, new MockHttpServletRequest());
+    }
+
+    private ResponseEntity<StreamingResponseBody> download(String range, MockHttpServletRequest request) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        if (range != null) {
+            requestHeaders.set(HttpHeaders.RANGE, range);
+        }
+        return fileController.downloadFile("mocked-auth-token", FILENAME, requestHeaders, request);
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,101 @@
+package com.diplom.CloudStorageService.repository;
+
+import com.diplom.config.FileIdSequenceConfig;
+import com.diplom.model.File;
+import com.diplom.repository.FileRepository;
+import com.diplom.repository.UserRepository;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Запуск на схеме, созданной исходной версией (id файлов - identity-столбец с шагом 1):
+ * шаг files_id_seq выравнивается до старта Hibernate, и новые файлы получают id после существующих.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FileIdSequenceConfig.class)
+@Testcontainers
+public class FileIdSequenceUpgradeIntegrationTest {
+
+    static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("cloud_storage")
+            .withUsername("testuser")
+            .withPassword("testpassword");
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    static void setUpDB() throws SQLException {
+        postgresContainer.start();
+        try (Connection connection = DriverManager.getConnection(postgresContainer.getJdbcUrl(),
+                postgresContainer.getUsername(), postgresContainer.getPassword());
+             Statement statement = connection.createStatement()) {
+            // Схема, которую строил Hibernate по исходным сущностям, и уже загруженные файлы
+            statement.execute("""
+                    CREATE TABLE "user" (
+                        id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        username VARCHAR(255) NOT NULL UNIQUE,
+                        password VARCHAR(255) NOT NULL,
+                        role VARCHAR(255) NOT NULL,
+                        email VARCHAR(50) NOT NULL UNIQUE);
+                    CREATE TABLE files (
+                        id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        filename VARCHAR(255) NOT NULL,
+                        owner BIGINT REFERENCES "user" (id),
+                        filepath VARCHAR(255) NOT NULL,
+                        size BIGINT NOT NULL,
+                        date_of_upload TIMESTAMP(6) NOT NULL);
+                    INSERT INTO "user" (username, password, role, email)
+                    VALUES ('user', 'password', 'ROLE_USER', 'user@example.com');
+                    INSERT INTO files (filename, owner, filepath, size, date_of_upload)
+                    SELECT 'file-' || g || '.txt', 1, 'bucket/file-' || g || '.txt', g, CURRENT_TIMESTAMP
+                    FROM generate_series(1, 3) g;""");
+        }
+        System.setProperty("spring.datasource.url", postgresContainer.getJdbcUrl());
+        System.setProperty("spring.datasource.username", postgresContainer.getUsername());
+        System.setProperty("spring.datasource.password", postgresContainer.getPassword());
+    }
+
+    @AfterAll
+    static void tearDownDB() {
+        postgresContainer.stop();
+    }
+
+    @Test
+    @DisplayName("Should align files_id_seq of a baseline schema and issue ids after existing files")
+    void shouldStartOnBaselineSchema() {
+        Long increment = new JdbcTemplate(dataSource).queryForObject(
+                "SELECT increment_by FROM pg_sequences WHERE sequencename = ?", Long.class, File.ID_SEQUENCE);
+        assertEquals(File.ID_ALLOCATION_SIZE, increment);
+
+        File first = fileRepository.saveAndFlush(File.builder().filename("new-1.txt").filePath("bucket/new-1")
+                .size(1).owner(userRepository.getReferenceById(1L)).build());
+        File second = fileRepository.saveAndFlush(File.builder().filename("new-2.txt").filePath("bucket/new-2")
+                .size(2).owner(userRepository.getReferenceById(1L)).build());
+
+        assertTrue(first.getId() > 3);
+        assertEquals(first.getId() + 1, second.getId());
+        assertEquals(5, fileRepository.count());
+    }
+}
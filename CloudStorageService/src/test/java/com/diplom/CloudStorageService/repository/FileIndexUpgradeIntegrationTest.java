@@ -0,0 +1,131 @@
+package com.diplom.CloudStorageService.repository;
+
+import com.diplom.config.FileIdSequenceConfig;
+import com.diplom.config.FileIndexConfig;
+import com.diplom.model.File;
+import com.diplom.repository.FileRepository;
+import com.diplom.repository.UserRepository;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Запуск на схеме, где у владельца есть файлы с одинаковым именем: дубли сворачиваются
+ * к последней записи, их ссылки на blob снимаются, и создается уникальный индекс (owner, filename);
+ * создается и индекс постраничного списка файлов.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({FileIdSequenceConfig.class, FileIndexConfig.class})
+@Testcontainers
+public class FileIndexUpgradeIntegrationTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("cloud_storage")
+            .withUsername("testuser")
+            .withPassword("testpassword");
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    static void setUpDB() throws SQLException {
+        postgresContainer.start();
+        try (Connection connection = DriverManager.getConnection(postgresContainer.getJdbcUrl(),
+                postgresContainer.getUsername(), postgresContainer.getPassword());
+             Statement statement = connection.createStatement()) {
+            // Три записи 'a.txt' (гонка загрузок) и 'b.txt' ссылаются на один blob: у него 4 ссылки
+            statement.execute("""
+                    CREATE TABLE "user" (
+                        id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        username VARCHAR(255) NOT NULL UNIQUE,
+                        password VARCHAR(255) NOT NULL,
+                        role VARCHAR(255) NOT NULL,
+                        email VARCHAR(50) NOT NULL UNIQUE);
+                    CREATE TABLE blobs (
+                        hash VARCHAR(64) PRIMARY KEY,
+                        size BIGINT NOT NULL,
+                        codec VARCHAR(16) NOT NULL DEFAULT 'NONE',
+                        stored_size BIGINT,
+                        crc32c BIGINT,
+                        mime_type VARCHAR(255),
+                        shard VARCHAR(64),
+                        tier VARCHAR(8) NOT NULL DEFAULT 'HOT',
+                        last_accessed_at TIMESTAMP(6),
+                        cold_reads INTEGER NOT NULL DEFAULT 0,
+                        ref_count BIGINT NOT NULL,
+                        created_at TIMESTAMP(6) NOT NULL,
+                        updated_at TIMESTAMP(6) NOT NULL);
+                    CREATE TABLE files (
+                        id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        filename VARCHAR(255) NOT NULL,
+                        owner BIGINT REFERENCES "user" (id),
+                        filepath VARCHAR(255) NOT NULL,
+                        size BIGINT NOT NULL,
+                        blob_hash VARCHAR(64) REFERENCES blobs (hash),
+                        date_of_upload TIMESTAMP(6) NOT NULL);
+                    INSERT INTO "user" (username, password, role, email)
+                    VALUES ('user', 'password', 'ROLE_USER', 'user@example.com');
+                    INSERT INTO blobs (hash, size, ref_count, created_at, updated_at)
+                    VALUES ('%1$s', 1, 4, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP);
+                    INSERT INTO files (filename, owner, filepath, size, blob_hash, date_of_upload)
+                    VALUES ('a.txt', 1, 'bucket/a-1', 1, '%1$s', CURRENT_TIMESTAMP),
+                           ('a.txt', 1, 'bucket/a-2', 1, '%1$s', CURRENT_TIMESTAMP),
+                           ('b.txt', 1, 'bucket/b', 1, '%1$s', CURRENT_TIMESTAMP),
+                           ('a.txt', 1, 'bucket/a-3', 1, '%1$s', CURRENT_TIMESTAMP);""".formatted(HASH));
+        }
+        System.setProperty("spring.datasource.url", postgresContainer.getJdbcUrl());
+        System.setProperty("spring.datasource.username", postgresContainer.getUsername());
+        System.setProperty("spring.datasource.password", postgresContainer.getPassword());
+    }
+
+    @AfterAll
+    static void tearDownDB() {
+        postgresContainer.stop();
+    }
+
+    @Test
+    @DisplayName("Should drop duplicate file names, release their blob references and create file indexes")
+    void shouldDeduplicateAndCreateFileIndexes() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<String> remaining = jdbcTemplate.queryForList(
+                "SELECT filepath FROM files ORDER BY filename", String.class);
+        assertEquals(List.of("bucket/a-3", "bucket/b"), remaining);
+        assertEquals(2L, jdbcTemplate.queryForObject(
+                "SELECT ref_count FROM blobs WHERE hash = ?", Long.class, HASH));
+        assertEquals(Boolean.TRUE, jdbcTemplate.queryForObject(
+                "SELECT indisunique FROM pg_index WHERE indexrelid = 'idx_files_owner_filename'::regclass",
+                Boolean.class));
+        assertEquals("CREATE INDEX idx_files_owner_listing ON public.files USING btree (owner, date_of_upload DESC, id DESC)",
+                jdbcTemplate.queryForObject("SELECT indexdef FROM pg_indexes WHERE indexname = 'idx_files_owner_listing'",
+                        String.class));
+
+        File duplicate = File.builder().filename("a.txt").filePath("bucket/a-4").size(1)
+                .owner(userRepository.getReferenceById(1L)).build();
+        assertThrows(DataIntegrityViolationException.class, () -> fileRepository.saveAndFlush(duplicate));
+    }
+}
@@ -0,0 +1,124 @@
+package com.diplom.CloudStorageService.repository;
+
+import com.diplom.model.File;
+import com.diplom.model.dto.FileListEntry;
+import com.diplom.repository.FileRepository;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers
+public class FileRepositoryIntegrationTest {
+
+    private static final int USERS = 1_000;
+    private static final int FILES = 200_000;
+
+    static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("cloud_storage")
+            .withUsername("testuser")
+            .withPassword("testpassword");
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void setUpDB() {
+        postgresContainer.start();
+        System.setProperty("spring.datasource.url", postgresContainer.getJdbcUrl());
+        System.setProperty("spring.datasource.username", postgresContainer.getUsername());
+        System.setProperty("spring.datasource.password", postgresContainer.getPassword());
+    }
+
+    @AfterAll
+    static void tearDownDB() {
+        postgresContainer.stop();
+    }
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("""
+                INSERT INTO "user" (id, username, password, role, email)
+                SELECT g, 'user' || g, 'password', 'ROLE_USER', 'user' || g || '@example.com'
+                FROM generate_series(1, ?) g""", USERS);
+        // По 200 файлов на пользователя: имя уникально у владельца, но повторяется у разных
+        jdbcTemplate.update("""
+                INSERT INTO files (id, filename, owner, filepath, size, date_of_upload)
+                SELECT g, 'file-' || (g / ?) || '.txt', g % ? + 1, 'bucket/file-' || g, g, CURRENT_TIMESTAMP
+                FROM generate_series(0, ? - 1) g""", USERS, USERS, FILES);
+        jdbcTemplate.execute("ANALYZE files");
+    }
+
+    @Test
+    @DisplayName("Should find user's file by name with a single probe of the (owner, filename) index")
+    void shouldFindFileByOwnerIdUsingIndex() {
+        // Тот же запрос, что строит findByOwner_IdAndFilename, вместе с EAGER-связью blob
+        List<String> plan = jdbcTemplate.queryForList("""
+                EXPLAIN SELECT f.*, b.* FROM files f
+                LEFT JOIN blobs b ON b.hash = f.blob_hash
+                WHERE f.owner = 42 AND f.filename = 'file-7.txt'""", String.class);
+
+        String files = plan.stream().filter(line -> line.contains(" on files ")).findFirst().orElseThrow();
+        assertTrue(files.contains("Index Scan using idx_files_owner_filename"), String.join("\n", plan));
+        assertTrue(plan.stream().noneMatch(line -> line.contains("Seq Scan on files")), String.join("\n", plan));
+
+        Optional<File> file = fileRepository.findByOwner_IdAndFilename(42L, "file-7.txt");
+        assertTrue(file.isPresent());
+        assertEquals(42L, file.get().getOwner().getId());
+        assertTrue(fileRepository.findByOwner_IdAndFilename(42L, "file-1000.txt").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should page through user's files by keyset without sorting or counting")
+    void shouldPageByKeysetUsingIndex() {
+        List<String> plan = jdbcTemplate.queryForList("""
+                EXPLAIN SELECT f.id, f.filename, f.size, f.date_of_upload FROM files f
+                WHERE f.owner = 42 AND f.date_of_upload <= CURRENT_TIMESTAMP
+                  AND (f.date_of_upload < CURRENT_TIMESTAMP OR f.id < 100000)
+                ORDER BY f.date_of_upload DESC, f.id DESC LIMIT 51""", String.class);
+
+        assertTrue(plan.stream().anyMatch(line -> line.contains("Index Scan using idx_files_owner_listing")),
+                String.join("\n", plan));
+        assertTrue(plan.stream().noneMatch(line -> line.contains("Sort")), String.join("\n", plan));
+
+        Set<Long> seen = new HashSet<>();
+        Slice<FileListEntry> page = fileRepository.findFirstPage(42L, PageRequest.ofSize(50));
+        page.forEach(entry -> seen.add(entry.id()));
+        while (page.hasNext()) {
+            FileListEntry last = page.getContent().getLast();
+            page = fileRepository.findPageAfter(42L, last.dateOfUpload(), last.id(), PageRequest.ofSize(50));
+            page.forEach(entry -> assertTrue(seen.add(entry.id())));
+        }
+        assertEquals(FILES / USERS, seen.size());
+    }
+
+    @Test
+    @DisplayName("Should reject a second file with the same name for the same owner")
+    void shouldRejectDuplicateFilenameForOwner() {
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update("""
+                INSERT INTO files (id, filename, owner, filepath, size, date_of_upload)
+                VALUES (?, 'file-7.txt', 42, 'bucket/duplicate', 1, CURRENT_TIMESTAMP)""", FILES + 1));
+    }
+}
@@ -0,0 +1,170 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.repository.FileRepository;
+import com.diplom.service.ArchiveService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ArchiveServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private StorageBackend storageBackend;
+
+    private BufferPool bufferPool;
+    private ArchiveService archiveService;
+    private User user;
+
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final AtomicInteger maxOpenStreams = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64)), DataSize.ofMegabytes(1), true, new SimpleMeterRegistry());
+        archiveService = new ArchiveService(fileRepository, storageBackend, bufferPool, 2, 4, 100);
+
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveService.shutdown();
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should write requested files to ZIP in request order")
+    void shouldWriteArchiveInRequestOrder() throws IOException {
+        byte[] text = "строка текста\n".repeat(1000).getBytes();
+        byte[] photo = new byte[20_000];
+        new Random(1).nextBytes(photo);
+        when(storageBackend.getFileStream("notes.txt")).thenAnswer(invocation -> tracked(text));
+        when(storageBackend.getFileStream("photo.jpg")).thenAnswer(invocation -> tracked(photo));
+
+        List<File> files = List.of(file("photo.jpg"), file("notes.txt"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.writeArchive(files, out);
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                byte[] content = zip.readAllBytes();
+                assertArrayEquals(entry.getName().equals("photo.jpg") ? photo : text, content);
+            }
+        }
+        assertEquals(List.of("photo.jpg", "notes.txt"), names);
+
+        // Текст сжат, уже сжатый формат записан без сжатия
+        assertTrue(out.size() < photo.length + text.length / 2);
+        assertTrue(out.size() > photo.length);
+        assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    @DisplayName("Should number entries whose names collide after replacing separators")
+    void shouldDeduplicateEntryNames() throws IOException {
+        when(storageBackend.getFileStream(anyString())).thenAnswer(invocation ->
+                tracked(invocation.<String>getArgument(0).getBytes()));
+
+        List<File> files = List.of(file("a/b.txt"), file("a_b.txt"), file("a\\b.txt"), file("a_b (1).txt"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.writeArchive(files, out);
+
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                contents.add(new String(zip.readAllBytes()));
+            }
+        }
+        assertEquals(List.of("a_b.txt", "a_b (1).txt", "a_b (2).txt", "a_b (1) (1).txt"), names);
+        assertEquals(List.of("a/b.txt", "a_b.txt", "a\\b.txt", "a_b (1).txt"), contents);
+    }
+
+    @Test
+    @DisplayName("Should keep at most prefetch window of object streams open")
+    void shouldBoundPrefetch() throws IOException {
+        when(storageBackend.getFileStream(anyString())).thenAnswer(invocation -> tracked(new byte[1000]));
+
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(file("file" + i + ".bin"));
+        }
+        archiveService.writeArchive(files, new ByteArrayOutputStream());
+
+        verify(storageBackend, times(10)).getFileStream(anyString());
+        verify(storageBackend, never()).getFileStream(anyString(), anyLong(), anyLong());
+        assertTrue(maxOpenStreams.get() <= 2, "открыто потоков: " + maxOpenStreams.get());
+        assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    @DisplayName("Should reject archive when some files do not belong to user")
+    void shouldRejectMissingFiles() {
+        when(fileRepository.findByOwner_IdAndFilenameIn(eq(1L), anyCollection()))
+                .thenReturn(List.of(file("a.txt")));
+
+        FilesNotFoundException exception = assertThrows(FilesNotFoundException.class,
+                () -> archiveService.prepareArchive(user, List.of("a.txt", "b.txt")));
+
+        assertTrue(exception.getMessage().contains("b.txt"));
+        verify(storageBackend, never()).getFileStream(any());
+    }
+
+    private File file(String filename) {
+        return File.builder().filename(filename).owner(user).dateOfUpload(LocalDateTime.now()).build();
+    }
+
+    // Поток, который учитывает, сколько объектов открыто одновременно
+    private InputStream tracked(byte[] content) {
+        maxOpenStreams.accumulateAndGet(openStreams.incrementAndGet(), Math::max);
+        return new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public void close() throws IOException {
+                openStreams.decrementAndGet();
+                super.close();
+            }
+        };
+    }
+}
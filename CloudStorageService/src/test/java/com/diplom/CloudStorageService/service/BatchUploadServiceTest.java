@@ -0,0 +1,121 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.User;
+import com.diplom.model.dto.BatchUploadResultDTO;
+import com.diplom.service.BatchUploadService;
+import com.diplom.service.BlobService;
+import com.diplom.service.FileService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchUploadServiceTest {
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private FileService fileService;
+
+    private BatchUploadService batchUploadService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        batchUploadService = new BatchUploadService(blobService, fileService, 4, 10);
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchUploadService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should store all files in parallel and save records with one call")
+    void shouldUploadAllFiles() {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            files.add(new MockMultipartFile("files", "file" + i + ".txt", "text/plain", ("content " + i).getBytes()));
+        }
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        when(blobService.store(any(InputStream.class), anyLong(), eq("text/plain"))).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return Blob.builder().hash("a".repeat(64)).size(invocation.<Long>getArgument(1)).build();
+        });
+
+        List<BatchUploadResultDTO> results = batchUploadService.uploadFiles(user, files);
+
+        assertEquals(8, results.size());
+        assertTrue(results.stream().allMatch(BatchUploadResultDTO::isUploaded));
+        assertEquals("file3.txt", results.get(3).getFilename());
+        assertTrue(threads.stream().allMatch(thread -> thread.getName().startsWith("batch-upload-")));
+        verify(fileService, times(1)).commitUploadedFiles(eq(user), argThat((Map<String, Blob> blobs) -> blobs.size() == 8));
+    }
+
+    @Test
+    @DisplayName("Should report failed files and still save the others")
+    void shouldReturnPerFileErrors() {
+        MultipartFile good = new MockMultipartFile("files", "good.txt", "text/plain", "ok".getBytes());
+        MultipartFile empty = new MockMultipartFile("files", "empty.txt", "text/plain", new byte[0]);
+        MultipartFile duplicate = new MockMultipartFile("files", "good.txt", "text/plain", "again".getBytes());
+        MultipartFile broken = new MockMultipartFile("files", "broken.bin", "application/octet-stream", "x".getBytes());
+        when(blobService.store(any(InputStream.class), anyLong(), eq("text/plain")))
+                .thenReturn(Blob.builder().hash("b".repeat(64)).size(2).build());
+        when(blobService.store(any(InputStream.class), anyLong(), eq("application/octet-stream")))
+                .thenThrow(new GeneralServiceException("MinIO недоступен"));
+
+        List<BatchUploadResultDTO> results = batchUploadService.uploadFiles(user, List.of(good, empty, duplicate, broken));
+
+        assertTrue(results.get(0).isUploaded());
+        assertEquals("Файл пустой!", results.get(1).getError());
+        assertFalse(results.get(2).isUploaded());
+        assertEquals("Ошибка при загрузке файла: MinIO недоступен", results.get(3).getError());
+        verify(fileService).commitUploadedFiles(eq(user), argThat((Map<String, Blob> blobs) -> blobs.keySet().equals(Set.of("good.txt"))));
+    }
+
+    @Test
+    @DisplayName("Should release stored content when saving records fails")
+    void shouldReleaseBlobsWhenCommitFails() {
+        Blob blob = Blob.builder().hash("c".repeat(64)).size(2).build();
+        when(blobService.store(any(InputStream.class), anyLong(), any())).thenReturn(blob);
+        when(fileService.commitUploadedFiles(eq(user), anyMap())).thenThrow(new GeneralServiceException("БД недоступна"));
+
+        assertThrows(GeneralServiceException.class, () -> batchUploadService.uploadFiles(user,
+                List.of(new MockMultipartFile("files", "a.txt", "text/plain", "ok".getBytes()))));
+        verify(blobService).release(blob);
+    }
+
+    @Test
+    @DisplayName("Should reject request with too many files")
+    void shouldRejectTooManyFiles() {
+        List<MultipartFile> files = Collections.nCopies(11,
+                new MockMultipartFile("files", "a.txt", "text/plain", "ok".getBytes()));
+
+        assertThrows(InvalidInputException.class, () -> batchUploadService.uploadFiles(user, files));
+        verifyNoInteractions(blobService, fileService);
+    }
+}
@@ -0,0 +1,269 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.StorageCodec;
+import com.diplom.repository.BlobRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.StorageBackend;
+import com.diplom.service.StorageCompression;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BlobServiceTest {
+
+    private static final byte[] CONTENT = "одинаковое содержимое".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private StorageBackend storageBackend;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BlobService blobService;
+    private String hash;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        blobService = new BlobService(blobRepository, storageBackend, compression(false), transactionManager);
+        hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+
+        // MinIO читает поток до конца, как при настоящей загрузке
+        lenient().doAnswer(invocation -> invocation.<InputStream>getArgument(1).readAllBytes())
+                .when(storageBackend).uploadStream(anyString(), any(InputStream.class), anyLong(), any());
+        lenient().when(blobRepository.save(any(Blob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("Should hash content while uploading and move new content under its hash")
+    void shouldStoreNewContent() {
+        Blob inserted = Blob.builder().hash(hash).size(CONTENT.length).refCount(0).build();
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(inserted));
+        when(storageBackend.shardOf(inserted.getObjectKey())).thenReturn("second");
+
+        Blob blob = blobService.store(new ByteArrayInputStream(CONTENT), -1, "text/plain");
+
+        assertEquals(hash, blob.getHash());
+        assertEquals(1, blob.getRefCount());
+        assertEquals("second", blob.getShard());
+        verify(blobRepository).insertIfAbsent(hash, CONTENT.length);
+
+        ArgumentCaptor<String> temporaryKey = ArgumentCaptor.forClass(String.class);
+        verify(storageBackend).uploadStream(temporaryKey.capture(), any(InputStream.class), eq(-1L), eq("text/plain"));
+        assertTrue(temporaryKey.getValue().startsWith("uploads/"));
+        verify(storageBackend).copyObject(temporaryKey.getValue(), "blobs/" + hash.substring(0, 2) + "/" + hash);
+        verify(storageBackend).deleteFile(temporaryKey.getValue());
+    }
+
+    @Test
+    @DisplayName("Should not copy content that is already stored")
+    void shouldDeduplicateExistingContent() {
+        Blob existing = Blob.builder().hash(hash).size(CONTENT.length).refCount(3).build();
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(existing));
+
+        Blob blob = blobService.store(new ByteArrayInputStream(CONTENT), CONTENT.length, "text/plain");
+
+        assertSame(existing, blob);
+        assertEquals(4, blob.getRefCount());
+        verify(storageBackend, never()).copyObject(anyString(), anyString());
+        verify(storageBackend).deleteFile(startsWith("uploads/"));
+    }
+
+    @Test
+    @DisplayName("Should store compressible text deflated while hash and size describe original content")
+    void shouldCompressCompressibleContent() throws Exception {
+        blobService = new BlobService(blobRepository, storageBackend, compression(true), transactionManager);
+        byte[] csv = "2024-01-01,INFO,запрос обработан,200\n".repeat(5000).getBytes(StandardCharsets.UTF_8);
+        String csvHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(csv));
+        Blob inserted = Blob.builder().hash(csvHash).size(csv.length).refCount(0).build();
+        when(blobRepository.findForUpdate(csvHash)).thenReturn(Optional.of(inserted));
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            invocation.<InputStream>getArgument(1).transferTo(uploaded);
+            return null;
+        }).when(storageBackend).uploadStream(anyString(), any(InputStream.class), eq(-1L), eq("text/csv"));
+
+        Blob blob = blobService.store(new ByteArrayInputStream(csv), csv.length, "text/csv");
+
+        assertEquals(StorageCodec.DEFLATE, blob.getCodec());
+        assertEquals(csv.length, blob.getSize());
+        assertEquals(uploaded.size(), blob.getStoredSize());
+        assertTrue(uploaded.size() < csv.length / 10);
+        assertArrayEquals(csv, new InflaterInputStream(new ByteArrayInputStream(uploaded.toByteArray())).readAllBytes());
+        verify(blobRepository).insertIfAbsent(csvHash, csv.length);
+    }
+
+    @Test
+    @DisplayName("Should keep incompressible content as is even with text content type")
+    void shouldNotCompressIncompressibleContent() {
+        blobService = new BlobService(blobRepository, storageBackend, compression(true), transactionManager);
+        byte[] random = new byte[100_000];
+        new Random(1).nextBytes(random);
+        when(blobRepository.findForUpdate(anyString()))
+                .thenAnswer(invocation -> Optional.of(Blob.builder().hash(invocation.getArgument(0)).size(random.length).build()));
+
+        Blob blob = blobService.store(new ByteArrayInputStream(random), random.length, "text/plain");
+
+        assertEquals(StorageCodec.NONE, blob.getCodec());
+        assertNull(blob.getStoredSize());
+        verify(storageBackend).uploadStream(anyString(), any(InputStream.class), eq((long) random.length), eq("text/plain"));
+    }
+
+    @Test
+    @DisplayName("Should compute CRC32C and sniff content type in the same pass as SHA-256")
+    void shouldComputeChecksumsInSinglePass() {
+        Blob inserted = Blob.builder().hash(hash).size(CONTENT.length).refCount(0).build();
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(inserted));
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(CONTENT);
+
+        Blob blob = blobService.store(new ByteArrayInputStream(CONTENT), CONTENT.length, null);
+
+        assertEquals(crc32c.getValue(), blob.getCrc32c());
+        assertEquals("text/plain", blob.getMimeType());
+        // Поток читается один раз: в MinIO уходит тип, определенный по содержимому
+        verify(storageBackend).uploadStream(anyString(), any(InputStream.class), eq((long) CONTENT.length), eq("text/plain"));
+        verify(storageBackend, never()).getFileStream(anyString());
+    }
+
+    @Test
+    @DisplayName("Should replace generic declared type with type detected from file signature")
+    void shouldSniffBinaryContentType() throws Exception {
+        byte[] png = new byte[1000];
+        System.arraycopy(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}, 0, png, 0, 8);
+        String pngHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        when(blobRepository.findForUpdate(pngHash))
+                .thenReturn(Optional.of(Blob.builder().hash(pngHash).size(png.length).build()));
+
+        Blob blob = blobService.store(new ByteArrayInputStream(png), png.length, "application/octet-stream");
+
+        assertEquals("image/png", blob.getMimeType());
+        verify(storageBackend).uploadStream(anyString(), any(InputStream.class), eq(1000L), eq("image/png"));
+    }
+
+    @Test
+    @DisplayName("Should link known content by hash and size only")
+    void shouldLinkKnownContent() {
+        Blob existing = Blob.builder().hash(hash).size(CONTENT.length).refCount(1).build();
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(existing));
+
+        assertTrue(blobService.link(hash, CONTENT.length + 1).isEmpty());
+        assertEquals(Optional.of(existing), blobService.link(hash, CONTENT.length));
+        assertEquals(2, existing.getRefCount());
+
+        assertThrows(InvalidInputException.class, () -> blobService.link("not-a-hash", 1));
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    @DisplayName("Should delete object only when blob has no references")
+    void shouldCollectUnreferencedBlob() {
+        Blob referenced = Blob.builder().hash(hash).size(1).refCount(1).build();
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(referenced));
+
+        blobService.release(referenced);
+        assertEquals(0, referenced.getRefCount());
+
+        when(storageBackend.deleteFile(referenced.getObjectKey())).thenReturn(true);
+        assertTrue(blobService.collect(hash));
+        verify(blobRepository).delete(referenced);
+
+        referenced.setRefCount(1);
+        assertFalse(blobService.collect(hash));
+        verify(storageBackend, times(1)).deleteFile(referenced.getObjectKey());
+    }
+
+    @Test
+    @DisplayName("Should delete object of newly created blob when surrounding transaction rolls back")
+    void shouldDiscardNewBlobObjectOnRollback() {
+        Blob inserted = Blob.builder().hash(hash).size(CONTENT.length).refCount(0).build();
+        // После отката строки нет: при удалении она вставляется заново без ссылок
+        Blob reinserted = Blob.builder().hash(hash).size(CONTENT.length).refCount(0).build();
+        when(blobRepository.insertIfAbsent(hash, CONTENT.length)).thenReturn(1);
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(inserted), Optional.of(reinserted));
+        when(storageBackend.deleteFile(anyString())).thenReturn(true);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        List<TransactionSynchronization> synchronizations = storeInTransaction();
+        verify(storageBackend, never()).deleteFile(inserted.getObjectKey());
+
+        synchronizations.forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verify(storageBackend).deleteFile(inserted.getObjectKey());
+        verify(blobRepository).delete(reinserted);
+        verify(transactionManager).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    @Test
+    @DisplayName("Should keep blob object when surrounding transaction commits or blob already existed")
+    void shouldKeepBlobObjectWithoutRollback() {
+        Blob inserted = Blob.builder().hash(hash).size(CONTENT.length).refCount(0).build();
+        when(blobRepository.insertIfAbsent(hash, CONTENT.length)).thenReturn(1);
+        when(blobRepository.findForUpdate(hash)).thenReturn(Optional.of(inserted));
+
+        storeInTransaction().forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Строку вставила другая загрузка: ее объект не принадлежит этой транзакции
+        inserted.setRefCount(0);
+        when(blobRepository.insertIfAbsent(hash, CONTENT.length)).thenReturn(0);
+        assertTrue(storeInTransaction().isEmpty());
+
+        verify(storageBackend, never()).deleteFile(inserted.getObjectKey());
+        verifyNoInteractions(transactionManager);
+    }
+
+    // Загрузка с активной синхронизацией транзакции; возвращает зарегистрированные синхронизации
+    private List<TransactionSynchronization> storeInTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            blobService.store(new ByteArrayInputStream(CONTENT), CONTENT.length, "text/plain");
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static StorageCompression compression(boolean enabled) {
+        return new StorageCompression(enabled, DataSize.ofKilobytes(64), 0.8, 6, List.of("text/*", "application/json"),
+                new BufferPool(List.of(DataSize.ofKilobytes(8)), DataSize.ofMegabytes(1), true, new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,95 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.service.BufferPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BufferPool bufferPool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64), DataSize.ofKilobytes(8)),
+                DataSize.ofKilobytes(128), true, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should hand out smallest fitting size class and reuse returned buffer")
+    void shouldReuseReturnedBuffer() {
+        byte[] first;
+        try (BufferPool.Buffer buffer = bufferPool.acquire(1000)) {
+            assertEquals(8 * 1024, buffer.capacity());
+            first = buffer.array();
+            assertEquals(1, bufferPool.leased());
+        }
+        try (BufferPool.Buffer buffer = bufferPool.acquire(8 * 1024)) {
+            assertSame(first, buffer.array());
+        }
+        try (BufferPool.Buffer buffer = bufferPool.acquire(8 * 1024 + 1)) {
+            assertEquals(64 * 1024, buffer.capacity());
+        }
+
+        assertEquals(72 * 1024, bufferPool.allocatedBytes());
+        assertEquals(72 * 1024, bufferPool.retainedBytes());
+        assertEquals(0, bufferPool.leased());
+        assertEquals(1, meterRegistry.get("storage.buffers.pooled").tag("size", "8192").gauge().value());
+        assertEquals(72 * 1024, meterRegistry.get("storage.buffers.allocated").functionCounter().count());
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should not retain buffers over the limit or larger than the biggest class")
+    void shouldLimitRetainedBuffers() {
+        BufferPool.Buffer first = bufferPool.acquire(64 * 1024);
+        BufferPool.Buffer second = bufferPool.acquire(64 * 1024);
+        BufferPool.Buffer third = bufferPool.acquire(64 * 1024);
+        BufferPool.Buffer large = bufferPool.acquire(100_000);
+        assertEquals(100_000, large.capacity());
+        assertEquals(4, bufferPool.leased());
+
+        first.close();
+        second.close();
+        third.close();
+        large.close();
+
+        assertEquals(128 * 1024, bufferPool.retainedBytes());
+        assertEquals(0, bufferPool.leased());
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should report where a buffer that was not returned was acquired")
+    void shouldDetectLeakedBuffer() {
+        BufferPool.Buffer leaked = bufferPool.acquire(10);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, bufferPool::checkLeaks);
+        assertTrue(Arrays.stream(e.getCause().getStackTrace())
+                .anyMatch(frame -> frame.getMethodName().equals("shouldDetectLeakedBuffer")));
+
+        leaked.close();
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should ignore repeated release and reject use after release")
+    void shouldReleaseOnce() {
+        BufferPool.Buffer buffer = bufferPool.acquire(10);
+        buffer.close();
+        buffer.close();
+
+        assertEquals(0, bufferPool.leased());
+        assertEquals(8 * 1024, bufferPool.retainedBytes());
+        assertThrows(IllegalStateException.class, buffer::array);
+    }
+}
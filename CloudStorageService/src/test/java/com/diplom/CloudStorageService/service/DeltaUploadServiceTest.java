@@ -0,0 +1,201 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.File;
+import com.diplom.model.User;
+import com.diplom.model.dto.FileSignaturesDTO;
+import com.diplom.repository.FileRepository;
+import com.diplom.request.DeltaUploadRequest;
+import com.diplom.request.DeltaUploadRequest.Segment;
+import com.diplom.request.DeltaUploadRequest.SegmentType;
+import com.diplom.service.BlobService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.DeltaUploadService;
+import com.diplom.service.FileService;
+import com.diplom.service.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.Adler32;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DeltaUploadServiceTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final String BASE_KEY = "blobs/aa/" + "a".repeat(64);
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private StorageBackend storageBackend;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private FileService fileService;
+
+    private BufferPool bufferPool;
+    private DeltaUploadService deltaUploadService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(64)), DataSize.ofMegabytes(1), true, new SimpleMeterRegistry());
+        deltaUploadService = new DeltaUploadService(fileRepository, storageBackend, blobService, fileService, bufferPool,
+                DataSize.ofKilobytes(4));
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+
+        File file = File.builder().filename("data.bin").owner(user)
+                .blob(Blob.builder().hash("a".repeat(64)).size(20 * MB).refCount(1).build()).build();
+        lenient().when(fileRepository.findByOwner_IdAndFilename(1L, "data.bin")).thenReturn(Optional.of(file));
+    }
+
+    @AfterEach
+    void tearDown() {
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should compute weak and strong signature for every block")
+    void shouldComputeSignatures() {
+        byte[] content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        stat(content.length, "etag-1");
+        when(storageBackend.getFileStream(BASE_KEY)).thenReturn(new ByteArrayInputStream(content));
+
+        FileSignaturesDTO signatures = deltaUploadService.signatures(user, "data.bin", null);
+
+        assertEquals("etag-1", signatures.getVersion());
+        assertEquals(4096, signatures.getBlockSize());
+        assertEquals(3, signatures.getBlocks().size());
+        assertEquals(8192, signatures.getBlocks().get(2).getOffset());
+        assertEquals(10_000 - 8192, signatures.getBlocks().get(2).getLength());
+
+        Adler32 adler32 = new Adler32();
+        adler32.update(content, 0, 4096);
+        assertEquals(adler32.getValue(), signatures.getBlocks().getFirst().getWeak());
+        assertEquals(64, signatures.getBlocks().getFirst().getStrong().length());
+    }
+
+    @Test
+    @DisplayName("Should reject block size outside allowed bounds")
+    void shouldRejectInvalidBlockSize() {
+        assertThrows(InvalidInputException.class, () -> deltaUploadService.signatures(user, "data.bin", 16));
+        verify(storageBackend, never()).getFileStream(anyString());
+    }
+
+    @Test
+    @DisplayName("Should copy long unchanged ranges on server and upload only short pieces")
+    void shouldComposeNewVersionFromRanges() throws Exception {
+        stat(20 * MB, "etag-1");
+        byte[] data = "новые байты".getBytes();
+        // Первые 10MB без изменений, затем новые байты, затем оставшиеся 10MB текущей версии
+        DeltaUploadRequest request = request("etag-1",
+                new Segment(SegmentType.COPY, 0, 4 * MB),
+                new Segment(SegmentType.COPY, 4 * MB, 6 * MB),
+                new Segment(SegmentType.DATA, 0, data.length),
+                new Segment(SegmentType.COPY, 10 * MB, 10 * MB));
+        when(storageBackend.getFileStream(eq(BASE_KEY), anyLong(), anyLong()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(new byte[(int) invocation.<Long>getArgument(2).longValue()]));
+        List<byte[]> uploaded = new ArrayList<>();
+        doAnswer(invocation -> {
+            uploaded.add(invocation.<InputStream>getArgument(1).readAllBytes());
+            return null;
+        }).when(storageBackend).uploadStream(anyString(), any(InputStream.class), anyLong(), anyString());
+        Blob blob = Blob.builder().hash("b".repeat(64)).size(20 * MB + data.length).build();
+        when(blobService.adopt(anyString())).thenReturn(blob);
+
+        deltaUploadService.applyDelta(user, "data.bin", request, new ByteArrayInputStream(data), data.length);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StorageBackend.Range>> ranges = ArgumentCaptor.forClass(List.class);
+        verify(storageBackend).composeObject(anyString(), ranges.capture());
+        // Новые байты короче 5MB: через приложение проходит только кусок, добранный до 5MB
+        // началом следующего диапазона, остальное копируется на сервере
+        long head = 5 * MB - data.length;
+        assertEquals(1, uploaded.size());
+        assertEquals(5 * MB, uploaded.getFirst().length);
+        assertEquals(3, ranges.getValue().size());
+        assertEquals(new StorageBackend.Range(BASE_KEY, 0, 10 * MB), ranges.getValue().get(0));
+        assertEquals(new StorageBackend.Range(BASE_KEY, 10 * MB + head, 10 * MB - head), ranges.getValue().get(2));
+        verify(fileService).commitUploadedFile(user, "data.bin", blob);
+    }
+
+    @Test
+    @DisplayName("Should skip compose when the whole new version fits in one uploaded piece")
+    void shouldUploadSmallVersionDirectly() throws Exception {
+        stat(1000, "etag-1");
+        byte[] data = "abc".getBytes();
+        DeltaUploadRequest request = request("etag-1",
+                new Segment(SegmentType.COPY, 0, 500),
+                new Segment(SegmentType.DATA, 0, data.length));
+        when(storageBackend.getFileStream(BASE_KEY, 0, 500)).thenReturn(new ByteArrayInputStream(new byte[500]));
+        doAnswer(invocation -> {
+            assertEquals(503, invocation.<InputStream>getArgument(1).readAllBytes().length);
+            return null;
+        }).when(storageBackend).uploadStream(anyString(), any(InputStream.class), eq(503L), anyString());
+
+        deltaUploadService.applyDelta(user, "data.bin", request, new ByteArrayInputStream(data), data.length);
+
+        verify(storageBackend, never()).composeObject(anyString(), anyList());
+        verify(blobService).adopt(startsWith("uploads/"));
+        verify(storageBackend, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Should reject delta built against another version")
+    void shouldRejectStaleVersion() {
+        stat(1000, "etag-2");
+        DeltaUploadRequest request = request("etag-1", new Segment(SegmentType.COPY, 0, 1000));
+
+        assertThrows(InvalidInputException.class, () ->
+                deltaUploadService.applyDelta(user, "data.bin", request, InputStream.nullInputStream(), 0));
+        verifyNoInteractions(blobService, fileService);
+    }
+
+    @Test
+    @DisplayName("Should reject delta when data size does not match segments")
+    void shouldRejectDataSizeMismatch() {
+        stat(1000, "etag-1");
+        DeltaUploadRequest request = request("etag-1", new Segment(SegmentType.DATA, 0, 10));
+
+        assertThrows(InvalidInputException.class, () ->
+                deltaUploadService.applyDelta(user, "data.bin", request, new ByteArrayInputStream(new byte[5]), 5));
+        verify(storageBackend, never()).uploadStream(anyString(), any(), anyLong(), anyString());
+    }
+
+    private void stat(long size, String etag) {
+        when(storageBackend.statFile(BASE_KEY)).thenReturn(new StorageBackend.ObjectStat(size, "application/octet-stream", etag));
+    }
+
+    private static DeltaUploadRequest request(String version, Segment... segments) {
+        DeltaUploadRequest request = new DeltaUploadRequest();
+        request.setVersion(version);
+        request.setSegments(List.of(segments));
+        return request;
+    }
+}
@@ -0,0 +1,130 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.DirectUpload;
+import com.diplom.model.User;
+import com.diplom.model.dto.DirectUploadDTO;
+import com.diplom.repository.DirectUploadRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.DirectUploadService;
+import com.diplom.service.FileService;
+import com.diplom.service.MinioService;
+import com.diplom.service.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DirectUploadServiceTest {
+
+    @Mock
+    private DirectUploadRepository directUploadRepository;
+
+    @Mock
+    private MinioService minioService;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private FileService fileService;
+
+    private DirectUploadService directUploadService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        directUploadService = new DirectUploadService(directUploadRepository, minioService, blobService, fileService,
+                DataSize.ofMegabytes(100), Duration.ofMinutes(15), Duration.ofHours(1));
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+    }
+
+    @Test
+    @DisplayName("Should issue presigned form limited to declared size on temporary key")
+    void shouldReserveUpload() {
+        when(minioService.getPresignedPostForm(startsWith("uploads/"), eq(1000L), eq("text/plain"), eq(Duration.ofMinutes(15))))
+                .thenReturn(Map.of("policy", "p", "x-amz-signature", "s"));
+        when(minioService.getPostUrl()).thenReturn("http://minio:9000/storagebucket");
+        when(directUploadRepository.save(any(DirectUpload.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DirectUploadDTO upload = directUploadService.reserve(user, "report.txt", 1000, "text/plain");
+
+        assertEquals("http://minio:9000/storagebucket", upload.getUrl());
+        assertEquals("s", upload.getFields().get("x-amz-signature"));
+        assertEquals(1000, upload.getMaxSize());
+        verify(directUploadRepository).save(argThat(saved ->
+                saved.getOwner() == user && saved.getFilename().equals("report.txt") && saved.getMaxSize() == 1000));
+        verifyNoInteractions(blobService, fileService);
+    }
+
+    @Test
+    @DisplayName("Should reject reservation above configured maximum")
+    void shouldRejectTooLargeReservation() {
+        assertThrows(InvalidInputException.class, () ->
+                directUploadService.reserve(user, "big.bin", DataSize.ofMegabytes(101).toBytes(), null));
+        verifyNoInteractions(minioService, directUploadRepository);
+    }
+
+    @Test
+    @DisplayName("Should verify uploaded object and commit file on completion")
+    void shouldCompleteUpload() {
+        DirectUpload upload = upload("id-1", 1000);
+        StorageBackend.ObjectStat stat = new StorageBackend.ObjectStat(800L, "text/plain", "etag");
+        when(minioService.findStat("uploads/id-1")).thenReturn(Optional.of(stat));
+        Blob blob = Blob.builder().hash("a".repeat(64)).size(800).build();
+        when(blobService.adopt("uploads/id-1")).thenReturn(blob);
+
+        directUploadService.complete(user, "id-1");
+
+        verify(fileService).commitUploadedFile(user, "report.txt", blob);
+        verify(directUploadRepository).delete(upload);
+    }
+
+    @Test
+    @DisplayName("Should not commit when object has not been uploaded yet")
+    void shouldRejectCompletionWithoutObject() {
+        DirectUpload upload = upload("id-2", 1000);
+        when(minioService.findStat("uploads/id-2")).thenReturn(Optional.empty());
+
+        assertThrows(InvalidInputException.class, () -> directUploadService.complete(user, "id-2"));
+        verifyNoInteractions(blobService, fileService);
+        verify(directUploadRepository, never()).delete(upload);
+    }
+
+    @Test
+    @DisplayName("Should remove expired reservations together with their objects")
+    void shouldSweepExpiredUploads() {
+        DirectUpload expired = DirectUpload.builder().id("old").owner(user).filename("a.txt")
+                .expiresAt(LocalDateTime.now().minusDays(1)).build();
+        when(directUploadRepository.findByExpiresAtBefore(any(LocalDateTime.class))).thenReturn(List.of(expired));
+        when(minioService.deleteFile("uploads/old")).thenReturn(true);
+
+        directUploadService.sweepExpiredUploads();
+
+        verify(directUploadRepository).delete(expired);
+    }
+
+    private DirectUpload upload(String id, long maxSize) {
+        DirectUpload upload = DirectUpload.builder().id(id).owner(user).filename("report.txt").maxSize(maxSize)
+                .expiresAt(LocalDateTime.now().plusMinutes(15)).build();
+        when(directUploadRepository.findByIdAndOwner_Id(id, 1L)).thenReturn(Optional.of(upload));
+        return upload;
+    }
+}
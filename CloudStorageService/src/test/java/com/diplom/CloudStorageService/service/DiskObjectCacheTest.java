@@ -0,0 +1,161 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.service.DiskObjectCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskObjectCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DiskObjectCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new DiskObjectCache(true, directory, DataSize.ofBytes(250), DataSize.ofBytes(200), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should cache object read to the end and serve ranges from disk")
+    void shouldCacheFullyReadObject() throws IOException {
+        byte[] content = bytes(100, 1);
+        assertTrue(cache.open("a.txt", "etag-1", 0, 100).isEmpty());
+
+        fill("a.txt", "etag-1", content);
+
+        try (InputStream cached = cache.open("a.txt", "etag-1", 10, 20).orElseThrow()) {
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 30), cached.readAllBytes());
+        }
+        // Другая версия объекта - промах
+        assertTrue(cache.open("a.txt", "etag-2", 0, 100).isEmpty());
+
+        assertEquals(1, meterRegistry.get("storage.cache.hits").functionCounter().count());
+        assertEquals(2, meterRegistry.get("storage.cache.misses").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("Should evict least recently used entries when budget is exceeded")
+    void shouldEvictLeastRecentlyUsed() throws IOException {
+        fill("a.txt", "1", bytes(100, 1));
+        fill("b.txt", "1", bytes(100, 2));
+        // Обращение к a.txt делает вытесняемым b.txt
+        cache.open("a.txt", "1", 0, 100).orElseThrow().close();
+
+        fill("c.txt", "1", bytes(100, 3));
+
+        assertTrue(cache.open("b.txt", "1", 0, 100).isEmpty());
+        assertTrue(cache.open("a.txt", "1", 0, 100).isPresent());
+        assertEquals(200, cache.usedBytes());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(2, fileCount());
+    }
+
+    @Test
+    @DisplayName("Should not cache partially read or oversized objects")
+    void shouldNotCachePartialOrOversizedObjects() throws IOException {
+        try (InputStream stream = cache.readThrough("a.txt", "1", 100, new ByteArrayInputStream(bytes(100, 1)))) {
+            stream.readNBytes(50);
+        }
+        fill("big.bin", "1", bytes(201, 2));
+
+        assertTrue(cache.open("a.txt", "1", 0, 100).isEmpty());
+        assertTrue(cache.open("big.bin", "1", 0, 201).isEmpty());
+        assertEquals(0, cache.usedBytes());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    @DisplayName("Should drop all versions of object on invalidate")
+    void shouldInvalidateObject() throws IOException {
+        fill("a.txt", "1", bytes(100, 1));
+        fill("a.txt", "2", bytes(100, 2));
+
+        cache.invalidate("a.txt");
+
+        assertTrue(cache.open("a.txt", "1", 0, 100).isEmpty());
+        assertTrue(cache.open("a.txt", "2", 0, 100).isEmpty());
+        assertEquals(0, cache.usedBytes());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    @DisplayName("Should hand out a link to cached file that survives eviction until it expires")
+    void shouldKeepLocatedFileAfterEviction() throws IOException {
+        byte[] content = bytes(100, 1);
+        fill("a.txt", "1", content);
+        Path located = cache.locate("a.txt", "1").orElseThrow();
+
+        // Запись вытеснена и удалена, но контейнер еще не открыл файл по выданному пути
+        fill("b.txt", "1", bytes(100, 2));
+        fill("c.txt", "1", bytes(100, 3));
+        cache.invalidate("a.txt");
+
+        assertTrue(cache.locate("a.txt", "1").isEmpty());
+        assertArrayEquals(content, Files.readAllBytes(located));
+
+        DiskObjectCache expiring = new DiskObjectCache(true, directory.resolve("expiring"), DataSize.ofBytes(250),
+                DataSize.ofBytes(200), Duration.ZERO, meterRegistry);
+        try (InputStream stream = expiring.readThrough("d.txt", "1", 100, new ByteArrayInputStream(content))) {
+            stream.readAllBytes();
+        }
+        Path link = expiring.locate("d.txt", "1").orElseThrow();
+        expiring.removeExpiredLinks();
+        assertFalse(Files.exists(link));
+        assertTrue(expiring.open("d.txt", "1", 0, 100).isPresent());
+    }
+
+    @Test
+    @DisplayName("Should clear only its own subdirectory of the configured cache directory")
+    void shouldKeepForeignFilesInCacheDirectory() throws IOException {
+        Path shared = directory.resolve("shared");
+        Files.createDirectories(shared.resolve("disk-cache"));
+        Files.writeString(shared.resolve("disk-cache").resolve("stale"), "от прошлого запуска");
+        Files.writeString(shared.resolve("notes.txt"), "чужой файл");
+
+        DiskObjectCache sharedCache = new DiskObjectCache(true, shared, DataSize.ofBytes(250), DataSize.ofBytes(200),
+                meterRegistry);
+
+        assertEquals("чужой файл", Files.readString(shared.resolve("notes.txt")));
+        assertFalse(Files.exists(shared.resolve("disk-cache").resolve("stale")));
+        assertEquals(0, sharedCache.usedBytes());
+    }
+
+    private void fill(String objectKey, String etag, byte[] content) throws IOException {
+        try (InputStream stream = cache.readThrough(objectKey, etag, content.length, new ByteArrayInputStream(content))) {
+            assertArrayEquals(content, stream.readAllBytes());
+        }
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("disk-cache"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static byte[] bytes(int size, int seed) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * seed + seed);
+        }
+        return content;
+    }
+}
@@ -1,29 +1,51 @@
 package com.diplom.CloudStorageService.service;
 
 import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
 import com.diplom.model.File;
+import com.diplom.model.StorageCodec;
+import com.diplom.model.StorageTier;
 import com.diplom.model.User;
+import com.diplom.model.dto.FileDownload;
+import com.diplom.model.dto.FileListEntry;
+import com.diplom.model.dto.FileListPage;
 import com.diplom.repository.FileRepository;
 import com.diplom.repository.UserRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.DiskObjectCache;
 import com.diplom.service.FileService;
-import com.diplom.service.MinioService;
+import com.diplom.service.StorageBackend;
+import com.diplom.service.PresignedUrlCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -34,6 +56,7 @@ public class FileServiceTest {
     private User user;
     private MultipartFile testFile;
     private final String testUsername = "testUser";
+    private final Long testUserId = 1L;
 
     @Mock
     private FileRepository fileRepository;
@@ -42,7 +65,17 @@ public class FileServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private MinioService minioService; // Добавьте этот мок
+    private StorageBackend storageBackend; // Добавьте этот мок
+
+    @Mock
+    private BlobService blobService;
+
+    @Spy
+    private PresignedUrlCache presignedUrlCache = new PresignedUrlCache(100);
+
+    @Spy
+    private DiskObjectCache diskObjectCache = new DiskObjectCache(false, Path.of("unused"),
+            DataSize.ofMegabytes(1), DataSize.ofMegabytes(1), new SimpleMeterRegistry());
 
     @InjectMocks
     private FileService fileService;
@@ -53,6 +86,7 @@ public class FileServiceTest {
         testFile = new MockMultipartFile("file", "testFile.txt", "text/plain", "Test content".getBytes());
 
         user = new User(); // Создаем объект User
+        user.setId(testUserId);
         user.setUsername("testUser");
         user.setPassword("password123");
         user.setEmail("testuser@example.com");
@@ -72,7 +106,8 @@ public class FileServiceTest {
         testFileEntity.setOwner(user);
 
         // Настраиваем моки
-        when(minioService.saveFile(testFile)).thenReturn(true); // Мок для метода saveFile
+        Blob blob = blob("a".repeat(64), testFile.getSize());
+        when(blobService.store(any(InputStream.class), eq(testFile.getSize()), eq("text/plain"))).thenReturn(blob);
         when(fileRepository.save(any(File.class))).thenReturn(testFileEntity); // Мок для сохранения файла
 
         // Выполняем метод uploadFile и проверяем, что он не выбрасывает исключения
@@ -81,10 +116,214 @@ public class FileServiceTest {
         // Проверяем, что метод save был вызван один раз с правильными параметрами
         verify(fileRepository, times(1)).save(argThat(file ->
                 file.getFilename().equals(testFile.getOriginalFilename()) &&
-                        file.getOwner().equals(user)
+                        file.getOwner().equals(user) && file.getBlob() == blob
         ));
     }
 
+    @Test
+    @DisplayName("Should switch existing file to new blob and release previous one")
+    void shouldReplaceFileContent() {
+        user.setId(1L);
+        Blob previous = blob("b".repeat(64), 5);
+        Blob blob = blob("c".repeat(64), 12);
+        File existing = File.builder().filename("testFile.txt").owner(user).blob(previous).size(5).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "testFile.txt")).thenReturn(Optional.of(existing));
+        when(fileRepository.save(existing)).thenReturn(existing);
+
+        fileService.commitUploadedFile(user, "testFile.txt", blob);
+
+        assertEquals(blob, existing.getBlob());
+        assertEquals(12, existing.getSize());
+        verify(blobService).release(previous);
+        verify(storageBackend, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Should save records of several files with one lookup and one saveAll")
+    void shouldCommitSeveralFilesAtOnce() {
+        user.setId(1L);
+        Blob previous = blob("3".repeat(64), 5);
+        File existing = File.builder().filename("a.txt").owner(user).blob(previous).build();
+        Blob first = blob("4".repeat(64), 10);
+        Blob second = blob("5".repeat(64), 20);
+        Map<String, Blob> blobs = new LinkedHashMap<>();
+        blobs.put("a.txt", first);
+        blobs.put("b.txt", second);
+        when(fileRepository.findByOwner_IdAndFilenameIn(1L, blobs.keySet())).thenReturn(List.of(existing));
+        when(fileRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<File> saved = fileService.commitUploadedFiles(user, blobs);
+
+        assertEquals(2, saved.size());
+        assertSame(existing, saved.get(0));
+        assertEquals(first, existing.getBlob());
+        assertEquals("b.txt", saved.get(1).getFilename());
+        assertEquals(20, saved.get(1).getSize());
+        verify(blobService).release(previous);
+        verify(fileRepository, never()).save(any());
+        verify(fileRepository, never()).findByOwner_IdAndFilename(anyLong(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should create file from already stored content without transferring bytes")
+    void shouldInstantUploadKnownContent() {
+        user.setId(1L);
+        String hash = "d".repeat(64);
+        Blob blob = blob(hash, 100);
+        when(fileRepository.existsByOwner_IdAndBlob_Hash(1L, hash)).thenReturn(true);
+        when(blobService.link(hash, 100)).thenReturn(Optional.of(blob));
+        when(fileRepository.save(any(File.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Optional<File> file = fileService.instantUpload(user, "copy.bin", hash, 100);
+
+        assertTrue(file.isPresent());
+        assertEquals(blob, file.get().getBlob());
+        assertEquals(100, file.get().getSize());
+        verify(blobService, never()).store(any(), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Should ask for full upload when content is unknown")
+    void shouldNotInstantUploadUnknownContent() {
+        user.setId(1L);
+        String hash = "e".repeat(64);
+        when(fileRepository.existsByOwner_IdAndBlob_Hash(1L, hash)).thenReturn(true);
+        when(blobService.link(hash, 100)).thenReturn(Optional.empty());
+
+        assertTrue(fileService.instantUpload(user, "new.bin", hash, 100).isEmpty());
+        verify(fileRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Should not link another user's content by its hash and size")
+    void shouldNotInstantUploadForeignContent() {
+        // Файл с этим содержимым есть только у пользователя A (id 1)
+        User other = User.builder().id(2L).username("userB").build();
+        String hash = "a".repeat(64);
+        when(fileRepository.existsByOwner_IdAndBlob_Hash(2L, hash)).thenReturn(false);
+
+        assertTrue(fileService.instantUpload(other, "stolen.bin", hash, 100).isEmpty());
+        verify(blobService, never()).link(anyString(), anyLong());
+        verify(fileRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Should reject malformed hash in instant upload")
+    void shouldRejectMalformedInstantUploadHash() {
+        assertThrows(InvalidInputException.class, () -> fileService.instantUpload(user, "a.bin", "not-a-hash", 1));
+        verifyNoInteractions(blobService);
+    }
+
+    @Test
+    @DisplayName("Should rename file with blob only in database")
+    void shouldRenameWithoutTouchingMinio() {
+        user.setId(1L);
+        File file = File.builder().filename("old.txt").owner(user).blob(blob("f".repeat(64), 5)).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "old.txt")).thenReturn(Optional.of(file));
+
+        fileService.editFileName(user, "old.txt", "new.txt");
+
+        assertEquals("new.txt", file.getFilename());
+        verify(fileRepository).save(file);
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    @DisplayName("Should rename legacy file in database keeping its object key")
+    void shouldRenameLegacyFileWithoutCopy() {
+        user.setId(1L);
+        File file = File.builder().filename("old.bin").owner(user).filePath("storagebucket/old.bin").build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "old.bin")).thenReturn(Optional.of(file));
+
+        fileService.editFileName(user, "old.bin", "new.bin");
+
+        assertEquals("new.bin", file.getFilename());
+        assertEquals("old.bin", file.getObjectKey());
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    @DisplayName("Should keep legacy object shared by another user's file on delete")
+    void shouldKeepSharedLegacyObjectOnDelete() {
+        user.setId(1L);
+        File file = File.builder().filename("report.pdf").owner(user).filePath("storagebucket/report.pdf").build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "report.pdf")).thenReturn(Optional.of(file));
+        when(fileRepository.existsByFilePathAndBlobIsNull("storagebucket/report.pdf")).thenReturn(true);
+
+        fileService.deleteFile(user, "report.pdf");
+
+        verify(fileRepository).delete(file);
+        verify(storageBackend, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Should move all files sharing legacy object to one blob with a reference each")
+    void shouldMigrateLegacyObject() {
+        User other = new User();
+        other.setId(2L);
+        user.setId(1L);
+        File first = File.builder().filename("report.pdf").owner(user).filePath("storagebucket/report.pdf").build();
+        File second = File.builder().filename("report.pdf").owner(other).filePath("storagebucket/report.pdf").build();
+        Blob blob = blob("7".repeat(64), 42);
+        when(fileRepository.findByFilePathAndBlobIsNull("storagebucket/report.pdf")).thenReturn(List.of(first, second));
+        when(blobService.importObject("report.pdf", 2)).thenReturn(blob);
+
+        Optional<String> legacyKey = fileService.migrateLegacyObject("storagebucket/report.pdf");
+
+        assertEquals(Optional.of("report.pdf"), legacyKey);
+        assertEquals(blob.getObjectKey(), first.getObjectKey());
+        assertEquals(blob.getObjectKey(), second.getObjectKey());
+        assertEquals(42, second.getSize());
+        verify(fileRepository).saveAll(List.of(first, second));
+        // Старый объект удаляется только после фиксации транзакции
+        verify(storageBackend, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Should release blob instead of deleting object when file is deleted")
+    void shouldReleaseBlobOnDelete() {
+        user.setId(1L);
+        Blob blob = blob("1".repeat(64), 5);
+        File file = File.builder().filename("doc.txt").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "doc.txt")).thenReturn(Optional.of(file));
+
+        fileService.deleteFile(user, "doc.txt");
+
+        verify(fileRepository).delete(file);
+        verify(blobService).release(blob);
+        verify(storageBackend, never()).deleteFile(anyString());
+    }
+
+
+    @Test
+    @DisplayName("Should stream upload body of unknown length into blob and store its size")
+    void shouldUploadFileStream() {
+        user.setId(1L);
+        byte[] content = "Большой файл".repeat(1000).getBytes();
+        Blob blob = blob("2".repeat(64), content.length);
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "big.txt")).thenReturn(Optional.empty());
+        when(blobService.store(any(InputStream.class), eq(-1L), eq("text/plain"))).thenAnswer(invocation -> {
+            // Содержимое читается до конца, включая первый байт, прочитанный проверкой на пустоту
+            assertArrayEquals(content, invocation.<InputStream>getArgument(0).readAllBytes());
+            return blob;
+        });
+
+        fileService.uploadFileStream(user, "big.txt", new ByteArrayInputStream(content), -1, "text/plain");
+
+        verify(fileRepository).save(argThat(file ->
+                file.getFilename().equals("big.txt") && file.getSize() == content.length && file.getOwner() == user));
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    @DisplayName("Should reject empty stream upload without touching MinIO")
+    void shouldRejectEmptyFileStream() {
+        assertThrows(InvalidInputException.class, () ->
+                fileService.uploadFileStream(user, "empty.txt", new ByteArrayInputStream(new byte[0]), -1, null));
+
+        verify(blobService, never()).store(any(), anyLong(), any());
+        verify(fileRepository, never()).save(any());
+    }
 
     @Test
     @DisplayName("Should list files successfully for a valid user and limit")
@@ -94,24 +333,54 @@ public class FileServiceTest {
         user.setId(1L);
 
         int limit = 5;
-        File file = new File();
-        file.setOwner(user);
-        file.setFilename("testFile.txt");
-        file.setDateOfUpload(LocalDateTime.now());
-        List<File> files = Collections.singletonList(file);
+        FileListEntry entry = new FileListEntry(10L, "testFile.txt", 12, LocalDateTime.now());
+        List<FileListEntry> files = Collections.singletonList(entry);
 
-        Pageable pageable = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "id"));
+        Pageable pageable = PageRequest.ofSize(limit);
 
         // Настраиваем моки
-        when(fileRepository.findByOwner_Id(user.getId(), pageable)).thenReturn(new PageImpl<>(files, pageable, files.size()));
+        when(fileRepository.findFirstPage(user.getId(), pageable)).thenReturn(new SliceImpl<>(files, pageable, false));
 
         // Вызываем метод listFiles
-        List<File> result = fileService.listFiles(user, limit);
+        FileListPage result = fileService.listFiles(user, limit, null);
 
         // Проверяем результаты
         assertNotNull(result);
-        assertEquals(1, result.size());
-        assertEquals("testFile.txt", result.getFirst().getFilename());
+        assertEquals(1, result.getFiles().size());
+        assertEquals("testFile.txt", result.getFiles().getFirst().filename());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Should continue listing after the cursor of the previous page without counting files")
+    void shouldListNextPageByCursor() {
+        LocalDateTime uploaded = LocalDateTime.parse("2024-05-01T10:15:30.123456");
+        FileListEntry last = new FileListEntry(70L, "b.txt", 1, uploaded);
+        FileListEntry next = new FileListEntry(12L, "a.txt", 1, uploaded.minusDays(1));
+        Pageable pageable = PageRequest.ofSize(2);
+        when(fileRepository.findFirstPage(testUserId, pageable)).thenReturn(new SliceImpl<>(
+                List.of(new FileListEntry(90L, "c.txt", 1, uploaded), last),
+                pageable, true));
+        when(fileRepository.findPageAfter(testUserId, uploaded, 70L, pageable))
+                .thenReturn(new SliceImpl<>(List.of(next), pageable, false));
+
+        FileListPage first = fileService.listFiles(user, 2, null);
+        FileListPage second = fileService.listFiles(user, 2, first.getNextCursor());
+
+        assertNotNull(first.getNextCursor());
+        assertEquals(List.of(next), second.getFiles());
+        assertNull(second.getNextCursor());
+        verify(fileRepository).findPageAfter(testUserId, uploaded, 70L, pageable);
+    }
+
+    @Test
+    @DisplayName("Should reject a malformed list cursor")
+    void shouldRejectMalformedCursor() {
+        InvalidInputException exception = assertThrows(InvalidInputException.class,
+                () -> fileService.listFiles(user, 10, "не-курсор"));
+
+        assertEquals("Некорректный курсор списка файлов", exception.getMessage());
+        verifyNoInteractions(fileRepository);
     }
 
 
@@ -122,11 +391,158 @@ public class FileServiceTest {
         int invalidLimit = -1;
 
         // Проверяем, что при вызове метода listFiles с некорректным лимитом будет выброшено исключение
-        InvalidInputException exception = assertThrows(InvalidInputException.class, () -> fileService.listFiles(user, invalidLimit));
+        InvalidInputException exception = assertThrows(InvalidInputException.class, () -> fileService.listFiles(user, invalidLimit, null));
 
         // Проверяем сообщение исключения
         assertEquals("Лимит для списка файлов должен быть > 0", exception.getMessage());
     }
 
 
+    @Test
+    @DisplayName("Should prepare download from metadata without reading object content")
+    void shouldPrepareDownloadWithoutReadingContent() {
+        File file = new File();
+        file.setFilename("testFile.txt");
+        file.setOwner(user);
+
+        StorageBackend.ObjectStat stat = new StorageBackend.ObjectStat(12L, "text/plain", "etag");
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "testFile.txt")).thenReturn(Optional.of(file));
+        when(storageBackend.statFile("testFile.txt")).thenReturn(stat);
+
+        FileDownload download = fileService.downloadFile(user, "testFile.txt");
+
+        // Размер берется из statObject, содержимое еще не запрошено
+        assertEquals(12L, download.getSize());
+        verify(storageBackend, never()).getFileStream(anyString());
+
+        download.openStream();
+        verify(storageBackend, times(1)).getFileStream("testFile.txt");
+    }
+
+    @Test
+    @DisplayName("Should report original size and decompress ranges of content stored deflated")
+    void shouldDownloadCompressedContent() throws Exception {
+        byte[] content = "строка журнала\n".repeat(1000).getBytes();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+            out.write(content);
+        }
+        Blob blob = Blob.builder().hash("6".repeat(64)).size(content.length).codec(StorageCodec.DEFLATE)
+                .storedSize((long) deflated.size()).build();
+        File file = File.builder().filename("app.log").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "app.log")).thenReturn(Optional.of(file));
+        when(storageBackend.getFileStream(blob.getObjectKey()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(deflated.toByteArray()));
+
+        FileDownload download = fileService.downloadFile(user, "app.log");
+
+        assertEquals(content.length, download.getSize());
+        assertArrayEquals(content, download.openStream().readAllBytes());
+        try (InputStream range = download.openRange(100, 50)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 150), range.readAllBytes());
+        }
+        verify(storageBackend, never()).getFileStream(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should use content hash as ETag and take metadata of blob file from database only")
+    void shouldDescribeBlobDownloadWithoutStorageRequest() {
+        Blob blob = Blob.builder().hash("7".repeat(64)).size(42).mimeType("image/png").tier(StorageTier.COLD).build();
+        File csv = File.builder().filename("table.csv").owner(user).blob(blob).build();
+        File unnamed = File.builder().filename("picture").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "table.csv")).thenReturn(Optional.of(csv));
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "picture")).thenReturn(Optional.of(unnamed));
+
+        FileDownload byExtension = fileService.downloadFile(user, "table.csv");
+        FileDownload bySniffing = fileService.downloadFile(user, "picture");
+
+        // ETag не зависит от места объекта: после переноса blob условный запрос по-прежнему дает 304
+        assertEquals("\"" + "7".repeat(64) + "\"", byExtension.getEtag());
+        assertEquals(42, byExtension.getSize());
+        assertEquals("text/csv", byExtension.getContentType());
+        assertEquals("image/png", bySniffing.getContentType());
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    @DisplayName("Should reuse cached presigned URL for repeated downloads of the same file")
+    void shouldReusePresignedUrl() {
+        user.setId(1L);
+        File file = new File();
+        file.setFilename("testFile.txt");
+        file.setOwner(user);
+
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "testFile.txt")).thenReturn(Optional.of(file));
+        when(storageBackend.getPresignedUrl(eq("testFile.txt"), eq("testFile.txt"), any(Duration.class), isNull()))
+                .thenReturn("http://minio/bucket/testFile.txt?X-Amz-Signature=1");
+
+        URI first = fileService.presignedDownloadUrl(user, "testFile.txt", coding -> false).orElseThrow();
+        URI second = fileService.presignedDownloadUrl(user, "testFile.txt", coding -> false).orElseThrow();
+
+        // Владелец проверяется каждый раз, а подпись вычисляется один раз
+        assertEquals(first, second);
+        verify(fileRepository, times(2)).findByOwner_IdAndFilename(testUserId, "testFile.txt");
+        verify(storageBackend, times(1)).getPresignedUrl(eq("testFile.txt"), eq("testFile.txt"), any(Duration.class), isNull());
+    }
+
+    @Test
+    @DisplayName("Should sign new presigned URL after blob moved to another tier")
+    void shouldResignPresignedUrlAfterTierMove() {
+        user.setId(1L);
+        Blob blob = blob("c".repeat(64), 5);
+        File file = File.builder().filename("moved.txt").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "moved.txt")).thenReturn(Optional.of(file));
+        when(storageBackend.getPresignedUrl(eq(blob.getObjectKey()), eq("moved.txt"), any(Duration.class), isNull()))
+                .thenReturn("http://minio/hot?X-Amz-Signature=1", "http://minio/cold?X-Amz-Signature=2");
+
+        URI hot = fileService.presignedDownloadUrl(user, "moved.txt", coding -> false).orElseThrow();
+        // TierMover перенес объект и удалил горячую копию
+        blob.setTier(StorageTier.COLD);
+        URI cold = fileService.presignedDownloadUrl(user, "moved.txt", coding -> false).orElseThrow();
+
+        assertEquals(URI.create("http://minio/hot?X-Amz-Signature=1"), hot);
+        assertEquals(URI.create("http://minio/cold?X-Amz-Signature=2"), cold);
+    }
+
+    @Test
+    @DisplayName("Should sign new presigned URL after blob relocated to another shard")
+    void shouldResignPresignedUrlAfterShardMove() {
+        user.setId(1L);
+        Blob blob = blob("b".repeat(64), 5);
+        blob.setShard("first");
+        File file = File.builder().filename("moved.txt").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "moved.txt")).thenReturn(Optional.of(file));
+        when(storageBackend.getPresignedUrl(eq(blob.getObjectKey()), eq("moved.txt"), any(Duration.class), isNull()))
+                .thenReturn("http://first/blob?X-Amz-Signature=1", "http://second/blob?X-Amz-Signature=2");
+
+        URI first = fileService.presignedDownloadUrl(user, "moved.txt", coding -> false).orElseThrow();
+        // ShardRebalancer перенес объект и удалил копию на прежнем шарде
+        blob.setShard("second");
+        URI second = fileService.presignedDownloadUrl(user, "moved.txt", coding -> false).orElseThrow();
+
+        assertEquals(URI.create("http://first/blob?X-Amz-Signature=1"), first);
+        assertEquals(URI.create("http://second/blob?X-Amz-Signature=2"), second);
+    }
+
+    @Test
+    @DisplayName("Should not sign URL for deflated object when client does not accept deflate")
+    void shouldNotPresignDeflatedObjectForIdentityClient() {
+        user.setId(1L);
+        Blob blob = blob("9".repeat(64), 500);
+        blob.setCodec(StorageCodec.DEFLATE);
+        File file = File.builder().filename("notes.txt").owner(user).blob(blob).build();
+        when(fileRepository.findByOwner_IdAndFilename(testUserId, "notes.txt")).thenReturn(Optional.of(file));
+        when(storageBackend.getPresignedUrl(eq(blob.getObjectKey()), eq("notes.txt"), any(Duration.class), eq("deflate")))
+                .thenReturn("http://minio/notes?X-Amz-Signature=1");
+
+        assertTrue(fileService.presignedDownloadUrl(user, "notes.txt", coding -> false).isEmpty());
+        assertEquals(Optional.of(URI.create("http://minio/notes?X-Amz-Signature=1")),
+                fileService.presignedDownloadUrl(user, "notes.txt", "deflate"::equals));
+        verify(storageBackend, times(1)).getPresignedUrl(anyString(), anyString(), any(Duration.class), any());
+    }
+
+    private static Blob blob(String hash, long size) {
+        return Blob.builder().hash(hash).size(size).refCount(1).build();
+    }
+
 }
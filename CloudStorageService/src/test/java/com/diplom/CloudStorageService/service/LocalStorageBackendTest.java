@@ -0,0 +1,150 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.service.BufferPool;
+import com.diplom.service.LocalStorageBackend;
+import com.diplom.service.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalStorageBackendTest {
+
+    @TempDir
+    Path directory;
+
+    private BufferPool bufferPool;
+    private LocalStorageBackend backend;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() {
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(8), DataSize.ofMegabytes(1)),
+                DataSize.ofMegabytes(4), true, new SimpleMeterRegistry());
+        // Порог 4KB: объекты ниже читаются через отображение в память, выше - потоком
+        backend = new LocalStorageBackend(directory, DataSize.ofKilobytes(4), true, bufferPool);
+        content = new byte[20_000];
+        new Random(7).nextBytes(content);
+    }
+
+    @AfterEach
+    void checkBuffers() {
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should store object with content type and MD5 ETag and read it back")
+    void shouldStoreAndReadObject() throws Exception {
+        backend.uploadStream("blobs/ab/abc", new ByteArrayInputStream(content), content.length, "image/png");
+
+        StorageBackend.ObjectStat stat = backend.statFile("blobs/ab/abc");
+        assertEquals(content.length, stat.size());
+        assertEquals("image/png", stat.contentType());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content)), stat.etag());
+        try (InputStream inputStream = backend.getFileStream("blobs/ab/abc")) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Should read ranges both through memory mapping and from the channel")
+    void shouldReadRanges() throws Exception {
+        backend.uploadStream("object", new ByteArrayInputStream(content), -1, null);
+
+        try (InputStream small = backend.getFileStream("object", 100, 1000);
+             InputStream large = backend.getFileStream("object", 1000, 15_000);
+             InputStream tail = backend.getFileStream("object", 19_990, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 1100), small.readAllBytes());
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 16_000), large.readAllBytes());
+            assertArrayEquals(Arrays.copyOfRange(content, 19_990, 20_000), tail.readAllBytes());
+        }
+        assertEquals("application/octet-stream", backend.statFile("object").contentType());
+    }
+
+    @Test
+    @DisplayName("Should replace object atomically and leave no temporary files")
+    void shouldReplaceObjectAtomically() throws Exception {
+        backend.uploadStream("object", new ByteArrayInputStream(content), content.length, null);
+        InputStream previous = backend.getFileStream("object");
+
+        byte[] replacement = "новое содержимое".getBytes();
+        backend.uploadStream("object", new ByteArrayInputStream(replacement), replacement.length, null);
+
+        // Открытый до замены поток дочитывает прежнюю версию
+        assertArrayEquals(content, previous.readAllBytes());
+        previous.close();
+        try (InputStream inputStream = backend.getFileStream("object")) {
+            assertArrayEquals(replacement, inputStream.readAllBytes());
+        }
+        try (Stream<Path> temporary = Files.list(directory.resolve("tmp"))) {
+            assertEquals(0, temporary.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep previous object when stream ends before declared size")
+    void shouldRejectShortStream() throws Exception {
+        backend.uploadStream("object", new ByteArrayInputStream(content), content.length, null);
+
+        assertThrows(GeneralServiceException.class, () ->
+                backend.uploadStream("object", new ByteArrayInputStream(new byte[10]), 100, null));
+
+        assertEquals(content.length, backend.statFile("object").size());
+    }
+
+    @Test
+    @DisplayName("Should copy, compose, list and delete objects")
+    void shouldCopyComposeListAndDelete() throws Exception {
+        backend.uploadStream("uploads/source", new ByteArrayInputStream(content), content.length, "text/plain");
+
+        backend.copyObject("uploads/source", "blobs/aa/copy");
+        backend.composeObject("blobs/bb/composed", List.of(
+                new StorageBackend.Range("uploads/source", 0, 100),
+                new StorageBackend.Range("blobs/aa/copy", 5000, 10_000)));
+
+        assertEquals("text/plain", backend.statFile("blobs/aa/copy").contentType());
+        try (InputStream composed = backend.getFileStream("blobs/bb/composed")) {
+            byte[] expected = new byte[10_100];
+            System.arraycopy(content, 0, expected, 0, 100);
+            System.arraycopy(content, 5000, expected, 100, 10_000);
+            assertArrayEquals(expected, composed.readAllBytes());
+        }
+        assertEquals(List.of("blobs/aa/copy", "blobs/bb/composed"), backend.listObjects("blobs/"));
+        assertEquals(List.of("blobs/aa/copy"), backend.listObjects("blobs/aa/co"));
+
+        assertTrue(backend.deleteFile("uploads/source"));
+        assertTrue(backend.deleteFile("uploads/missing"));
+        assertTrue(backend.findStat("uploads/source").isEmpty());
+        // Копия - отдельная ссылка на файл и переживает удаление источника
+        try (InputStream copy = backend.getFileStream("blobs/aa/copy")) {
+            assertArrayEquals(content, copy.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject keys outside the storage directory")
+    void shouldRejectKeysOutsideDirectory() {
+        assertThrows(InvalidInputException.class, () ->
+                backend.uploadStream("../escape", new ByteArrayInputStream(content), content.length, null));
+        assertThrows(GeneralServiceException.class, () -> backend.getFileStream("missing"));
+        assertFalse(Files.exists(directory.resolve("escape")));
+    }
+}
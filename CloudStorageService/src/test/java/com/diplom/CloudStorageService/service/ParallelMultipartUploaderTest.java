@@ -0,0 +1,165 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.GeneralServiceException;
+import com.diplom.service.BufferPool;
+import com.diplom.service.MinioMultipartClient;
+import com.diplom.service.ParallelMultipartUploader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.messages.Part;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ParallelMultipartUploaderTest {
+
+    private static final int PART_SIZE = (int) DataSize.ofMegabytes(5).toBytes();
+
+    @Mock
+    private MinioMultipartClient minioMultipartClient;
+
+    private BufferPool bufferPool;
+    private ParallelMultipartUploader uploader;
+
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bufferPool = new BufferPool(List.of(DataSize.ofBytes(PART_SIZE)), DataSize.ofMegabytes(64), true,
+                new SimpleMeterRegistry());
+        uploader = new ParallelMultipartUploader(minioMultipartClient, bufferPool, DataSize.ofBytes(PART_SIZE), 2, 8,
+                DataSize.ofMegabytes(64));
+        when(minioMultipartClient.createMultipartUpload("bucket", "big.bin", "application/octet-stream"))
+                .thenReturn("upload-1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.shutdown();
+        // Буфер каждой части, в том числе неудачной, возвращается в пул
+        assertEquals(0, bufferPool.leased());
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should upload parts concurrently within parallelism and complete in order")
+    void shouldUploadPartsInParallel() throws Exception {
+        when(minioMultipartClient.uploadPart(eq("bucket"), eq("big.bin"), eq("upload-1"), anyInt(), any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    byte[] data = invocation.getArgument(4);
+                    uploadedParts.put(invocation.getArgument(3), Arrays.copyOf(data, invocation.<Integer>getArgument(5)));
+                    inFlight.decrementAndGet();
+                    return "etag-" + invocation.getArgument(3);
+                });
+        byte[] content = content(4 * PART_SIZE + 123);
+
+        long uploaded = uploader.upload("bucket", "big.bin", new ByteArrayInputStream(content), content.length,
+                "application/octet-stream");
+
+        assertEquals(content.length, uploaded);
+        assertArrayEquals(content, joinParts(5));
+        assertTrue(maxInFlight.get() <= 2, "частей одновременно: " + maxInFlight.get());
+        // Пять частей прошли через буферы двух частей в полете
+        assertTrue(bufferPool.allocatedBytes() <= 2L * PART_SIZE, "выделено: " + bufferPool.allocatedBytes());
+
+        ArgumentCaptor<Part[]> parts = ArgumentCaptor.forClass(Part[].class);
+        verify(minioMultipartClient).completeMultipartUpload(eq("bucket"), eq("big.bin"), eq("upload-1"), parts.capture());
+        assertEquals(5, parts.getValue().length);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, parts.getValue()[i].partNumber());
+            assertEquals("etag-" + (i + 1), parts.getValue()[i].etag());
+        }
+        verify(minioMultipartClient, never()).abortMultipartUpload(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should read stream of unknown length until end")
+    void shouldUploadStreamOfUnknownLength() throws Exception {
+        when(minioMultipartClient.uploadPart(eq("bucket"), eq("big.bin"), eq("upload-1"), anyInt(), any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    uploadedParts.put(invocation.getArgument(3),
+                            Arrays.copyOf(invocation.<byte[]>getArgument(4), invocation.<Integer>getArgument(5)));
+                    return "etag";
+                });
+        byte[] content = content(2 * PART_SIZE);
+
+        long uploaded = uploader.upload("bucket", "big.bin", new ByteArrayInputStream(content), -1,
+                "application/octet-stream");
+
+        assertEquals(content.length, uploaded);
+        assertEquals(2, uploadedParts.size());
+        assertArrayEquals(content, joinParts(2));
+    }
+
+    @Test
+    @DisplayName("Should abort multipart upload when a part fails")
+    void shouldAbortOnPartFailure() throws Exception {
+        when(minioMultipartClient.uploadPart(eq("bucket"), eq("big.bin"), eq("upload-1"), anyInt(), any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    if ((int) invocation.getArgument(3) == 2) {
+                        throw new IOException("connection reset");
+                    }
+                    return "etag";
+                });
+        byte[] content = content(6 * PART_SIZE);
+
+        assertThrows(GeneralServiceException.class, () -> uploader.upload("bucket", "big.bin",
+                new ByteArrayInputStream(content), content.length, "application/octet-stream"));
+
+        verify(minioMultipartClient).abortMultipartUpload("bucket", "big.bin", "upload-1");
+        verify(minioMultipartClient, never()).completeMultipartUpload(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should abort when stream is shorter than declared size")
+    void shouldAbortOnTruncatedStream() throws Exception {
+        lenient().when(minioMultipartClient.uploadPart(anyString(), anyString(), anyString(), anyInt(), any(byte[].class), anyInt()))
+                .thenReturn("etag");
+        byte[] content = content(PART_SIZE + 10);
+
+        assertThrows(GeneralServiceException.class, () -> uploader.upload("bucket", "big.bin",
+                new ByteArrayInputStream(content), 3L * PART_SIZE, "application/octet-stream"));
+
+        verify(minioMultipartClient).abortMultipartUpload("bucket", "big.bin", "upload-1");
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(7).nextBytes(content);
+        return content;
+    }
+
+    private byte[] joinParts(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 1; i <= count; i++) {
+            out.writeBytes(uploadedParts.get(i));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,76 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.model.Blob;
+import com.diplom.repository.BlobRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.MinioService;
+import com.diplom.service.ShardRebalancer;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageShard;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ShardRebalancerTest {
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private MinioService minioService;
+
+    private ShardRebalancer shardRebalancer;
+    private Blob onPrimary;
+    private Blob onOwner;
+
+    @BeforeEach
+    void setUp() {
+        ShardRing ring = new ShardRing(List.of(
+                new StorageShard("primary", null, "bucket", 1),
+                new StorageShard("second", null, "bucket-2", 1)), 16);
+        shardRebalancer = new ShardRebalancer(blobRepository, blobService, minioService, ring, 100);
+
+        onPrimary = Blob.builder().hash("a".repeat(64)).refCount(1).build();
+        onOwner = Blob.builder().hash("b".repeat(64)).shard("second").refCount(1).build();
+        when(blobRepository.findReferencedAfter(eq(""), any())).thenReturn(List.of(onPrimary, onOwner));
+        when(minioService.shardOf(anyString())).thenReturn("second");
+    }
+
+    @Test
+    @DisplayName("Should move blob to its owner and delete the copy on the previous shard")
+    void shouldMoveBlobToOwner() {
+        when(blobService.relocate(eq(onPrimary.getHash()), isNull(), eq("second"), any())).thenReturn(true);
+        when(minioService.deleteFromShard(onPrimary.getObjectKey(), "primary")).thenReturn(true);
+
+        shardRebalancer.rebalance();
+
+        verify(blobService).relocate(eq(onPrimary.getHash()), isNull(), eq("second"), any());
+        verify(blobService, never()).relocate(eq(onOwner.getHash()), any(), any(), any());
+        verify(minioService).deleteFromShard(onPrimary.getObjectKey(), "primary");
+    }
+
+    @Test
+    @DisplayName("Should keep the previous copy when blob was not relocated")
+    void shouldKeepCopyWhenNotRelocated() {
+        when(blobService.relocate(eq(onPrimary.getHash()), isNull(), eq("second"), any())).thenThrow(new RuntimeException("MinIO недоступен"));
+
+        shardRebalancer.rebalance();
+
+        verify(minioService, never()).deleteFromShard(anyString(), anyString());
+    }
+}
@@ -0,0 +1,78 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.model.Blob;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageShard;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRingTest {
+
+    private static final int KEYS = 20_000;
+
+    private static final List<String> KEY_SET = IntStream.range(0, KEYS)
+            .mapToObj(i -> Blob.objectKey(String.format("%064x", i * 2654435761L)))
+            .toList();
+
+    private static StorageShard shard(String name, int weight) {
+        return new StorageShard(name, null, name + "-bucket", weight);
+    }
+
+    @Test
+    @DisplayName("Should spread keys across shards proportionally to weight")
+    void shouldSpreadKeysByWeight() {
+        ShardRing ring = new ShardRing(List.of(shard("a", 1), shard("b", 1), shard("c", 2)), 128);
+
+        Map<String, Long> counts = KEY_SET.stream()
+                .collect(Collectors.groupingBy(key -> ring.locate(key).name(), Collectors.counting()));
+
+        assertEquals(0.25, counts.get("a") / (double) KEYS, 0.06);
+        assertEquals(0.25, counts.get("b") / (double) KEYS, 0.06);
+        assertEquals(0.50, counts.get("c") / (double) KEYS, 0.06);
+    }
+
+    @Test
+    @DisplayName("Should move only keys that the added shard takes over")
+    void shouldMoveOnlyKeysOfAddedShard() {
+        ShardRing before = new ShardRing(List.of(shard("a", 1), shard("b", 1), shard("c", 1)), 128);
+        ShardRing after = new ShardRing(List.of(shard("a", 1), shard("b", 1), shard("c", 1), shard("d", 1)), 128);
+
+        Map<String, String> owners = new HashMap<>();
+        KEY_SET.forEach(key -> owners.put(key, before.locate(key).name()));
+        long moved = KEY_SET.stream().filter(key -> !after.locate(key).name().equals(owners.get(key))).count();
+
+        // Переезжают только ключи нового шарда, около четверти
+        assertTrue(KEY_SET.stream()
+                .filter(key -> !after.locate(key).name().equals(owners.get(key)))
+                .allMatch(key -> after.locate(key).name().equals("d")));
+        assertEquals(0.25, moved / (double) KEYS, 0.06);
+    }
+
+    @Test
+    @DisplayName("Should list every shard once starting with the owner")
+    void shouldOrderPreferenceFromOwner() {
+        ShardRing ring = new ShardRing(List.of(shard("a", 1), shard("b", 1), shard("c", 1)), 16);
+        String key = KEY_SET.getFirst();
+
+        List<StorageShard> preference = ring.preference(key);
+
+        assertEquals(ring.locate(key), preference.getFirst());
+        assertEquals(3, preference.stream().distinct().count());
+        assertEquals("a", ring.primary().name());
+    }
+
+    @Test
+    @DisplayName("Should reject duplicate shard names")
+    void shouldRejectDuplicateNames() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardRing(List.of(shard("a", 1), shard("a", 1)), 16));
+    }
+}
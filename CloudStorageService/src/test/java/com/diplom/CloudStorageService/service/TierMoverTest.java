@@ -0,0 +1,92 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.model.Blob;
+import com.diplom.model.StorageTier;
+import com.diplom.repository.BlobRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.TierMover;
+import com.diplom.service.TieredStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TierMoverTest {
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private TieredStorageBackend tieredStorage;
+
+    private TierMover tierMover;
+    private Blob idle;
+    private Blob popular;
+
+    @BeforeEach
+    void setUp() {
+        tierMover = new TierMover(blobRepository, blobService, tieredStorage, Duration.ofDays(30), 3, 100);
+        idle = Blob.builder().hash("a".repeat(64)).refCount(1).build();
+        popular = Blob.builder().hash("b".repeat(64)).tier(StorageTier.COLD).coldReads(5).refCount(1).build();
+        when(tieredStorage.drainAccess()).thenReturn(new TieredStorageBackend.AccessSnapshot(Set.of(), Map.of()));
+    }
+
+    @Test
+    @DisplayName("Should demote idle blobs, promote frequently read ones and delete the previous copies")
+    void shouldMoveBlobsBetweenTiers() {
+        when(blobRepository.findIdleAfter(eq(""), any(), any())).thenReturn(List.of(idle));
+        when(blobRepository.findFrequentlyReadColdAfter(eq(""), eq(3), any())).thenReturn(List.of(popular));
+        when(blobService.changeTier(eq(idle.getHash()), eq(StorageTier.HOT), eq(StorageTier.COLD), any()))
+                .thenReturn(true);
+        when(blobService.changeTier(eq(popular.getHash()), eq(StorageTier.COLD), eq(StorageTier.HOT), any()))
+                .thenReturn(true);
+        when(tieredStorage.deleteFromHot(idle.getObjectKey())).thenReturn(true);
+        when(tieredStorage.deleteFromCold(popular.getObjectKey())).thenReturn(true);
+
+        tierMover.moveBetweenTiers();
+
+        verify(tieredStorage).deleteFromHot(idle.getObjectKey());
+        verify(tieredStorage).deleteFromCold(popular.getObjectKey());
+    }
+
+    @Test
+    @DisplayName("Should keep the copy when blob changed before it was locked")
+    void shouldKeepCopyWhenTierNotChanged() {
+        when(blobRepository.findIdleAfter(eq(""), any(), any())).thenReturn(List.of(idle));
+        when(blobRepository.findFrequentlyReadColdAfter(anyString(), anyInt(), any())).thenReturn(List.of());
+        when(blobService.changeTier(eq(idle.getHash()), any(), any(), any())).thenReturn(false);
+
+        tierMover.moveBetweenTiers();
+
+        verify(tieredStorage, never()).deleteFromHot(anyString());
+    }
+
+    @Test
+    @DisplayName("Should flush accumulated reads to the database")
+    void shouldFlushAccess() {
+        TieredStorageBackend.AccessSnapshot access =
+                new TieredStorageBackend.AccessSnapshot(Set.of(idle.getHash()), Map.of(popular.getHash(), 2));
+        when(tieredStorage.drainAccess()).thenReturn(access);
+
+        tierMover.flushAccess();
+
+        verify(blobService).recordAccess(Set.of(idle.getHash()), Map.of(popular.getHash(), 2));
+    }
+}
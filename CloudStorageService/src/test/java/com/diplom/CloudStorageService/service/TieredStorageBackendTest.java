@@ -0,0 +1,138 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.model.Blob;
+import com.diplom.service.BufferPool;
+import com.diplom.service.LocalStorageBackend;
+import com.diplom.service.MinioService;
+import com.diplom.service.ParallelMultipartUploader;
+import com.diplom.service.ShardRing;
+import com.diplom.service.StorageShard;
+import com.diplom.service.TieredStorageBackend;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class TieredStorageBackendTest {
+
+    private static final String HASH = "c".repeat(64);
+    private static final String KEY = Blob.objectKey(HASH);
+    private static final byte[] CONTENT = "содержимое, которое давно не читали".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path hotDirectory;
+
+    @TempDir
+    Path coldDirectory;
+
+    private LocalStorageBackend hot;
+    private LocalStorageBackend cold;
+    private TieredStorageBackend tiered;
+
+    @BeforeEach
+    void setUp() {
+        BufferPool bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(8)), DataSize.ofKilobytes(64), false,
+                new SimpleMeterRegistry());
+        hot = new LocalStorageBackend(hotDirectory, DataSize.ofKilobytes(4), false, bufferPool);
+        cold = new LocalStorageBackend(coldDirectory, DataSize.ofKilobytes(4), false, bufferPool);
+        tiered = new TieredStorageBackend(hot, cold);
+        tiered.uploadStream(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length, "text/plain");
+    }
+
+    @Test
+    @DisplayName("Should serve demoted blob from the cold tier and count cold reads")
+    void shouldReadDemotedBlobFromColdTier() throws Exception {
+        tiered.demote(KEY);
+        tiered.deleteFromHot(KEY);
+
+        assertTrue(hot.findStat(KEY).isEmpty());
+        assertEquals(CONTENT.length, tiered.statFile(KEY).size());
+        try (InputStream full = tiered.getFileStream(KEY); InputStream range = tiered.getFileStream(KEY, 0, 10)) {
+            assertArrayEquals(CONTENT, full.readAllBytes());
+            assertEquals(10, range.readAllBytes().length);
+        }
+
+        TieredStorageBackend.AccessSnapshot access = tiered.drainAccess();
+        assertEquals(Map.of(HASH, 2), access.coldReads());
+        assertTrue(access.hotHashes().isEmpty());
+        // Счетчики сбрасываются при каждом снимке
+        assertTrue(tiered.drainAccess().coldReads().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should read hot blob without touching the cold tier")
+    void shouldReadHotBlob() throws Exception {
+        try (InputStream inputStream = tiered.getFileStream(KEY)) {
+            assertArrayEquals(CONTENT, inputStream.readAllBytes());
+        }
+
+        assertEquals(Set.of(HASH), tiered.drainAccess().hotHashes());
+        assertTrue(cold.findStat(KEY).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should promote blob back and delete it from both tiers")
+    void shouldPromoteAndDeleteFromBothTiers() {
+        tiered.demote(KEY);
+        tiered.deleteFromHot(KEY);
+        tiered.promote(KEY);
+
+        assertEquals("text/plain", hot.statFile(KEY).contentType());
+        assertTrue(cold.findStat(KEY).isPresent());
+
+        assertTrue(tiered.deleteFile(KEY));
+        assertTrue(hot.findStat(KEY).isEmpty());
+        assertTrue(cold.findStat(KEY).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should promote a multipart-sized blob with the client of a shard on another server")
+    void shouldPromoteLargeBlobToShardOnAnotherServer() throws Exception {
+        MinioClient primaryClient = mock(MinioClient.class);
+        MinioClient remoteClient = mock(MinioClient.class);
+        StorageShard primary = new StorageShard("primary", primaryClient, "bucket", 1);
+        StorageShard remote = new StorageShard("remote", remoteClient, "remote-bucket", 1);
+        ShardRing ring = new ShardRing(List.of(primary, remote), 16);
+        ParallelMultipartUploader uploader = mock(ParallelMultipartUploader.class);
+        int partSize = 5 * 1024 * 1024;
+        when(uploader.getPartSize()).thenReturn(partSize);
+        TieredStorageBackend minioTiers = new TieredStorageBackend(new MinioService(null, uploader, ring), cold);
+
+        // Blob, который по кольцу принадлежит шарду на втором сервере
+        String key = IntStream.range(0, 1000)
+                .mapToObj(i -> Blob.objectKey(String.format("%064x", i)))
+                .filter(candidate -> ring.locate(candidate) == remote)
+                .findFirst().orElseThrow();
+        byte[] content = new byte[partSize + 1];
+        cold.uploadStream(key, new ByteArrayInputStream(content), content.length, "application/zip");
+
+        minioTiers.promote(key);
+
+        ArgumentCaptor<PutObjectArgs> put = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(remoteClient).putObject(put.capture());
+        assertEquals("remote-bucket", put.getValue().bucket());
+        assertEquals(key, put.getValue().object());
+        assertEquals(content.length, put.getValue().objectSize());
+        verify(uploader, never()).upload(any(), any(), any(), anyLong(), any());
+        verify(primaryClient, never()).putObject(any());
+    }
+}
@@ -0,0 +1,218 @@
+package com.diplom.CloudStorageService.service;
+
+import com.diplom.exception.FilesNotFoundException;
+import com.diplom.exception.InvalidInputException;
+import com.diplom.model.Blob;
+import com.diplom.model.File;
+import com.diplom.model.UploadSession;
+import com.diplom.model.User;
+import com.diplom.model.dto.UploadChunkDTO;
+import com.diplom.model.dto.UploadSessionDTO;
+import com.diplom.repository.UploadSessionRepository;
+import com.diplom.service.BlobService;
+import com.diplom.service.BufferPool;
+import com.diplom.service.FileService;
+import com.diplom.service.MinioService;
+import com.diplom.service.UploadSessionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.messages.Part;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UploadSessionServiceTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private MinioService minioService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    private BufferPool bufferPool;
+    private UploadSessionService uploadSessionService;
+    private User user;
+    private UploadSession session;
+
+    @BeforeEach
+    void setUp() {
+        bufferPool = new BufferPool(List.of(DataSize.ofKilobytes(1)), DataSize.ofKilobytes(64), true,
+                new SimpleMeterRegistry());
+        uploadSessionService = new UploadSessionService(uploadSessionRepository, minioService, fileService, blobService,
+                bufferPool, DataSize.ofKilobytes(1), Duration.ofDays(1));
+
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+
+        session = UploadSession.builder()
+                .id("session-1")
+                .owner(user)
+                .filename("video.mp4")
+                .uploadId("upload-1")
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Буфер части возвращается в пул и при отклоненной части
+        assertEquals(0, bufferPool.leased());
+        bufferPool.checkLeaks();
+    }
+
+    @Test
+    @DisplayName("Should start multipart upload without creating file record")
+    void shouldCreateSession() {
+        when(minioService.createMultipartUpload(startsWith("uploads/"), eq("video/mp4"))).thenReturn("upload-1");
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        UploadSession created = uploadSessionService.createSession(user, "video.mp4", "video/mp4");
+
+        assertEquals("upload-1", created.getUploadId());
+        assertEquals(user, created.getOwner());
+        assertNotNull(created.getId());
+        verifyNoInteractions(fileService);
+    }
+
+    @Test
+    @DisplayName("Should upload chunk as multipart part")
+    void shouldUploadChunk() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+        byte[] data = new byte[100];
+
+        UploadChunkDTO chunk = uploadSessionService.uploadChunk(user, "session-1", 3, new ByteArrayInputStream(data), 100);
+
+        assertEquals(new UploadChunkDTO(3, 100), chunk);
+        verify(minioService).uploadPart(eq("uploads/session-1"), eq("upload-1"), eq(3), any(byte[].class), eq(100));
+    }
+
+    @Test
+    @DisplayName("Should reject chunk with bad number, oversized or truncated body")
+    void shouldRejectInvalidChunk() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+
+        assertThrows(InvalidInputException.class, () -> uploadSessionService.uploadChunk(
+                user, "session-1", 0, new ByteArrayInputStream(new byte[10]), 10));
+        assertThrows(InvalidInputException.class, () -> uploadSessionService.uploadChunk(
+                user, "session-1", 1, new ByteArrayInputStream(new byte[2048]), 2048));
+        assertThrows(InvalidInputException.class, () -> uploadSessionService.uploadChunk(
+                user, "session-1", 1, new ByteArrayInputStream(new byte[10]), 20));
+
+        verify(minioService, never()).uploadPart(anyString(), anyString(), anyInt(), any(byte[].class), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should not expose sessions of other users")
+    void shouldNotFindForeignSession() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.empty());
+
+        assertThrows(FilesNotFoundException.class, () -> uploadSessionService.getSession(user, "session-1"));
+    }
+
+    @Test
+    @DisplayName("Should report received chunks in order")
+    void shouldListChunks() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+        List<Part> parts = List.of(part(2, 5 * MB), part(1, 5 * MB));
+        when(minioService.listParts("uploads/session-1", "upload-1")).thenReturn(parts);
+
+        UploadSessionDTO dto = uploadSessionService.getSession(user, "session-1");
+
+        assertEquals(List.of(new UploadChunkDTO(1, 5 * MB), new UploadChunkDTO(2, 5 * MB)), dto.getChunks());
+    }
+
+    @Test
+    @DisplayName("Should complete upload and write file record only on completion")
+    void shouldCompleteSession() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+        List<Part> parts = List.of(part(2, 100), part(1, 5 * MB));
+        when(minioService.listParts("uploads/session-1", "upload-1")).thenReturn(parts);
+        Blob blob = Blob.builder().hash("a".repeat(64)).size(5 * MB + 100).refCount(1).build();
+        when(blobService.adopt("uploads/session-1")).thenReturn(blob);
+        File file = File.builder().filename("video.mp4").blob(blob).size(5 * MB + 100).dateOfUpload(LocalDateTime.now()).build();
+        when(fileService.commitUploadedFile(user, "video.mp4", blob)).thenReturn(file);
+
+        File result = uploadSessionService.completeSession(user, "session-1");
+
+        assertEquals(file, result);
+        verify(minioService).completeMultipartUpload(eq("uploads/session-1"), eq("upload-1"), argThat(
+                sorted -> sorted.get(0).partNumber() == 1 && sorted.get(1).partNumber() == 2));
+        verify(uploadSessionRepository).delete(session);
+    }
+
+    @Test
+    @DisplayName("Should reject completion when non-last part is smaller than 5MB")
+    void shouldRejectSmallPart() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+        List<Part> parts = List.of(part(1, 100), part(2, 5 * MB));
+        when(minioService.listParts("uploads/session-1", "upload-1")).thenReturn(parts);
+
+        assertThrows(InvalidInputException.class, () -> uploadSessionService.completeSession(user, "session-1"));
+
+        verify(minioService, never()).completeMultipartUpload(anyString(), anyString(), anyList());
+        verify(fileService, never()).commitUploadedFile(any(), anyString(), any(Blob.class));
+        verify(uploadSessionRepository, never()).delete(any());
+    }
+
+    @Test
+    @DisplayName("Should abort multipart upload and delete session")
+    void shouldAbortSession() {
+        when(uploadSessionRepository.findByIdAndOwner_Id("session-1", 1L)).thenReturn(Optional.of(session));
+        when(minioService.abortMultipartUpload("uploads/session-1", "upload-1")).thenReturn(true);
+
+        uploadSessionService.abortSession(user, "session-1");
+
+        verify(uploadSessionRepository).delete(session);
+        verifyNoInteractions(fileService);
+    }
+
+    @Test
+    @DisplayName("Should abort abandoned sessions and keep those MinIO failed to abort")
+    void shouldSweepAbandonedSessions() {
+        UploadSession stuck = UploadSession.builder().id("session-2").owner(user)
+                .filename("other.bin").uploadId("upload-2").build();
+        when(uploadSessionRepository.findByUpdatedAtBefore(any(LocalDateTime.class))).thenReturn(List.of(session, stuck));
+        when(minioService.abortMultipartUpload("uploads/session-1", "upload-1")).thenReturn(true);
+        when(minioService.abortMultipartUpload("uploads/session-2", "upload-2")).thenReturn(false);
+
+        uploadSessionService.sweepAbandonedSessions();
+
+        verify(uploadSessionRepository).delete(session);
+        verify(uploadSessionRepository, never()).delete(stuck);
+    }
+
+    private static Part part(int number, long size) {
+        Part part = mock(Part.class);
+        lenient().when(part.partNumber()).thenReturn(number);
+        lenient().when(part.partSize()).thenReturn(size);
+        lenient().when(part.etag()).thenReturn("etag-" + number);
+        return part;
+    }
+}